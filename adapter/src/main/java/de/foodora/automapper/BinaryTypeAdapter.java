@@ -0,0 +1,77 @@
+package de.foodora.automapper;
+
+/*
+ * Copyright (C) 03/05/17 Foodora GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Converts Java objects to and from the binary codec generated for {@code AutoMapper.Codec.BINARY}.
+ *
+ * <p>A {@link ParcelAdapter} of a class with a binary codec must implement this interface as well, the
+ * same adapter then writes the property to parcels, streams and buffers:
+ *
+ * <pre>
+ * <code>
+ * public class DateTypeAdapter implements ParcelTypeAdapter&lt;Date&gt;, BinaryTypeAdapter&lt;Date&gt; {
+ *   ...
+ *   public Date fromBinary(DataInput in) throws IOException {
+ *     return new Date(in.readLong());
+ *   }
+ *
+ *   public void toBinary(Date value, DataOutput out) throws IOException {
+ *     out.writeLong(value.getTime());
+ *   }
+ *
+ *   public Date fromBinary(ByteBuffer in) {
+ *     return new Date(in.getLong());
+ *   }
+ *
+ *   public void toBinary(Date value, ByteBuffer out) {
+ *     out.putLong(value.getTime());
+ *   }
+ * }
+ * </code>
+ * </pre>
+ *
+ * Both forms must write the same bytes, a value written to a stream can be read from a buffer.
+ */
+public interface BinaryTypeAdapter<T> {
+
+    /**
+     * Creates a new object based on the bytes read from {@code in}.
+     */
+    T fromBinary(DataInput in) throws IOException;
+
+    /**
+     * Writes {@code value} to {@code out}.
+     */
+    void toBinary(T value, DataOutput out) throws IOException;
+
+    /**
+     * Creates a new object based on the bytes read from {@code in}, starting at its position.
+     */
+    T fromBinary(ByteBuffer in);
+
+    /**
+     * Writes {@code value} to {@code out}, starting at its position.
+     */
+    void toBinary(T value, ByteBuffer out);
+
+}
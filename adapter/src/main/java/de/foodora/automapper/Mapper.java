@@ -0,0 +1,55 @@
+package de.foodora.automapper;
+
+/*
+ * Copyright (C) 03/05/17 Foodora GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.List;
+
+/**
+ * Maps objects of type {@code S} to the generated type {@code T}.
+ *
+ * <p>Every generated class exposes its mapper as the {@code MAPPER} constant, which delegates to the
+ * static {@code mapFrom}, {@code mapAll} and {@code mapInto} methods. The generated {@code AutoMappers}
+ * registry looks mappers up by their source class, without any reflection:
+ *
+ * <pre>
+ * <code>
+ * Mapper&lt;ApiRestaurant, Restaurant&gt; mapper = AutoMappers.forSource(ApiRestaurant.class);
+ * Restaurant restaurant = mapper.map(apiRestaurant);
+ * </code>
+ * </pre>
+ */
+public interface Mapper<S, T> {
+
+    /**
+     * @param source The object to map, may be {@code null}.
+     * @return A new {@code T} mapped from {@code source}, {@code null} if {@code source} is {@code null}.
+     */
+    T map(S source);
+
+    /**
+     * @param source The objects to map, may be {@code null}.
+     * @return A new list holding the objects mapped from {@code source}, in the same order.
+     */
+    List<T> mapAll(List<S> source);
+
+    /**
+     * Overwrites the properties of {@code target} with the ones mapped from {@code source}.
+     * @return {@code target}, or a new {@code T} if {@code target} is {@code null}.
+     */
+    T mapInto(S source, T target);
+
+}
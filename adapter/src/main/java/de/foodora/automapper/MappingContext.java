@@ -0,0 +1,185 @@
+package de.foodora.automapper;
+
+/*
+ * Copyright (C) 03/05/17 Foodora GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Arrays;
+
+/**
+ * Remembers the objects already mapped during one mapping, by identity of their source and by the
+ * class they were mapped to, as one source may be mapped to several classes.
+ *
+ * <p>Passing the same context to the generated {@code mapFrom(source, context)} maps every source
+ * object once, so sub-objects shared in the source graph stay shared in the mapped graph and cycles
+ * are mapped without recursing forever.
+ *
+ * <pre>
+ * <code>
+ * MappingContext context = new MappingContext(apiRestaurants.size());
+ * for (ApiRestaurant apiRestaurant : apiRestaurants) {
+ *   restaurants.add(Restaurant.mapFrom(apiRestaurant, context));
+ * }
+ * </code>
+ * </pre>
+ *
+ * The entries live in a single open addressing table with linear probing, the source, the target class
+ * and the target of an entry are stored next to each other so a lookup touches one cache line in the
+ * common case. A context is not thread safe and can be {@link #clear() cleared} to be reused by the
+ * next mapping.
+ */
+public final class MappingContext {
+    private static final int MINIMUM_CAPACITY = 16;
+    private static final int MAXIMUM_CAPACITY = 1 << 28;
+    // source, target class and target of every entry
+    private static final int ENTRY = 3;
+
+    private Object[] table;
+    private int capacity;
+    private int size;
+    private int threshold;
+
+    public MappingContext() {
+        this(MINIMUM_CAPACITY / 2);
+    }
+
+    /**
+     * @param expectedSize number of objects expected to be mapped with this context
+     */
+    public MappingContext(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("expectedSize < 0: " + expectedSize);
+        }
+        allocate(capacityFor(expectedSize));
+    }
+
+    /**
+     * Returns the {@code targetClass} object mapped from {@code source}, or {@code null} if it was not
+     * mapped to that class yet.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object source, Class<T> targetClass) {
+        Object[] tab = table;
+        int mask = capacity - 1;
+        int slot = slotOf(source, mask);
+        while (true) {
+            int i = slot * ENTRY;
+            Object key = tab[i];
+            if (key == source && tab[i + 1] == targetClass) {
+                return (T) tab[i + 2];
+            }
+            if (key == null) {
+                return null;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Registers {@code target} as the {@code targetClass} object mapped from {@code source}. Targets are
+     * registered before their properties are mapped, so that cycles resolve to the instance being mapped.
+     */
+    public <T> void put(Object source, Class<T> targetClass, T target) {
+        if (source == null) {
+            throw new NullPointerException("source == null");
+        }
+        if (targetClass == null) {
+            throw new NullPointerException("targetClass == null");
+        }
+        Object[] tab = table;
+        int mask = capacity - 1;
+        int slot = slotOf(source, mask);
+        while (true) {
+            int i = slot * ENTRY;
+            Object key = tab[i];
+            if (key == source && tab[i + 1] == targetClass) {
+                tab[i + 2] = target;
+                return;
+            }
+            if (key == null) {
+                tab[i] = source;
+                tab[i + 1] = targetClass;
+                tab[i + 2] = target;
+                if (++size > threshold) {
+                    resize();
+                }
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Returns the number of mapped objects.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Forgets all mapped objects and keeps the table for the next mapping.
+     */
+    public void clear() {
+        if (size > 0) {
+            Arrays.fill(table, null);
+            size = 0;
+        }
+    }
+
+    private void resize() {
+        Object[] old = table;
+        if (capacity >= MAXIMUM_CAPACITY) {
+            throw new IllegalStateException("MappingContext is full");
+        }
+        allocate(capacity * 2);
+        Object[] tab = table;
+        int mask = capacity - 1;
+        for (int j = 0; j < old.length; j += ENTRY) {
+            Object key = old[j];
+            if (key != null) {
+                int slot = slotOf(key, mask);
+                while (tab[slot * ENTRY] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                int i = slot * ENTRY;
+                tab[i] = key;
+                tab[i + 1] = old[j + 1];
+                tab[i + 2] = old[j + 2];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        this.capacity = capacity;
+        table = new Object[capacity * ENTRY];
+        // keep the table at most half full, probe sequences stay short for identity hashes
+        threshold = capacity / 2;
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = MINIMUM_CAPACITY;
+        while (capacity < MAXIMUM_CAPACITY && capacity / 2 < expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static int slotOf(Object key, int mask) {
+        // spread the identity hash with a Fibonacci multiplier, the entries of one source mapped to
+        // several classes follow each other
+        int h = System.identityHashCode(key) * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
@@ -0,0 +1,41 @@
+package de.foodora.automapper;
+
+/*
+ * Copyright (C) 03/05/17 Foodora GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Decides which source objects are mapped by the generated {@code mapLazily} and
+ * {@code mapIterator}. Sources which are not accepted are skipped before any target is allocated.
+ *
+ * <pre>
+ * <code>
+ * Iterator&lt;Restaurant&gt; chains = Restaurant.mapIterator(apiRestaurants.iterator(), new MappingPredicate&lt;ApiRestaurant&gt;() {
+ *   public boolean accept(ApiRestaurant source) {
+ *     return source.branches > 1;
+ *   }
+ * });
+ * </code>
+ * </pre>
+ */
+public interface MappingPredicate<S> {
+
+    /**
+     * @param source The object about to be mapped, may be {@code null}.
+     * @return Whether {@code source} is mapped.
+     */
+    boolean accept(S source);
+
+}
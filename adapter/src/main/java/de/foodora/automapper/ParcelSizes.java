@@ -0,0 +1,267 @@
+package de.foodora.automapper;
+
+/*
+ * Copyright (C) 03/05/17 Foodora GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import android.os.Parcel;
+
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+
+/**
+ * The number of bytes {@link Parcel} writes values with, used by the generated
+ * {@link SizedParcelable#parcelSizeHint()}.
+ *
+ * <p>Large objects are better written with {@link #writeToParcel(SizedParcelable, Parcel, int, int)},
+ * which sets the capacity of the parcel once up front instead of letting it grow while writing,
+ * and rejects objects which are too large before anything is marshalled:
+ *
+ * <pre>
+ * <code>
+ * ParcelSizes.writeToParcel(restaurantSet, dest, flags, 256 * 1024);
+ * </code>
+ * </pre>
+ *
+ * A hint is computed in the same scopes as the {@link ParcelTable} of the parcel is used while
+ * writing, so that objects parcelled by identity and deduplicated strings are counted once per table
+ * like they are written once per table.
+ */
+public final class ParcelSizes {
+    // the table of the hint being computed on the thread
+    private static final ThreadLocal<Table> CURRENT = new ThreadLocal<Table>();
+    // whether the hint being computed on the thread counted a value only known by writing it
+    private static final ThreadLocal<boolean[]> UNBOUNDED = new ThreadLocal<boolean[]>() {
+        @Override
+        protected boolean[] initialValue() {
+            return new boolean[1];
+        }
+    };
+
+    private ParcelSizes() {
+    }
+
+    /**
+     * Starts counting {@code value}, an object parcelled by identity, unless the hint being computed
+     * counted it already. Every call returning {@code true} must be followed by {@link #end()}.
+     * @return Whether {@code value} is counted for the first time.
+     */
+    public static boolean begin(Object value) {
+        Table table = join();
+        if (table.objects.put(value, Boolean.TRUE) != null) {
+            end();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Starts counting an object with deduplicated strings, in the table of the enclosing object if
+     * there is one. Every call must be followed by {@link #end()}.
+     */
+    public static void begin() {
+        join();
+    }
+
+    /**
+     * Ends counting the object passed to {@link #begin(Object)} or {@link #begin()}, the outermost
+     * object ends the table.
+     */
+    public static void end() {
+        Table current = CURRENT.get();
+        if (current.depth > 0) {
+            current.depth--;
+        } else if (current.outer != null) {
+            CURRENT.set(current.outer);
+        } else {
+            CURRENT.remove();
+        }
+    }
+
+    /**
+     * Hides the strings counted so far from the objects counted next, until the table is
+     * {@link #resume(Object) resumed}, as {@link ParcelTable#suspend()} does for versioned classes.
+     * @return The current table, may be {@code null}.
+     */
+    public static Object suspend() {
+        Table current = CURRENT.get();
+        if (current != null) {
+            CURRENT.set(new Table(current, current.objects));
+        }
+        return current;
+    }
+
+    /**
+     * @param table The table returned by {@link #suspend()}, may be {@code null}.
+     */
+    public static void resume(Object table) {
+        if (table != null) {
+            CURRENT.set((Table) table);
+        }
+    }
+
+    /**
+     * Size of a string written through the string table: the marker or index, then the string
+     * itself the first time the table counts it.
+     */
+    public static int dedupedString(String value) {
+        if (value == null) {
+            return 4;
+        }
+        Table current = CURRENT.get();
+        if (current != null) {
+            if (current.strings == null) {
+                current.strings = new HashSet<String>();
+            }
+            if (!current.strings.add(value)) {
+                return 4;
+            }
+        }
+        return 4 + string(value);
+    }
+
+    /**
+     * Counts a value whose size is only known by writing it, e.g. a value written by
+     * {@code Parcel.writeValue}. The hint being computed is a lower bound then, see
+     * {@link #bound(SizedParcelable)}.
+     * @return {@code 0}, what the value adds to the hint.
+     */
+    public static int unbounded() {
+        UNBOUNDED.get()[0] = true;
+        return 0;
+    }
+
+    /**
+     * Returns the number of bytes {@code value} writes at most, or {@code -1} if it holds values whose
+     * size is only known by writing them.
+     */
+    public static int bound(SizedParcelable value) {
+        boolean[] unbounded = UNBOUNDED.get();
+        unbounded[0] = false;
+        int size = value.parcelSizeHint();
+
+        return unbounded[0] ? -1 : size;
+    }
+
+    /**
+     * Writes {@code value} to {@code dest}, growing the capacity of {@code dest} to fit it first.
+     */
+    public static void writeToParcel(SizedParcelable value, Parcel dest, int flags) {
+        writeToParcel(value, dest, flags, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Writes {@code value} to {@code dest}, growing the capacity of {@code dest} to fit it first.
+     * @param maxSize The maximum number of bytes {@code value} may take.
+     * @throws IllegalArgumentException if {@code value} may take more than {@code maxSize} bytes, or
+     * holds values whose size is only known by writing them, in which case nothing is written.
+     */
+    public static void writeToParcel(SizedParcelable value, Parcel dest, int flags, int maxSize) {
+        boolean[] unbounded = UNBOUNDED.get();
+        unbounded[0] = false;
+        int size = value.parcelSizeHint();
+        if (unbounded[0] && maxSize != Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(value.getClass().getName()
+                + " holds values whose size is only known by writing them, it can not be limited to " + maxSize + " bytes");
+        }
+        if (size > maxSize) {
+            throw new IllegalArgumentException(
+                value.getClass().getName() + " takes up to " + size + " bytes, more than the " + maxSize + " allowed");
+        }
+        int capacity = dest.dataPosition() + size;
+        if (capacity > dest.dataCapacity()) {
+            dest.setDataCapacity(capacity);
+        }
+        value.writeToParcel(dest, flags);
+    }
+
+    /**
+     * Size of {@link Parcel#writeString(String)}: the length, then the UTF-16 chars and a terminator.
+     */
+    public static int string(String value) {
+        return value == null ? 4 : 4 + align((value.length() + 1) * 2);
+    }
+
+    public static int stringArray(String[] value) {
+        if (value == null) {
+            return 4;
+        }
+        int size = 4;
+        for (String element : value) {
+            size += string(element);
+        }
+        return size;
+    }
+
+    public static int byteArray(byte[] value) {
+        return value == null ? 4 : 4 + align(value.length);
+    }
+
+    public static int intArray(int[] value) {
+        return value == null ? 4 : 4 + value.length * 4;
+    }
+
+    /**
+     * Booleans are written as one {@code int} each.
+     */
+    public static int booleanArray(boolean[] value) {
+        return value == null ? 4 : 4 + value.length * 4;
+    }
+
+    /**
+     * Chars are written as one {@code int} each.
+     */
+    public static int charArray(char[] value) {
+        return value == null ? 4 : 4 + value.length * 4;
+    }
+
+    public static int longArray(long[] value) {
+        return value == null ? 4 : 4 + value.length * 8;
+    }
+
+    /**
+     * Parcels are written in blocks of 4 bytes.
+     */
+    private static int align(int size) {
+        return (size + 3) & ~3;
+    }
+
+    private static Table join() {
+        Table current = CURRENT.get();
+        if (current != null) {
+            current.depth++;
+            return current;
+        }
+        Table table = new Table(null, new IdentityHashMap<Object, Boolean>());
+        CURRENT.set(table);
+        return table;
+    }
+
+    /**
+     * The objects and strings counted in one table of the parcel, the objects are shared with the
+     * tables of the versioned objects nested in it.
+     */
+    private static final class Table {
+        final Table outer;
+        final IdentityHashMap<Object, Boolean> objects;
+        HashSet<String> strings;
+        int depth;
+
+        Table(Table outer, IdentityHashMap<Object, Boolean> objects) {
+            this.outer = outer;
+            this.objects = objects;
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package de.foodora.automapper;
+
+/*
+ * Copyright (C) 03/05/17 Foodora GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import android.os.BadParcelableException;
+import android.os.Parcel;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+/**
+ * The table of a parcel, used by generated classes for the strings of {@link ParcelDedupe} fields and
+ * for the objects of classes parcelled by identity.
+ *
+ * <p>The first occurrence of a string is written in full and added to the table, every later
+ * occurrence is written as its index. Objects parcelled by identity are written in full the first time
+ * and as a back-reference to their index afterwards. The reader builds the same tables while reading,
+ * so equal strings are read back as one instance and shared objects, cycles included, as one object.
+ *
+ * <p>The table of a parcel lives as long as the outermost object written to or read from it: objects
+ * nested in it {@link #begin(Parcel) join} the table of their parent instead of starting their own.
+ * Versioned classes {@link #suspend() suspend} the strings of their parent, as a reader skips their
+ * groups of newer versions along with the strings added in them. The objects stay shared, so that
+ * cycles through versioned classes resolve, and every group of a newer version records how many
+ * objects it added for a reader skipping it to {@link #skipReferences(Parcel, int) skip} them too.
+ * Tables are bound to the thread writing or reading the parcel.
+ */
+public final class ParcelTable {
+    private static final int NULL = -1;
+    private static final int NEW = -2;
+    private static final ThreadLocal<ParcelTable> CURRENT = new ThreadLocal<ParcelTable>();
+    // stands for the objects of skipped groups
+    private static final Object SKIPPED = new Object();
+
+    private final Parcel parcel;
+    private final ParcelTable outer;
+    private final References references;
+    private int depth;
+    // created on first use, a table is either written or read
+    private HashMap<String, Integer> stringIndexes;
+    private ArrayList<String> strings;
+
+    private ParcelTable(Parcel parcel, ParcelTable outer, References references) {
+        this.parcel = parcel;
+        this.outer = outer;
+        this.references = references;
+    }
+
+    /**
+     * Returns the table of {@code parcel}, starting a new one unless an enclosing object is being
+     * written to or read from the same parcel. Every call must be followed by {@link #end()}.
+     */
+    public static ParcelTable begin(Parcel parcel) {
+        ParcelTable current = CURRENT.get();
+        if (current != null && current.parcel == parcel) {
+            current.depth++;
+            return current;
+        }
+        ParcelTable table = new ParcelTable(parcel, current, new References());
+        CURRENT.set(table);
+        return table;
+    }
+
+    /**
+     * Returns the table {@code parcel} is written or read with.
+     * @throws IllegalStateException if there is none.
+     */
+    public static ParcelTable of(Parcel parcel) {
+        ParcelTable current = CURRENT.get();
+        if (current == null || current.parcel != parcel) {
+            throw new IllegalStateException("No table for " + parcel);
+        }
+        return current;
+    }
+
+    /**
+     * Hides the strings of the current table from the objects written or read next, until it is
+     * {@link #resume(ParcelTable) resumed}. They get a table with strings of their own and the objects
+     * of the current table.
+     * @return The current table, may be {@code null}.
+     */
+    public static ParcelTable suspend() {
+        ParcelTable current = CURRENT.get();
+        if (current != null) {
+            CURRENT.set(new ParcelTable(current.parcel, current, current.references));
+        }
+        return current;
+    }
+
+    /**
+     * @return The number of objects in the table {@code parcel} is written or read with, {@code 0} if
+     * there is none.
+     */
+    public static int referenceCount(Parcel parcel) {
+        ParcelTable current = CURRENT.get();
+        return current != null && current.parcel == parcel ? current.references.size() : 0;
+    }
+
+    /**
+     * Adds the {@code count} objects of a skipped group to the table {@code parcel} is read with, so
+     * that the back-references read after the group keep their index.
+     */
+    public static void skipReferences(Parcel parcel, int count) {
+        ParcelTable current = CURRENT.get();
+        if (current == null || current.parcel != parcel) {
+            // nothing read later refers to them
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            current.register(SKIPPED);
+        }
+    }
+
+    /**
+     * @param table The table returned by {@link #suspend()}, may be {@code null}.
+     */
+    public static void resume(ParcelTable table) {
+        if (table != null) {
+            CURRENT.set(table);
+        }
+    }
+
+    /**
+     * Ends the use of the table by one object, the outermost object ends the table.
+     */
+    public void end() {
+        if (depth > 0) {
+            depth--;
+        } else if (outer != null) {
+            CURRENT.set(outer);
+        } else {
+            CURRENT.remove();
+        }
+    }
+
+    public void writeString(String value) {
+        if (value == null) {
+            parcel.writeInt(NULL);
+            return;
+        }
+        if (stringIndexes == null) {
+            stringIndexes = new HashMap<String, Integer>();
+        }
+        Integer index = stringIndexes.get(value);
+        if (index != null) {
+            parcel.writeInt(index);
+            return;
+        }
+        stringIndexes.put(value, stringIndexes.size());
+        parcel.writeInt(NEW);
+        parcel.writeString(value);
+    }
+
+    public String readString() {
+        int index = parcel.readInt();
+        if (index == NULL) {
+            return null;
+        }
+        if (strings == null) {
+            strings = new ArrayList<String>();
+        }
+        if (index == NEW) {
+            String value = parcel.readString();
+            strings.add(value);
+            return value;
+        }
+        if (index < 0 || index >= strings.size()) {
+            throw new BadParcelableException("String index " + index + " is not in the table of size " + strings.size());
+        }
+        return strings.get(index);
+    }
+
+    /**
+     * Writes the back-reference to {@code value} if it was written to the parcel before, otherwise
+     * adds it to the table and writes the marker of a new object.
+     * @return Whether a back-reference was written, in which case {@code value} must not be written.
+     */
+    public boolean writeReference(Object value) {
+        if (references.objectIndexes == null) {
+            references.objectIndexes = new IdentityHashMap<Object, Integer>();
+        }
+        Integer index = references.objectIndexes.get(value);
+        if (index != null) {
+            parcel.writeInt(index);
+            return true;
+        }
+        references.objectIndexes.put(value, references.objectIndexes.size());
+        parcel.writeInt(NEW);
+        return false;
+    }
+
+    /**
+     * Reads what {@link #writeReference(Object)} wrote.
+     * @return The object referenced, {@code null} if a new object follows, which must be
+     * {@link #register(Object) registered} before any other object is read.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T readReference() {
+        int index = parcel.readInt();
+        if (index == NEW) {
+            return null;
+        }
+        int size = references.size();
+        if (index < 0 || index >= size) {
+            throw new BadParcelableException("Object index " + index + " is not in the table of size " + size);
+        }
+        Object value = references.objects.get(index);
+        if (value == SKIPPED) {
+            throw new BadParcelableException("Object index " + index + " was written in a group of a newer version");
+        }
+        return (T) value;
+    }
+
+    /**
+     * Adds the object being read to the table, before its properties are read so that cycles resolve
+     * to it.
+     */
+    public void register(Object value) {
+        if (references.objects == null) {
+            references.objects = new ArrayList<Object>();
+        }
+        references.objects.add(value);
+    }
+
+    /**
+     * The objects of a table, shared with the tables of the versioned objects nested in it.
+     */
+    private static final class References {
+        IdentityHashMap<Object, Integer> objectIndexes;
+        ArrayList<Object> objects;
+
+        int size() {
+            if (objectIndexes != null) {
+                return objectIndexes.size();
+            }
+            return objects == null ? 0 : objects.size();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package de.foodora.automapper;
+
+/*
+ * Copyright (C) 03/05/17 Foodora GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * A {@link ParcelTypeAdapter} which knows how many bytes it writes, so that the
+ * {@link SizedParcelable#parcelSizeHint()} of the classes using it stays an upper bound.
+ *
+ * <pre>
+ * <code>
+ * class DateTypeAdapter implements SizedParcelTypeAdapter&lt;Date&gt; {
+ *   ...
+ *
+ *   public int parcelSize(Date value) {
+ *     return 8;
+ *   }
+ * }
+ * </code>
+ * </pre>
+ */
+public interface SizedParcelTypeAdapter<T> extends ParcelTypeAdapter<T> {
+
+    /**
+     * Computes the number of bytes {@link #toParcel(Object, android.os.Parcel)} writes at most for
+     * {@code value}, without writing anything.
+     * @param value The object to be written.
+     * @return The size of {@code value} in bytes.
+     */
+    int parcelSize(T value);
+
+}
@@ -0,0 +1,40 @@
+package de.foodora.automapper;
+
+/*
+ * Copyright (C) 03/05/17 Foodora GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import android.os.Parcelable;
+
+/**
+ * A {@link Parcelable} which knows how many bytes it is about to write at most, implemented by every
+ * generated parcelable class.
+ *
+ * @see ParcelSizes#writeToParcel(SizedParcelable, android.os.Parcel, int, int)
+ */
+public interface SizedParcelable extends Parcelable {
+
+    /**
+     * Computes an upper bound of the number of bytes {@code writeToParcel} writes, without writing
+     * anything. Objects parcelled by identity and deduplicated strings are counted once per table of
+     * the parcel, as they are written. Values whose size is only known by writing them, those written
+     * through {@code Parcel.writeValue}, by a {@link ParcelTypeAdapter} which is not a
+     * {@link SizedParcelTypeAdapter} or by a parcelable without size hint, are not counted: the hint
+     * is a lower bound then, which {@link ParcelSizes#bound(SizedParcelable)} tells apart.
+     * @return The size of the parcelled object in bytes.
+     */
+    int parcelSizeHint();
+
+}
@@ -1,14 +1,18 @@
 package de.foodora.android.automapper.model;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public class ApiRestaurantSet {
     public List<ApiRestaurant> restaurants;
     public Set<ApiRestaurant> restaurantsSet;
     public Collection<ApiRestaurant> restaurantCollection;
+    public ArrayList<ApiRestaurant> restaurantArrayList;
     public ApiRestaurant[] restaurantArray;
     public List<String> tags;
     public Set<String> keywords;
+    public Map<String, ApiRestaurant> restaurantsByName;
 }
@@ -18,11 +18,16 @@ package de.foodora.android.automapper.model;
 
 import android.os.Parcel;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Date;
 
-import de.foodora.automapper.ParcelTypeAdapter;
+import de.foodora.automapper.BinaryTypeAdapter;
+import de.foodora.automapper.SizedParcelTypeAdapter;
 
-class DateTypeAdapter implements ParcelTypeAdapter<Date> {
+class DateTypeAdapter implements SizedParcelTypeAdapter<Date>, BinaryTypeAdapter<Date> {
     @Override
     public Date fromParcel(Parcel in) {
         return new Date(in.readLong());
@@ -32,4 +37,29 @@ class DateTypeAdapter implements ParcelTypeAdapter<Date> {
     public void toParcel(Date value, Parcel dest) {
         dest.writeLong(value.getTime());
     }
+
+    @Override
+    public int parcelSize(Date value) {
+        return 8;
+    }
+
+    @Override
+    public Date fromBinary(DataInput in) throws IOException {
+        return new Date(in.readLong());
+    }
+
+    @Override
+    public void toBinary(Date value, DataOutput out) throws IOException {
+        out.writeLong(value.getTime());
+    }
+
+    @Override
+    public Date fromBinary(ByteBuffer in) {
+        return new Date(in.getLong());
+    }
+
+    @Override
+    public void toBinary(Date value, ByteBuffer out) {
+        out.putLong(value.getTime());
+    }
 }
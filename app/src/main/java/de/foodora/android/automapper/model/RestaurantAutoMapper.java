@@ -21,7 +21,8 @@ import de.foodora.automapper.AutoMapper;
 
 public class RestaurantAutoMapper {
 
-    @AutoMapper(mapFrom = ApiRestaurant.class, mapTo = "Restaurant")
+    @AutoMapper(mapFrom = ApiRestaurant.class, mapTo = "Restaurant", parcelable = true, parallel = true, poolSize = 32,
+        columnar = true)
     public static abstract class RestaurantAutoMapperClass {
         public String frontSign;
 
@@ -33,10 +34,17 @@ public class RestaurantAutoMapper {
     @AutoMapper(mapFrom = ApiAddress.class, mapTo = "Address", extendMapper = false)
     public static abstract class AddressAutoMapper { }
 
-    @AutoMapper(mapFrom = ApiGps.class, mapTo = "Gps", extendMapper = false)
+    @AutoMapper(mapFrom = ApiGps.class, mapTo = "Gps", extendMapper = false, view = true)
     public static abstract class GpsAutoMapper { }
 
-    @AutoMapper(mapFrom = ApiRestaurantSet.class, mapTo = "RestaurantSet", extendMapper = false)
+    @AutoMapper(mapFrom = ApiDish.class, mapTo = "Dish", extendMapper = false, codec = AutoMapper.Codec.BINARY, flyweight = true)
+    public static abstract class DishAutoMapper { }
+
+    @AutoMapper(mapFrom = ApiCachedDish.class, mapTo = "CachedDish", extendMapper = false, codec = AutoMapper.Codec.COMPACT)
+    public static abstract class CachedDishAutoMapper { }
+
+    @AutoMapper(mapFrom = ApiRestaurantSet.class, mapTo = "RestaurantSet", extendMapper = false, lazy = true,
+        codec = AutoMapper.Codec.BINARY)
     public static abstract class RestaurantSetAutoMapper { }
 
 }
@@ -1,6 +1,11 @@
 package de.foodora.android.automapper.model.location.gps;
 
 public class ApiGps {
-    public double lat;
-    public double lng;
+    public final double lat;
+    public final double lng;
+
+    public ApiGps(double lat, double lng) {
+        this.lat = lat;
+        this.lng = lng;
+    }
 }
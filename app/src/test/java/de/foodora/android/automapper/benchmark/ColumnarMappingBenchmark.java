@@ -0,0 +1,170 @@
+package de.foodora.android.automapper.benchmark;
+
+/*
+ * Copyright (C) 03/05/17 Foodora GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+
+import de.foodora.android.automapper.model.ApiAddress;
+import de.foodora.android.automapper.model.ApiRestaurant;
+import de.foodora.android.automapper.model.Restaurant;
+import de.foodora.android.automapper.model.RestaurantColumns;
+
+/**
+ * Compares {@code Restaurant.mapAll} with {@code Restaurant.mapAllColumnar} for 50k restaurants: mapping
+ * the list, then summing, filtering and sorting by {@code branches} over the objects and over the
+ * {@code int[]} column. Run it with {@code main}, it is not a unit test.
+ */
+public class ColumnarMappingBenchmark {
+    private static final int SIZE = 50000;
+    private static final int WARMUP_ROUNDS = 200;
+    private static final int MEASURED_ROUNDS = 200;
+
+    private static volatile Object sink;
+    private static volatile long longSink;
+
+    public static void main(String[] args) {
+        final List<ApiRestaurant> source = createSource(SIZE);
+        final List<Restaurant> restaurants = Restaurant.mapAll(source);
+        final RestaurantColumns columns = Restaurant.mapAllColumnar(source);
+
+        System.out.println(String.format("%10s %16s %16s", "ns/item", "objects", "columns"));
+        print("map", measure(new Runnable() {
+            @Override
+            public void run() {
+                sink = Restaurant.mapAll(source);
+            }
+        }), measure(new Runnable() {
+            @Override
+            public void run() {
+                sink = Restaurant.mapAllColumnar(source);
+            }
+        }));
+        print("sum", measure(new Runnable() {
+            @Override
+            public void run() {
+                long sum = 0;
+                for (int i = 0; i < restaurants.size(); i++) {
+                    sum += restaurants.get(i).branches;
+                }
+                longSink = sum;
+            }
+        }), measure(new Runnable() {
+            @Override
+            public void run() {
+                long sum = 0;
+                int[] branches = columns.branches;
+                for (int i = 0; i < branches.length; i++) {
+                    sum += branches[i];
+                }
+                longSink = sum;
+            }
+        }));
+        print("filter", measure(new Runnable() {
+            @Override
+            public void run() {
+                List<Restaurant> filtered = new ArrayList<>();
+                for (int i = 0; i < restaurants.size(); i++) {
+                    if (restaurants.get(i).branches > 5) {
+                        filtered.add(restaurants.get(i));
+                    }
+                }
+                sink = filtered;
+            }
+        }), measure(new Runnable() {
+            @Override
+            public void run() {
+                int[] branches = columns.branches;
+                int[] filtered = new int[branches.length];
+                int count = 0;
+                for (int i = 0; i < branches.length; i++) {
+                    if (branches[i] > 5) {
+                        filtered[count++] = i;
+                    }
+                }
+                longSink = count;
+                sink = filtered;
+            }
+        }));
+        print("sort", measure(new Runnable() {
+            @Override
+            public void run() {
+                List<Restaurant> sorted = new ArrayList<>(restaurants);
+                Collections.sort(sorted, new Comparator<Restaurant>() {
+                    @Override
+                    public int compare(Restaurant a, Restaurant b) {
+                        return a.branches < b.branches ? -1 : a.branches == b.branches ? 0 : 1;
+                    }
+                });
+                sink = sorted;
+            }
+        }), measure(new Runnable() {
+            @Override
+            public void run() {
+                // the indices sorted by branches, packed into longs to sort primitives only
+                int[] branches = columns.branches;
+                long[] keys = new long[branches.length];
+                for (int i = 0; i < branches.length; i++) {
+                    keys[i] = ((long) branches[i] << 32) | i;
+                }
+                Arrays.sort(keys);
+                sink = keys;
+            }
+        }));
+    }
+
+    private static void print(String operation, double objects, double columns) {
+        System.out.println(String.format("%10s %16.2f %16.2f", operation, objects, columns));
+    }
+
+    private static double measure(Runnable operation) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            operation.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            operation.run();
+        }
+
+        return (System.nanoTime() - start) / (double) MEASURED_ROUNDS / SIZE;
+    }
+
+    private static List<ApiRestaurant> createSource(int size) {
+        List<ApiRestaurant> restaurants = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            ApiAddress address = new ApiAddress();
+            address.street = "Street " + i;
+            address.postCode = String.valueOf(10000 + i % 1000);
+            address.city = "Berlin";
+            address.country = "Germany";
+
+            ApiRestaurant restaurant = new ApiRestaurant();
+            restaurant.name = "Restaurant " + i;
+            restaurant.slogan = "Slogan " + i;
+            restaurant.foundationDate = new Date(i);
+            restaurant.branches = (i * 7919) % 10;
+            restaurant.address = address;
+            restaurants.add(restaurant);
+        }
+
+        return restaurants;
+    }
+}
@@ -0,0 +1,149 @@
+package de.foodora.android.automapper.benchmark;
+
+/*
+ * Copyright (C) 03/05/17 Foodora GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.foodora.android.automapper.model.ApiCachedDish;
+import de.foodora.android.automapper.model.ApiDish;
+import de.foodora.android.automapper.model.CachedDish;
+import de.foodora.android.automapper.model.Dish;
+
+/**
+ * Compares the padded binary codec of {@code Dish} with the compact one of {@code CachedDish}, which
+ * have the same fields, by the bytes a list of dishes is written with and by the time it takes to
+ * write and read them through a heap buffer. Run it with {@code main}, it is not a unit test.
+ */
+public class CompactCodecBenchmark {
+    private static final int SIZE = 10000;
+    private static final int WARMUP_ROUNDS = 50;
+    private static final int MEASURED_ROUNDS = 200;
+
+    private static volatile Object sink;
+
+    public static void main(String[] args) {
+        final List<Dish> dishes = new ArrayList<>(SIZE);
+        final List<CachedDish> cachedDishes = new ArrayList<>(SIZE);
+        for (int i = 0; i < SIZE; i++) {
+            dishes.add(Dish.mapFrom(fill(new ApiDish(), i)));
+            cachedDishes.add(CachedDish.mapFrom(fill(new ApiCachedDish(), i)));
+        }
+        Codec padded = new Codec("padded") {
+            @Override
+            void write(ByteBuffer buffer) {
+                for (Dish dish : dishes) {
+                    dish.writeTo(buffer);
+                }
+            }
+
+            @Override
+            Object read(ByteBuffer buffer) {
+                Dish last = null;
+                for (int i = 0; i < SIZE; i++) {
+                    last = Dish.readFrom(buffer);
+                }
+                return last;
+            }
+        };
+        Codec compact = new Codec("compact") {
+            @Override
+            void write(ByteBuffer buffer) {
+                for (CachedDish dish : cachedDishes) {
+                    dish.writeTo(buffer);
+                }
+            }
+
+            @Override
+            Object read(ByteBuffer buffer) {
+                CachedDish last = null;
+                for (int i = 0; i < SIZE; i++) {
+                    last = CachedDish.readFrom(buffer);
+                }
+                return last;
+            }
+        };
+
+        ByteBuffer buffer = ByteBuffer.allocate(SIZE * 256);
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            padded.run(buffer);
+            compact.run(buffer);
+        }
+        System.out.println(String.format("%10s %12s %14s %14s", "codec", "bytes/item", "write ns/item", "read ns/item"));
+        padded.report(buffer);
+        compact.report(buffer);
+    }
+
+    private abstract static class Codec {
+        private final String name;
+        private long writeNanos;
+        private long readNanos;
+
+        Codec(String name) {
+            this.name = name;
+        }
+
+        abstract void write(ByteBuffer buffer);
+
+        abstract Object read(ByteBuffer buffer);
+
+        /**
+         * Writes all items to the cleared buffer and reads them back.
+         * @return The number of bytes written.
+         */
+        int run(ByteBuffer buffer) {
+            buffer.clear();
+            long start = System.nanoTime();
+            write(buffer);
+            writeNanos += System.nanoTime() - start;
+            buffer.flip();
+
+            start = System.nanoTime();
+            sink = read(buffer);
+            readNanos += System.nanoTime() - start;
+
+            return buffer.limit();
+        }
+
+        void report(ByteBuffer buffer) {
+            writeNanos = 0;
+            readNanos = 0;
+            int bytes = 0;
+            for (int round = 0; round < MEASURED_ROUNDS; round++) {
+                bytes = run(buffer);
+            }
+            double items = (double) MEASURED_ROUNDS * SIZE;
+            System.out.println(String.format("%10s %12.1f %14.1f %14.1f",
+                name, bytes / (double) SIZE, writeNanos / items, readNanos / items));
+        }
+    }
+
+    private static <T extends ApiDish> T fill(T dish, int i) {
+        dish.id = 100000 + i;
+        dish.name = "Dish " + i;
+        dish.description = i % 3 == 0 ? null : "Freshly made, serves " + (1 + i % 4);
+        dish.priceCents = 450 + i % 2000;
+        dish.position = i % 50;
+        dish.vegetarian = i % 2 == 0;
+        dish.spicy = i % 5 == 0;
+        dish.calories = i % 4 == 0 ? null : 200 + i % 900;
+        dish.tags = Arrays.asList("lunch", i % 2 == 0 ? "veggie" : "meat");
+        return dish;
+    }
+}
@@ -0,0 +1,96 @@
+package de.foodora.android.automapper.benchmark;
+
+/*
+ * Copyright (C) 03/05/17 Foodora GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import de.foodora.android.automapper.model.ApiAddress;
+import de.foodora.android.automapper.model.ApiRestaurant;
+import de.foodora.android.automapper.model.Restaurant;
+
+/**
+ * Compares {@code Restaurant.mapAll} with {@code Restaurant.mapAllParallel} over growing list sizes.
+ *
+ * Lists smaller than twice the {@code parallelThreshold} of the mapper are mapped on the calling thread
+ * by both methods, so the sizes at which the parallel column drops below the sequential one show the
+ * crossover point on the machine running it. Run it with {@code main}, it is not a unit test.
+ */
+public class ParallelMappingBenchmark {
+    private static final int[] SIZES = {256, 1024, 4096, 8192, 16384, 32768, 65536, 131072};
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int MEASURED_ROUNDS = 50;
+
+    private static volatile Object sink;
+
+    public static void main(String[] args) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            System.out.println("threads: " + threads);
+            System.out.println(String.format("%10s %16s %16s", "size", "mapAll ns/item", "parallel ns/item"));
+            for (int size : SIZES) {
+                List<ApiRestaurant> source = createSource(size);
+                double sequential = measure(source, null);
+                double parallel = measure(source, executor);
+                System.out.println(String.format("%10d %16.1f %16.1f", size, sequential, parallel));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static double measure(List<ApiRestaurant> source, ExecutorService executor) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            sink = map(source, executor);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            sink = map(source, executor);
+        }
+
+        return (System.nanoTime() - start) / (double) MEASURED_ROUNDS / source.size();
+    }
+
+    private static List<Restaurant> map(List<ApiRestaurant> source, ExecutorService executor) {
+        return executor == null ? Restaurant.mapAll(source) : Restaurant.mapAllParallel(source, executor);
+    }
+
+    private static List<ApiRestaurant> createSource(int size) {
+        List<ApiRestaurant> restaurants = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            ApiAddress address = new ApiAddress();
+            address.street = "Street " + i;
+            address.postCode = String.valueOf(10000 + i % 1000);
+            address.city = "Berlin";
+            address.country = "Germany";
+
+            ApiRestaurant restaurant = new ApiRestaurant();
+            restaurant.name = "Restaurant " + i;
+            restaurant.slogan = "Slogan " + i;
+            restaurant.foundationDate = new Date(i);
+            restaurant.branches = i % 10;
+            restaurant.address = address;
+            restaurants.add(restaurant);
+        }
+
+        return restaurants;
+    }
+}
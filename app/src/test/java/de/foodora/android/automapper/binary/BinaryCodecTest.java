@@ -0,0 +1,164 @@
+package de.foodora.android.automapper.binary;
+
+/*
+ * Copyright (C) 03/05/17 Foodora GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static de.foodora.android.automapper.binary.Receipts.assertCompactReceipt;
+import static de.foodora.android.automapper.binary.Receipts.assertReceipt;
+import static de.foodora.android.automapper.binary.Receipts.fill;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Round trips of the {@code BINARY} and {@code COMPACT} codecs through streams and buffers.
+ */
+public class BinaryCodecTest {
+    private static final int SIZE = 24;
+
+    @Test
+    public void binaryRoundTripsThroughStream() throws IOException {
+        List<Receipt> receipts = receipts();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (Receipt receipt : receipts) {
+            receipt.writeTo(out);
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        for (Receipt receipt : receipts) {
+            assertReceipt(receipt, Receipt.readFrom(in));
+        }
+        assertEquals(0, in.available());
+    }
+
+    @Test
+    public void binaryRoundTripsThroughBuffer() {
+        List<Receipt> receipts = receipts();
+        ByteBuffer buffer = ByteBuffer.allocate(SIZE * 256);
+        for (Receipt receipt : receipts) {
+            receipt.writeTo(buffer);
+        }
+
+        buffer.flip();
+        for (Receipt receipt : receipts) {
+            assertReceipt(receipt, Receipt.readFrom(buffer));
+        }
+        assertEquals(0, buffer.remaining());
+    }
+
+    @Test
+    public void binaryRoundTripsThroughDirectBuffer() {
+        List<Receipt> receipts = receipts();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(SIZE * 256);
+        for (Receipt receipt : receipts) {
+            receipt.writeTo(buffer);
+        }
+
+        buffer.flip();
+        for (Receipt receipt : receipts) {
+            assertReceipt(receipt, Receipt.readFrom(buffer));
+        }
+        assertEquals(0, buffer.remaining());
+    }
+
+    @Test
+    public void binaryWritesTheSameBytesToStreamAndBuffer() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        ByteBuffer buffer = ByteBuffer.allocate(SIZE * 256);
+        for (Receipt receipt : receipts()) {
+            receipt.writeTo(out);
+            receipt.writeTo(buffer);
+        }
+
+        assertArrayEquals(bytes.toByteArray(), Arrays.copyOf(buffer.array(), buffer.position()));
+    }
+
+    @Test
+    public void compactRoundTripsThroughStream() throws IOException {
+        List<CompactReceipt> receipts = compactReceipts();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (CompactReceipt receipt : receipts) {
+            receipt.writeTo(out);
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        for (CompactReceipt receipt : receipts) {
+            assertCompactReceipt(receipt, CompactReceipt.readFrom(in));
+        }
+        assertEquals(0, in.available());
+    }
+
+    @Test
+    public void compactRoundTripsThroughBuffer() {
+        List<CompactReceipt> receipts = compactReceipts();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(SIZE * 256);
+        for (CompactReceipt receipt : receipts) {
+            receipt.writeTo(buffer);
+        }
+
+        buffer.flip();
+        for (CompactReceipt receipt : receipts) {
+            assertCompactReceipt(receipt, CompactReceipt.readFrom(buffer));
+        }
+        assertEquals(0, buffer.remaining());
+    }
+
+    @Test
+    public void compactIsReadFromBufferAfterStream() throws IOException {
+        List<CompactReceipt> receipts = compactReceipts();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (CompactReceipt receipt : receipts) {
+            receipt.writeTo(out);
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        for (CompactReceipt receipt : receipts) {
+            assertCompactReceipt(receipt, CompactReceipt.readFrom(buffer));
+        }
+        assertEquals(0, buffer.remaining());
+    }
+
+    private static List<Receipt> receipts() {
+        List<Receipt> receipts = new ArrayList<>(SIZE);
+        for (int i = 0; i < SIZE; i++) {
+            receipts.add(Receipt.mapFrom(fill(new ApiReceipt(), i)));
+        }
+        return receipts;
+    }
+
+    private static List<CompactReceipt> compactReceipts() {
+        List<CompactReceipt> receipts = new ArrayList<>(SIZE);
+        for (int i = 0; i < SIZE; i++) {
+            receipts.add(CompactReceipt.mapFrom(fill(new ApiCompactReceipt(), i)));
+        }
+        return receipts;
+    }
+}
@@ -0,0 +1,109 @@
+package de.foodora.android.automapper.binary;
+
+/*
+ * Copyright (C) 03/05/17 Foodora GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static de.foodora.android.automapper.binary.Receipts.assertReceipt;
+import static de.foodora.android.automapper.binary.Receipts.fill;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Reads the records written by {@code Receipt.writeRecordTo} through the flyweight {@code Receipt.Reader}.
+ */
+public class FlyweightReaderTest {
+    private static final int SIZE = 24;
+
+    @Test
+    public void readsRecordsOfHeapBuffer() {
+        readRecords(ByteBuffer.allocate(SIZE * 256));
+    }
+
+    @Test
+    public void readsRecordsOfDirectBuffer() {
+        readRecords(ByteBuffer.allocateDirect(SIZE * 256));
+    }
+
+    @Test
+    public void readsRecordAtAnOffset() {
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        buffer.position(100);
+        Receipt receipt = Receipt.mapFrom(fill(new ApiReceipt(), 1));
+        int size = receipt.writeRecordTo(buffer);
+
+        Receipt.Reader reader = new Receipt.Reader().wrap(buffer, 100);
+        assertEquals(size, reader.size());
+        assertEquals(100 + size, buffer.position());
+        assertReceipt(receipt, reader.read());
+    }
+
+    @Test
+    public void nullPropertiesAreAbsent() {
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        Receipt receipt = Receipt.mapFrom(new ApiReceipt());
+        receipt.writeRecordTo(buffer);
+
+        Receipt.Reader reader = new Receipt.Reader().wrap(buffer, 0);
+        assertFalse(reader.hasCustomer());
+        assertFalse(reader.hasNote());
+        assertFalse(reader.hasTipCents());
+        assertFalse(reader.hasItems());
+        assertReceipt(receipt, reader.read());
+    }
+
+    private static void readRecords(ByteBuffer buffer) {
+        List<Receipt> receipts = new ArrayList<>(SIZE);
+        List<Integer> offsets = new ArrayList<>(SIZE);
+        for (int i = 0; i < SIZE; i++) {
+            Receipt receipt = Receipt.mapFrom(fill(new ApiReceipt(), i));
+            receipts.add(receipt);
+            offsets.add(buffer.position());
+            int size = receipt.writeRecordTo(buffer);
+            assertEquals(buffer.position() - offsets.get(i), size);
+        }
+
+        Receipt.Reader reader = new Receipt.Reader();
+        int offset = 0;
+        for (int i = 0; i < SIZE; i++) {
+            Receipt receipt = receipts.get(i);
+            assertEquals((int) offsets.get(i), offset);
+            assertSame(reader, reader.wrap(buffer, offset));
+            assertEquals(receipt.id, reader.id());
+            assertEquals(receipt.customer != null, reader.hasCustomer());
+            assertEquals(receipt.customer, reader.customer());
+            assertEquals(receipt.note != null, reader.hasNote());
+            assertEquals(receipt.note, reader.note());
+            assertEquals(receipt.totalCents, reader.totalCents());
+            assertEquals(receipt.covers, reader.covers());
+            assertEquals(receipt.paid, reader.paid());
+            assertEquals(receipt.takeaway, reader.takeaway());
+            assertEquals(receipt.tipCents != null, reader.hasTipCents());
+            assertEquals(receipt.tipCents, reader.tipCents());
+            assertEquals(receipt.items != null, reader.hasItems());
+            assertEquals(receipt.items, reader.items());
+            assertReceipt(receipt, reader.read());
+            offset += reader.size();
+        }
+        assertEquals(buffer.position(), offset);
+    }
+}
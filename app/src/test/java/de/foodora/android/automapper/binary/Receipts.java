@@ -0,0 +1,68 @@
+package de.foodora.android.automapper.binary;
+
+/*
+ * Copyright (C) 03/05/17 Foodora GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Receipts covering the edge cases of the binary codecs: null and non-ASCII strings, negative and wide
+ * numbers, null boxed values and collections.
+ */
+final class Receipts {
+
+    private Receipts() {
+    }
+
+    static <T extends ApiReceipt> T fill(T receipt, int i) {
+        receipt.id = i % 2 == 0 ? Long.MAX_VALUE - i : -i;
+        receipt.customer = i % 7 == 6 ? null : "Customer " + i + (i % 2 == 0 ? "" : " \ud83c\udf7d");
+        receipt.note = i % 3 == 0 ? null : "K\u00e4sesp\u00e4tzle \u2013 table " + (1 + i % 4);
+        receipt.totalCents = i % 4 == 0 ? Integer.MIN_VALUE + i : 450 + i * 1000;
+        receipt.covers = i;
+        receipt.paid = i % 2 == 0;
+        receipt.takeaway = i % 5 == 0;
+        receipt.tipCents = i % 4 == 0 ? null : 200 + i;
+        receipt.items = i % 6 == 5 ? null : Arrays.asList("soup", i % 2 == 0 ? "salad" : "steak");
+        return receipt;
+    }
+
+    static void assertReceipt(Receipt expected, Receipt actual) {
+        assertEquals(expected.id, actual.id);
+        assertEquals(expected.customer, actual.customer);
+        assertEquals(expected.note, actual.note);
+        assertEquals(expected.totalCents, actual.totalCents);
+        assertEquals(expected.covers, actual.covers);
+        assertEquals(expected.paid, actual.paid);
+        assertEquals(expected.takeaway, actual.takeaway);
+        assertEquals(expected.tipCents, actual.tipCents);
+        assertEquals(expected.items, actual.items);
+    }
+
+    static void assertCompactReceipt(CompactReceipt expected, CompactReceipt actual) {
+        assertEquals(expected.id, actual.id);
+        assertEquals(expected.customer, actual.customer);
+        assertEquals(expected.note, actual.note);
+        assertEquals(expected.totalCents, actual.totalCents);
+        assertEquals(expected.covers, actual.covers);
+        assertEquals(expected.paid, actual.paid);
+        assertEquals(expected.takeaway, actual.takeaway);
+        assertEquals(expected.tipCents, actual.tipCents);
+        assertEquals(expected.items, actual.items);
+    }
+}
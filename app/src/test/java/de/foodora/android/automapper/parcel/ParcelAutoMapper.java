@@ -0,0 +1,41 @@
+package de.foodora.android.automapper.parcel;
+
+/*
+ * Copyright (C) 03/05/17 Foodora GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import de.foodora.automapper.AutoMapper;
+
+public class ParcelAutoMapper {
+
+    @AutoMapper(mapFrom = ApiOldMenu.class, mapTo = "OldMenu", parcelable = true, version = 1, extendMapper = false)
+    public static abstract class OldMenuAutoMapper { }
+
+    @AutoMapper(mapFrom = ApiNewMenu.class, mapTo = "NewMenu", parcelable = true, version = 2, extendMapper = false)
+    public static abstract class NewMenuAutoMapper { }
+
+    @AutoMapper(mapFrom = ApiNode.class, mapTo = "Node", parcelable = true, parcelIdentity = true, extendMapper = false)
+    public static abstract class NodeAutoMapper { }
+
+    @AutoMapper(mapFrom = ApiChain.class, mapTo = "Chain", parcelable = true, parcelIdentity = true, extendMapper = false)
+    public static abstract class ChainAutoMapper { }
+
+    @AutoMapper(mapFrom = ApiBranch.class, mapTo = "Branch", parcelable = true, version = 1, extendMapper = false)
+    public static abstract class BranchAutoMapper { }
+
+    @AutoMapper(mapFrom = ApiGuide.class, mapTo = "Guide", parcelable = true, extendMapper = false)
+    public static abstract class GuideAutoMapper { }
+
+}
@@ -0,0 +1,183 @@
+package de.foodora.android.automapper.parcel;
+
+/*
+ * Copyright (C) 03/05/17 Foodora GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import android.os.Parcel;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import de.foodora.automapper.ParcelTable;
+
+import static de.foodora.android.automapper.parcel.Parcels.roundTrip;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Round trips of objects parcelled by identity: cycles and objects shared by several others.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class ParcelIdentityTest {
+
+    @Test
+    public void selfCycleRoundTrips() {
+        Node node = new Node("loop", null);
+        node.next = node;
+
+        Node read = roundTrip(node, Node.CREATOR);
+
+        assertEquals("loop", read.name);
+        assertSame(read, read.next);
+    }
+
+    @Test
+    public void cycleOfTwoRoundTrips() {
+        Node first = new Node("first", null);
+        Node second = new Node("second", first);
+        first.next = second;
+
+        Node read = roundTrip(first, Node.CREATOR);
+
+        assertEquals("first", read.name);
+        assertEquals("second", read.next.name);
+        assertSame(read, read.next.next);
+    }
+
+    @Test
+    public void sharedObjectIsReadOnce() {
+        Node shared = new Node("shared", null);
+        Node first = new Node("first", shared);
+        Node second = new Node("second", shared);
+
+        Parcel parcel = Parcel.obtain();
+        try {
+            // one table for both nodes, as if they were nested in one object
+            ParcelTable table = ParcelTable.begin(parcel);
+            try {
+                first.writeToParcel(parcel, 0);
+                second.writeToParcel(parcel, 0);
+            } finally {
+                table.end();
+            }
+
+            parcel.setDataPosition(0);
+            table = ParcelTable.begin(parcel);
+            try {
+                Node readFirst = Node.CREATOR.createFromParcel(parcel);
+                Node readSecond = Node.CREATOR.createFromParcel(parcel);
+
+                assertEquals("shared", readFirst.next.name);
+                assertSame(readFirst.next, readSecond.next);
+            } finally {
+                table.end();
+            }
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    @Test
+    public void objectsSharedBelowPlainClassAreReadOnce() {
+        Chain chain = new Chain("Pasta", null);
+        Guide guide = new Guide("Berlin", Arrays.asList(new Branch(1, chain), new Branch(2, chain)));
+
+        Guide read = roundTrip(guide, Guide.CREATOR);
+
+        assertEquals(2, read.branches.size());
+        assertEquals("Pasta", read.branches.get(0).chain.name);
+        assertSame(read.branches.get(0).chain, read.branches.get(1).chain);
+    }
+
+    @Test
+    public void objectsSharedAcrossVersionGroupsAreReadOnce() {
+        NewMenu menu = new NewMenu();
+        menu.name = "Lunch";
+        menu.chain = new Chain("Pasta", null);
+        menu.featured = menu.chain;
+
+        NewMenu read = roundTrip(menu, NewMenu.CREATOR);
+
+        assertEquals("Pasta", read.chain.name);
+        assertSame(read.chain, read.featured);
+    }
+
+    @Test
+    public void cycleThroughVersionedClassRoundTrips() {
+        Chain chain = new Chain("Pasta", new ArrayList<Branch>());
+        Branch first = new Branch(1, chain);
+        Branch second = new Branch(2, chain);
+        chain.branches.add(first);
+        chain.branches.add(second);
+        chain.branches.add(first);
+
+        Chain read = roundTrip(chain, Chain.CREATOR);
+
+        assertEquals("Pasta", read.name);
+        assertEquals(3, read.branches.size());
+        assertEquals(1, read.branches.get(0).id);
+        assertEquals(2, read.branches.get(1).id);
+        assertSame(read, read.branches.get(0).chain);
+        assertSame(read, read.branches.get(1).chain);
+        // the versioned branches are not parcelled by identity
+        assertNotSame(read.branches.get(0), read.branches.get(2));
+    }
+
+    @Test
+    public void backReferencesAfterSkippedGroupKeepTheirIndex() {
+        NewMenu menu = new NewMenu();
+        menu.name = "Lunch";
+        menu.chain = new Chain("Pasta", null);
+        menu.featured = new Chain("Pizza", null);
+        Chain later = new Chain("Sushi", null);
+
+        Parcel parcel = Parcel.obtain();
+        try {
+            // one table for the menu and the chains after it, as if they were nested in one object
+            ParcelTable table = ParcelTable.begin(parcel);
+            try {
+                menu.writeToParcel(parcel, 0);
+                later.writeToParcel(parcel, 0);
+                later.writeToParcel(parcel, 0);
+            } finally {
+                table.end();
+            }
+
+            parcel.setDataPosition(0);
+            table = ParcelTable.begin(parcel);
+            try {
+                OldMenu read = OldMenu.CREATOR.createFromParcel(parcel);
+                Chain first = Chain.CREATOR.createFromParcel(parcel);
+                Chain second = Chain.CREATOR.createFromParcel(parcel);
+
+                assertEquals("Pasta", read.chain.name);
+                assertEquals("Sushi", first.name);
+                assertSame(first, second);
+            } finally {
+                table.end();
+            }
+        } finally {
+            parcel.recycle();
+        }
+    }
+}
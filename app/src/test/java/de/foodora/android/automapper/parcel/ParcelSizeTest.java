@@ -0,0 +1,91 @@
+package de.foodora.android.automapper.parcel;
+
+/*
+ * Copyright (C) 03/05/17 Foodora GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import android.os.Parcel;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Date;
+
+import de.foodora.android.automapper.model.Address;
+import de.foodora.android.automapper.model.Restaurant;
+import de.foodora.automapper.ParcelSizes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The size bounds of generated parcelables and writing parcels presized by them.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class ParcelSizeTest {
+
+    @Test
+    public void presizedRestaurantRoundTrips() {
+        Address address = new Address("Sch\u00f6nhauser Allee 1", "10119", "Berlin", "de", null);
+        Restaurant restaurant = new Restaurant("front", "Pasta", null, new Date(1494000000000L), 3, address);
+        assertNotEquals(-1, ParcelSizes.bound(restaurant));
+
+        Parcel parcel = Parcel.obtain();
+        try {
+            ParcelSizes.writeToParcel(restaurant, parcel, 0);
+            parcel.setDataPosition(0);
+            Restaurant read = Restaurant.CREATOR.createFromParcel(parcel);
+
+            assertEquals(restaurant.frontSign, read.frontSign);
+            assertEquals(restaurant.name, read.name);
+            assertNull(read.slogan);
+            assertEquals(restaurant.foundationDate, read.foundationDate);
+            assertEquals(restaurant.branches, read.branches);
+            assertEquals(address.street, read.address.street);
+            assertEquals(address.postCode, read.address.postCode);
+            assertEquals(address.city, read.address.city);
+            assertEquals(address.country, read.address.country);
+            assertNull(read.address.area);
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    @Test
+    public void cyclesAreBounded() {
+        Node first = new Node("first", null);
+        first.next = new Node("second", first);
+
+        assertNotEquals(-1, ParcelSizes.bound(first));
+    }
+
+    @Test
+    public void sharedObjectsCountOnce() {
+        Chain chain = new Chain("Pasta", null);
+        NewMenu shared = new NewMenu();
+        shared.chain = chain;
+        shared.featured = chain;
+        NewMenu distinct = new NewMenu();
+        distinct.chain = chain;
+        distinct.featured = new Chain("Pasta", null);
+
+        assertTrue(ParcelSizes.bound(shared) < ParcelSizes.bound(distinct));
+    }
+}
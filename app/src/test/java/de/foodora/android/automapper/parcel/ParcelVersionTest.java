@@ -0,0 +1,75 @@
+package de.foodora.android.automapper.parcel;
+
+/*
+ * Copyright (C) 03/05/17 Foodora GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static de.foodora.android.automapper.parcel.Parcels.roundTrip;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Round trips of versioned parcelables, read by the same, an older and a newer version.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class ParcelVersionTest {
+
+    @Test
+    public void versionedClassRoundTrips() {
+        NewMenu read = roundTrip(newMenu(), NewMenu.CREATOR);
+
+        assertEquals("Lunch", read.name);
+        assertEquals("Anna", read.chef);
+        assertEquals("Soup of the day", read.note);
+        assertEquals(24, read.seats);
+    }
+
+    @Test
+    public void olderVersionSkipsNewerGroups() {
+        OldMenu read = roundTrip(newMenu(), OldMenu.CREATOR);
+
+        assertEquals("Lunch", read.name);
+        assertEquals("Anna", read.chef);
+    }
+
+    @Test
+    public void newerVersionKeepsDefaultsOfMissingGroups() {
+        OldMenu menu = new OldMenu();
+        menu.name = "Lunch";
+        menu.chef = "Anna";
+
+        NewMenu read = roundTrip(menu, NewMenu.CREATOR);
+
+        assertEquals("Lunch", read.name);
+        assertEquals("Anna", read.chef);
+        assertNull(read.note);
+        assertEquals(0, read.seats);
+    }
+
+    private static NewMenu newMenu() {
+        NewMenu menu = new NewMenu();
+        menu.name = "Lunch";
+        menu.chef = "Anna";
+        menu.note = "Soup of the day";
+        menu.seats = 24;
+        return menu;
+    }
+}
@@ -0,0 +1,45 @@
+package de.foodora.android.automapper.parcel;
+
+/*
+ * Copyright (C) 03/05/17 Foodora GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import static org.junit.Assert.assertEquals;
+
+final class Parcels {
+
+    private Parcels() {
+    }
+
+    /**
+     * Writes {@code value} to a new parcel and reads it back with {@code creator}, which must read the
+     * whole parcel.
+     */
+    static <T> T roundTrip(Parcelable value, Parcelable.Creator<T> creator) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            value.writeToParcel(parcel, 0);
+            parcel.setDataPosition(0);
+            T read = creator.createFromParcel(parcel);
+            assertEquals(parcel.dataSize(), parcel.dataPosition());
+            return read;
+        } finally {
+            parcel.recycle();
+        }
+    }
+}
@@ -0,0 +1,382 @@
+package de.foodora.automapper.cache;
+
+/*
+ * Copyright (C) 03/05/17 Foodora GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import de.foodora.automapper.BinaryTypeAdapter;
+
+/**
+ * A key-value cache of generated objects in a memory-mapped file, written and read with their binary
+ * codec, e.g. {@code RestaurantSet.BINARY_ADAPTER}:
+ *
+ * <pre>
+ * <code>
+ * MappedCache&lt;RestaurantSet&gt; cache = MappedCache.open(file, RestaurantSet.BINARY_ADAPTER);
+ * RestaurantSet restaurants = cache.get("home");
+ * </code>
+ * </pre>
+ *
+ * <p>The file is a log of records, each holding a key and the value written for it, or the removal of
+ * the key. Records are only ever appended, an index built when the file is opened maps every key to the
+ * offset of its latest value. Values are written straight into the mapped file and read straight from
+ * it, without copying their bytes first. Once replaced and removed values take more than half of the
+ * file, the live records are copied to a new file which replaces the old one.
+ *
+ * <p>A record becomes visible by its first {@code int}, written after the rest of the record, so that a
+ * record whose writing was interrupted is ignored when the file is opened again. The cache does not
+ * force its writes to the disk unless {@link #flush() flushed}, values written last may be lost when the
+ * system, rather than the process, goes down. The cache is safe for use by multiple threads, but not by
+ * multiple processes.
+ */
+public final class MappedCache<T> implements Closeable {
+    private static final int MAGIC = 0x414d4331;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int INITIAL_SIZE = 64 * 1024;
+    private static final int REMOVED = -1;
+    // files smaller than this are not compacted, whatever their garbage
+    private static final int MIN_COMPACTION_GARBAGE = 64 * 1024;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File file;
+    private final BinaryTypeAdapter<T> adapter;
+    private final Map<String, Entry> index = new HashMap<String, Entry>();
+    private RandomAccessFile randomAccessFile;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    // the offset of the next record
+    private int end;
+    // the bytes of the records which are replaced or removed
+    private int garbage;
+
+    private MappedCache(File file, BinaryTypeAdapter<T> adapter) {
+        this.file = file;
+        this.adapter = adapter;
+    }
+
+    /**
+     * Opens the cache in {@code file}, creating the file if it does not exist.
+     * @param adapter The binary codec of the values, e.g. the {@code BINARY_ADAPTER} of a generated class.
+     * @throws IOException if the file cannot be mapped or is no cache.
+     */
+    public static <T> MappedCache<T> open(File file, BinaryTypeAdapter<T> adapter) throws IOException {
+        MappedCache<T> cache = new MappedCache<T>(file, adapter);
+        try {
+            cache.load();
+        } catch (IOException e) {
+            cache.close();
+            throw e;
+        }
+        return cache;
+    }
+
+    /**
+     * @return The value of {@code key}, {@code null} if there is none.
+     */
+    public synchronized T get(String key) {
+        checkOpen();
+        Entry entry = index.get(key);
+        if (entry == null) {
+            return null;
+        }
+        ByteBuffer in = buffer.duplicate();
+        in.limit(entry.offset + entry.length);
+        in.position(entry.offset);
+        return adapter.fromBinary(in.slice());
+    }
+
+    public synchronized boolean contains(String key) {
+        checkOpen();
+        return index.containsKey(key);
+    }
+
+    /**
+     * @return A copy of the keys of the cache.
+     */
+    public synchronized Set<String> keys() {
+        checkOpen();
+        return new HashSet<String>(index.keySet());
+    }
+
+    /**
+     * Appends {@code value} as the value of {@code key}, replacing its previous value.
+     */
+    public synchronized void put(String key, T value) throws IOException {
+        checkOpen();
+        if (value == null) {
+            throw new NullPointerException("value == null");
+        }
+        byte[] keyBytes = key.getBytes(UTF_8);
+        int record = end;
+        int offset = record + 4 + keyBytes.length + 4;
+        ensureCapacity(offset);
+        ByteBuffer out;
+        while (true) {
+            out = buffer.duplicate();
+            out.position(offset);
+            try {
+                adapter.toBinary(value, out);
+                break;
+            } catch (BufferOverflowException e) {
+                // the value doesn't fit into the rest of the file, written again once the file has grown
+                grow((long) buffer.capacity() * 2);
+            }
+        }
+        int length = out.position() - offset;
+        out.position(record + 4);
+        out.put(keyBytes);
+        out.putInt(length);
+        commit(record, keyBytes.length, offset + length);
+
+        Entry previous = index.put(key, new Entry(record, offset, length));
+        if (previous != null) {
+            garbage += previous.size();
+        }
+        compactIfNeeded();
+    }
+
+    /**
+     * Appends the removal of {@code key}.
+     * @return Whether the cache had a value for {@code key}.
+     */
+    public synchronized boolean remove(String key) throws IOException {
+        checkOpen();
+        Entry previous = index.remove(key);
+        if (previous == null) {
+            return false;
+        }
+        byte[] keyBytes = key.getBytes(UTF_8);
+        int record = end;
+        int recordEnd = record + 4 + keyBytes.length + 4;
+        ensureCapacity(recordEnd);
+        ByteBuffer out = buffer.duplicate();
+        out.position(record + 4);
+        out.put(keyBytes);
+        out.putInt(REMOVED);
+        commit(record, keyBytes.length, recordEnd);
+
+        garbage += previous.size() + recordEnd - record;
+        compactIfNeeded();
+        return true;
+    }
+
+    /**
+     * Copies the live records to a new file, which replaces the current one.
+     */
+    public synchronized void compact() throws IOException {
+        checkOpen();
+        int live = 0;
+        for (Entry entry : index.values()) {
+            live += entry.size();
+        }
+        File compacted = new File(file.getPath() + ".compact");
+        RandomAccessFile target = new RandomAccessFile(compacted, "rw");
+        Map<String, Entry> moved = new HashMap<String, Entry>();
+        int position = HEADER_SIZE;
+        try {
+            target.setLength(0);
+            MappedByteBuffer out = target.getChannel()
+                .map(FileChannel.MapMode.READ_WRITE, 0, Math.max(INITIAL_SIZE, HEADER_SIZE + live + 4));
+            out.putInt(MAGIC);
+            out.putInt(FORMAT_VERSION);
+            for (Map.Entry<String, Entry> indexed : index.entrySet()) {
+                Entry entry = indexed.getValue();
+                ByteBuffer in = buffer.duplicate();
+                in.limit(entry.offset + entry.length);
+                in.position(entry.record);
+                out.position(position);
+                out.put(in);
+                moved.put(indexed.getKey(), new Entry(position, position + entry.offset - entry.record, entry.length));
+                position += entry.size();
+            }
+            out.force();
+        } finally {
+            target.close();
+        }
+
+        closeFile();
+        if (!compacted.renameTo(file)) {
+            // keep using the file as it is
+            compacted.delete();
+            openFile();
+            throw new IOException("Cannot replace " + file + " by " + compacted);
+        }
+        index.clear();
+        index.putAll(moved);
+        openFile();
+        end = position;
+        garbage = 0;
+    }
+
+    /**
+     * Forces the writes of the cache to the disk.
+     */
+    public synchronized void flush() {
+        checkOpen();
+        buffer.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        index.clear();
+        closeFile();
+    }
+
+    private void load() throws IOException {
+        openFile();
+        if (buffer.getInt(0) == 0) {
+            // a new file
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, FORMAT_VERSION);
+            end = HEADER_SIZE;
+            return;
+        }
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IOException(file + " is not a cache of version " + FORMAT_VERSION);
+        }
+
+        int capacity = buffer.capacity();
+        int position = HEADER_SIZE;
+        while (position + 4 <= capacity) {
+            int keyLength = buffer.getInt(position) - 1;
+            if (keyLength < 0) {
+                // not committed
+                break;
+            }
+            int lengthPosition = position + 4 + keyLength;
+            if (lengthPosition + 4 > capacity) {
+                break;
+            }
+            int length = buffer.getInt(lengthPosition);
+            int offset = lengthPosition + 4;
+            int recordEnd = offset + Math.max(length, 0);
+            if (length < REMOVED || recordEnd > capacity) {
+                break;
+            }
+
+            String key = readKey(position + 4, keyLength);
+            Entry previous = length == REMOVED
+                ? index.remove(key)
+                : index.put(key, new Entry(position, offset, length));
+            if (previous != null) {
+                garbage += previous.size();
+            }
+            if (length == REMOVED) {
+                garbage += recordEnd - position;
+            }
+            position = recordEnd;
+        }
+        end = position;
+    }
+
+    private String readKey(int offset, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer in = buffer.duplicate();
+        in.position(offset);
+        in.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * Makes the record written from {@code record} to {@code recordEnd} visible and moves the end of
+     * the file past it.
+     */
+    private void commit(int record, int keyLength, int recordEnd) throws IOException {
+        // a failed write may have left bytes where the next record starts
+        ensureCapacity(recordEnd + 4);
+        buffer.putInt(recordEnd, 0);
+        buffer.putInt(record, keyLength + 1);
+        end = recordEnd;
+    }
+
+    private void compactIfNeeded() throws IOException {
+        if (garbage > MIN_COMPACTION_GARBAGE && garbage > end / 2) {
+            compact();
+        }
+    }
+
+    private void ensureCapacity(int capacity) throws IOException {
+        if (capacity > buffer.capacity()) {
+            grow(Math.max((long) buffer.capacity() * 2, capacity));
+        }
+    }
+
+    private void grow(long capacity) throws IOException {
+        if (capacity > Integer.MAX_VALUE) {
+            throw new IOException(file + " cannot grow beyond " + Integer.MAX_VALUE + " bytes");
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    private void openFile() throws IOException {
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        channel = randomAccessFile.getChannel();
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException(file + " is larger than " + Integer.MAX_VALUE + " bytes");
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, INITIAL_SIZE));
+    }
+
+    private void closeFile() throws IOException {
+        // the mapping itself is released once the buffer is collected
+        buffer = null;
+        channel = null;
+        if (randomAccessFile != null) {
+            randomAccessFile.close();
+            randomAccessFile = null;
+        }
+    }
+
+    private void checkOpen() {
+        if (buffer == null) {
+            throw new IllegalStateException("The cache is closed");
+        }
+    }
+
+    /**
+     * The location of the latest value of a key.
+     */
+    private static final class Entry {
+        final int record;
+        final int offset;
+        final int length;
+
+        Entry(int record, int offset, int length) {
+            this.record = record;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        int size() {
+            return offset + length - record;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package de.foodora.automapper.cache;
+
+/*
+ * Copyright (C) 03/05/17 Foodora GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import de.foodora.automapper.BinaryTypeAdapter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MappedCacheTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final BinaryTypeAdapter<String> STRINGS = new BinaryTypeAdapter<String>() {
+        @Override
+        public String fromBinary(DataInput in) throws IOException {
+            return in.readUTF();
+        }
+
+        @Override
+        public void toBinary(String value, DataOutput out) throws IOException {
+            out.writeUTF(value);
+        }
+
+        @Override
+        public String fromBinary(ByteBuffer in) {
+            byte[] bytes = new byte[in.getInt()];
+            in.get(bytes);
+            return new String(bytes, UTF_8);
+        }
+
+        @Override
+        public void toBinary(String value, ByteBuffer out) {
+            byte[] bytes = value.getBytes(UTF_8);
+            out.putInt(bytes.length);
+            out.put(bytes);
+        }
+    };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+    private MappedCache<String> cache;
+
+    @Before
+    public void setUp() throws IOException {
+        file = new File(folder.getRoot(), "cache");
+        cache = MappedCache.open(file, STRINGS);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        cache.close();
+    }
+
+    @Test
+    public void getsWhatWasPut() throws IOException {
+        cache.put("home", "Pasta");
+        cache.put("work", "Sushi");
+
+        assertEquals("Pasta", cache.get("home"));
+        assertEquals("Sushi", cache.get("work"));
+        assertTrue(cache.contains("home"));
+        assertFalse(cache.contains("gym"));
+        assertNull(cache.get("gym"));
+        assertEquals(new HashSet<String>(Arrays.asList("home", "work")), cache.keys());
+    }
+
+    @Test
+    public void putReplacesValue() throws IOException {
+        cache.put("home", "Pasta");
+        cache.put("home", "Käsespätzle");
+
+        assertEquals("Käsespätzle", cache.get("home"));
+        assertEquals(1, cache.keys().size());
+    }
+
+    @Test
+    public void removeDropsKey() throws IOException {
+        cache.put("home", "Pasta");
+
+        assertTrue(cache.remove("home"));
+        assertFalse(cache.remove("home"));
+        assertFalse(cache.contains("home"));
+        assertNull(cache.get("home"));
+    }
+
+    @Test
+    public void reopenedCacheKeepsLatestValues() throws IOException {
+        cache.put("home", "Pasta");
+        cache.put("work", "Sushi");
+        cache.put("home", "Pizza");
+        cache.put("gym", "Salad");
+        cache.remove("gym");
+        cache.close();
+
+        cache = MappedCache.open(file, STRINGS);
+
+        assertEquals("Pizza", cache.get("home"));
+        assertEquals("Sushi", cache.get("work"));
+        assertFalse(cache.contains("gym"));
+        assertEquals(2, cache.keys().size());
+    }
+
+    @Test
+    public void compactKeepsLatestValues() throws IOException {
+        for (int i = 0; i < 100; i++) {
+            cache.put("key" + i % 10, "value" + i);
+        }
+        cache.remove("key0");
+
+        cache.compact();
+
+        assertValues(cache);
+        assertFalse(new File(file.getPath() + ".compact").exists());
+        cache.close();
+
+        cache = MappedCache.open(file, STRINGS);
+        assertValues(cache);
+        cache.put("key0", "again");
+        assertEquals("again", cache.get("key0"));
+    }
+
+    @Test
+    public void replacedValuesAreCompacted() throws IOException {
+        char[] chars = new char[1024];
+        Arrays.fill(chars, 'x');
+        String value = new String(chars);
+        for (int i = 0; i < 1024; i++) {
+            cache.put("key" + i % 4, value + i);
+        }
+
+        assertTrue(file.length() + " bytes", file.length() <= 256 * 1024);
+        assertFalse(new File(file.getPath() + ".compact").exists());
+        cache.close();
+
+        cache = MappedCache.open(file, STRINGS);
+        assertEquals(4, cache.keys().size());
+        for (int i = 1020; i < 1024; i++) {
+            assertEquals(value + i, cache.get("key" + i % 4));
+        }
+    }
+
+    private static void assertValues(MappedCache<String> cache) {
+        assertFalse(cache.contains("key0"));
+        for (int i = 1; i < 10; i++) {
+            assertEquals("value" + (90 + i), cache.get("key" + i));
+        }
+    }
+}
@@ -18,22 +18,31 @@ import com.squareup.javapoet.ParameterSpec;
 import com.squareup.javapoet.ParameterizedTypeName;
 import com.squareup.javapoet.TypeName;
 import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.TypeVariableName;
+import com.squareup.javapoet.WildcardTypeName;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 import javax.annotation.processing.AbstractProcessor;
 import javax.annotation.processing.ProcessingEnvironment;
 import javax.annotation.processing.RoundEnvironment;
 import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
 import javax.lang.model.SourceVersion;
 import javax.lang.model.element.AnnotationMirror;
 import javax.lang.model.element.Element;
@@ -52,6 +61,7 @@ import javax.tools.JavaFileObject;
 
 import de.foodora.automapper.AutoMapper;
 import de.foodora.automapper.ParcelAdapter;
+import de.foodora.automapper.ParcelDedupe;
 import de.foodora.automapper.ParcelVersion;
 import de.foodora.automapper.internal.codegen.dependencygraph.DependencySolver;
 import de.foodora.automapper.internal.common.MoreElements;
@@ -62,10 +72,34 @@ import static javax.lang.model.element.Modifier.PUBLIC;
 import static javax.lang.model.element.Modifier.STATIC;
 
 @SupportedAnnotationTypes("de.foodora.automapper.AutoMapper")
+@SupportedOptions(AutoMappperProcessor.STRICT_OPTION)
 public final class AutoMappperProcessor extends AbstractProcessor {
+    /**
+     * Fails the compilation at every parcelable property <code>Parcel</code> would write reflectively,
+     * e.g. with <code>writeSerializable</code> or <code>writeValue</code>.
+     */
+    static final String STRICT_OPTION = "automapper.strict";
+    private static final ClassName MAPPING_CONTEXT = ClassName.get("de.foodora.automapper", "MappingContext");
+    private static final ClassName MAPPER = ClassName.get("de.foodora.automapper", "Mapper");
+    private static final ClassName MAPPING_PREDICATE = ClassName.get("de.foodora.automapper", "MappingPredicate");
+    private static final ClassName SIZED_PARCELABLE = ClassName.get("de.foodora.automapper", "SizedParcelable");
+    private static final String MAPPER_REGISTRY = "AutoMappers";
+
     private ErrorReporter mErrorReporter;
+    private boolean mStrict;
     private Types mTypeUtils;
     private DependencySolver dependencyResolver;
+    private final Map<TypeElement, AutoMapper> mMappingAnnotations = new HashMap<>();
+    // source -> class declaring its @AutoMapper
+    private final Map<TypeElement, TypeElement> mMappingTypes = new HashMap<>();
+    // generated classes of the current round which are Parcelable
+    private final Set<ClassName> mParcelableTargets = new HashSet<>();
+    // generated classes of the current round with a binary codec
+    private final Set<ClassName> mBinaryTargets = new HashSet<>();
+    // the subset of them written with the compact profile
+    private final Set<ClassName> mCompactTargets = new HashSet<>();
+    // generated Parcelable classes nesting a class parcelled by identity
+    private final Set<ClassName> mIdentityScopes = new HashSet<>();
 
     static final class Property {
         final String fieldName;
@@ -73,8 +107,16 @@ public final class AutoMappperProcessor extends AbstractProcessor {
         final TypeName typeName;
         final ImmutableSet<String> annotations;
         final int version;
+        final boolean dedupe;
         final boolean isMapped;
         TypeMirror typeAdapter;
+        // source and generated target of mapped properties, the element types for collections and arrays
+        TypeElement mappedSource;
+        ClassName mappedTarget;
+        // raw type of mapped maps, their values are described above and their keys here
+        ClassName mappedMap;
+        TypeElement mappedKeySource;
+        ClassName mappedKeyTarget;
 
         Property(String fieldName, TypeName typeName, VariableElement element, boolean isMapped) {
             this.fieldName = fieldName;
@@ -96,6 +138,9 @@ public final class AutoMappperProcessor extends AbstractProcessor {
             // get the element version, default 0
             ParcelVersion parcelVersion = element.getAnnotation(ParcelVersion.class);
             this.version = parcelVersion == null ? 0 : parcelVersion.from();
+
+            // strings parcelled through the string table
+            this.dedupe = element.getAnnotation(ParcelDedupe.class) != null;
         }
 
         Property(String fieldName, VariableElement element) {
@@ -110,6 +155,18 @@ public final class AutoMappperProcessor extends AbstractProcessor {
             return this.version;
         }
 
+        boolean isMappedCollection() {
+            return isMapped && mappedMap == null && TypeUtil.isIterable(element);
+        }
+
+        boolean isMappedMap() {
+            return isMapped && mappedMap != null;
+        }
+
+        boolean isMappedArray() {
+            return isMapped && TypeUtil.isArray(element);
+        }
+
         private ImmutableSet<String> getAnnotations(VariableElement element) {
             ImmutableSet.Builder<String> builder = ImmutableSet.builder();
             for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
@@ -124,6 +181,7 @@ public final class AutoMappperProcessor extends AbstractProcessor {
     public synchronized void init(ProcessingEnvironment processingEnv) {
         super.init(processingEnv);
         mErrorReporter = new ErrorReporter(processingEnv);
+        mStrict = Boolean.parseBoolean(processingEnv.getOptions().get(STRICT_OPTION));
         mTypeUtils = processingEnv.getTypeUtils();
         dependencyResolver = new DependencySolver(processingEnv);
     }
@@ -143,10 +201,18 @@ public final class AutoMappperProcessor extends AbstractProcessor {
         Map<TypeElement, String> elementTargetNames = new HashMap<>();
         Map<TypeElement, TypeElement> mapFromExtends = new HashMap<>();
         TypeElement mapperElement = null;
+        mMappingAnnotations.clear();
+        mMappingTypes.clear();
+        mParcelableTargets.clear();
+        mBinaryTargets.clear();
+        mCompactTargets.clear();
+        mIdentityScopes.clear();
         for (TypeElement type : types) {
             TypeElement mapFrom = getClassToMapFrom(type);
             if (mapFrom != null) {
                 AutoMapper autoMapper = type.getAnnotation(AutoMapper.class);
+                mMappingAnnotations.put(mapFrom, autoMapper);
+                mMappingTypes.put(mapFrom, type);
                 if (autoMapper.extendMapper()) {
                     mapFromExtends.put(mapFrom, type);
                 }
@@ -157,9 +223,24 @@ public final class AutoMappperProcessor extends AbstractProcessor {
         }
         List<TypeElement> topologicalMappedElements = dependencyResolver.resolveAllDependencies(mappedElements);
         completeElementTargetName(mapperElement, topologicalMappedElements, elementTargetNames);
+        for (TypeElement parcelable : getParcelableMappings(topologicalMappedElements)) {
+            mParcelableTargets.add(ClassName.bestGuess(elementTargetNames.get(parcelable)));
+        }
+        for (TypeElement binary : getBinaryMappings(topologicalMappedElements, AutoMapper.Codec.BINARY, AutoMapper.Codec.COMPACT)) {
+            mBinaryTargets.add(ClassName.bestGuess(elementTargetNames.get(binary)));
+        }
+        for (TypeElement compact : getBinaryMappings(topologicalMappedElements, AutoMapper.Codec.COMPACT)) {
+            mCompactTargets.add(ClassName.bestGuess(elementTargetNames.get(compact)));
+        }
+        for (TypeElement scope : getIdentityScopes(topologicalMappedElements)) {
+            mIdentityScopes.add(ClassName.bestGuess(elementTargetNames.get(scope)));
+        }
 
         if (topologicalMappedElements.size() > 0) {
             processMappingElements(elementTargetNames, mapFromExtends, topologicalMappedElements, types.get(0));
+            if (isRuntimeAvailable(MAPPER)) {
+                processMapperRegistry(types, topologicalMappedElements, elementTargetNames);
+            }
         } else {
             for (TypeElement type : types) {
                 processType(type, new HashMap<>());
@@ -201,6 +282,117 @@ public final class AutoMappperProcessor extends AbstractProcessor {
         String source = generateClass(baseElement, TypeUtil.simpleNameOf(targetName), extend, mapFrom, elementTargetNames);
         source = Reformatter.fixup(source);
         writeSourceFile(targetName, source, baseElement);
+
+        AutoMapper mapping = getMappingAnnotation(mapFrom);
+        if (mapping != null && mapping.view()) {
+            if (extend != null) {
+                mErrorReporter.abortWithError("view mappings can not extend the mapper, set extendMapper = false", baseElement);
+            }
+            processView(baseElement, mapFrom, targetName);
+        }
+        if (mapping != null && mapping.columnar()) {
+            processColumns(baseElement, mapFrom, targetName);
+        }
+    }
+
+    /**
+     * Generates <code>AutoMappers</code>, which resolves the generated <code>MAPPER</code> of a source
+     * class by comparing it with the class literal of every mapped source, so no reflection happens at
+     * startup. The registry
+     * is placed in the common package of all annotated classes, or in the package of the first one when
+     * they share none.
+     */
+    private void processMapperRegistry(
+        List<TypeElement> annotatedElements,
+        List<TypeElement> mappedElements,
+        Map<TypeElement, String> elementTargetNames
+    ) {
+        TypeVariableName s = TypeVariableName.get("S");
+        TypeVariableName t = TypeVariableName.get("T");
+        MethodSpec.Builder forSource = MethodSpec.methodBuilder("forSource")
+            .addJavadoc("Returns the mapper of <code>sourceClass</code>, or <code>null</code> if it is not mapped.\n")
+            .addAnnotation(AnnotationSpec.builder(SuppressWarnings.class).addMember("value", "$S", "unchecked").build())
+            .addModifiers(PUBLIC, STATIC)
+            .addTypeVariable(s)
+            .addTypeVariable(t)
+            .returns(ParameterizedTypeName.get(MAPPER, s, t))
+            .addParameter(ParameterizedTypeName.get(ClassName.get(Class.class), s), "sourceClass");
+        TypeName anyMapper = ParameterizedTypeName.get(MAPPER, WildcardTypeName.subtypeOf(Object.class), WildcardTypeName.subtypeOf(Object.class));
+        for (TypeElement mappedElement : mappedElements) {
+            // class literals, unlike names, follow the classes when they are renamed by ProGuard or R8
+            forSource
+                .beginControlFlow("if (sourceClass == $T.class)", ClassName.get(mappedElement))
+                .addStatement(
+                    "return ($T) ($T) $T.MAPPER",
+                    ParameterizedTypeName.get(MAPPER, s, t),
+                    anyMapper,
+                    ClassName.bestGuess(elementTargetNames.get(mappedElement))
+                )
+                .endControlFlow();
+        }
+        forSource.addStatement("return null");
+
+        String pkg = commonPackageName(annotatedElements);
+        TypeSpec registry = TypeSpec.classBuilder(MAPPER_REGISTRY)
+            .addModifiers(PUBLIC, FINAL)
+            .addMethod(MethodSpec.constructorBuilder().addModifiers(PRIVATE).build())
+            .addMethod(forSource.build())
+            .build();
+        JavaFile javaFile = JavaFile.builder(pkg, registry).build();
+        String registryName = pkg.isEmpty() ? MAPPER_REGISTRY : pkg + "." + MAPPER_REGISTRY;
+        writeSourceFile(registryName, Reformatter.fixup(javaFile.toString()), annotatedElements.get(0));
+    }
+
+    /**
+     * Returns the package all <code>elements</code> share, the package of the first element when they
+     * share none, since a registry in the default package could not be imported.
+     */
+    private String commonPackageName(List<TypeElement> elements) {
+        String first = TypeUtil.packageNameOf(elements.get(0));
+        String common = first;
+        for (TypeElement element : elements) {
+            String pkg = TypeUtil.packageNameOf(element);
+            while (!common.isEmpty() && !pkg.equals(common) && !pkg.startsWith(common + ".")) {
+                common = common.contains(".") ? common.substring(0, common.lastIndexOf('.')) : "";
+            }
+        }
+
+        return common.isEmpty() ? first : common;
+    }
+
+    private void processView(TypeElement baseElement, TypeElement mapFrom, String targetName) {
+        List<VariableElement> fields = new ArrayList<>();
+        addNonPrivateFields(mapFrom, fields);
+        VariableElement mutableField = MappingViews.findMutableField(fields);
+        if (mutableField != null) {
+            mErrorReporter.abortWithError(
+                "view mappings require an immutable source, `" + mutableField.getSimpleName() + "` of "
+                    + mapFrom.getSimpleName() + " must be final and of a primitive, boxed, String or enum type",
+                mutableField
+            );
+        }
+
+        ClassName target = ClassName.bestGuess(targetName);
+        ClassName view = target.peerClass(target.simpleName() + "View");
+        JavaFile javaFile = JavaFile.builder(view.packageName(), MappingViews.generateView(view, target, mapFrom, fields)).build();
+        writeSourceFile(view.toString(), Reformatter.fixup(javaFile.toString()), baseElement);
+    }
+
+    private void processColumns(TypeElement baseElement, TypeElement mapFrom, String targetName) {
+        List<VariableElement> fields = new ArrayList<>();
+        addNonPrivateFields(mapFrom, fields);
+        List<VariableElement> columnFields = MappingColumns.columnFields(fields);
+        if (columnFields.isEmpty()) {
+            mErrorReporter.abortWithError(
+                "columnar mappings require a primitive, boxed, String or enum field in " + mapFrom.getSimpleName(),
+                baseElement
+            );
+        }
+
+        ClassName target = ClassName.bestGuess(targetName);
+        ClassName columns = target.peerClass(target.simpleName() + "Columns");
+        JavaFile javaFile = JavaFile.builder(columns.packageName(), MappingColumns.generateColumns(columns, target, columnFields)).build();
+        writeSourceFile(columns.toString(), Reformatter.fixup(javaFile.toString()), baseElement);
     }
 
     private void processType(TypeElement type, Map<TypeElement, String> elementTargetNames) {
@@ -304,11 +496,29 @@ public final class AutoMappperProcessor extends AbstractProcessor {
         // get the type adapters
         ImmutableMap<TypeMirror, FieldSpec> typeAdapters = getTypeAdapters(properties);
 
-        // get the parcel version
-        //noinspection ConstantConditions
-//        int version = type.getAnnotation(AutoMapper.class).version();
-        boolean isImplementingParcelable = ancestoIsParcelable(processingEnv, type);
-        boolean isParcelable = isImplementingParcelable || type.getAnnotation(AutoMapper.class).parcelable();
+        boolean isParcelable = mapFrom != null
+            ? mParcelableTargets.contains(ClassName.bestGuess(elementTargetNames.get(mapFrom)))
+            : ancestoIsParcelable(processingEnv, type) || type.getAnnotation(AutoMapper.class).parcelable();
+        AutoMapper mapping = mapFrom != null ? getMappingAnnotation(mapFrom) : null;
+        AutoMapper parcelMapping = mapping != null ? mapping : type.getAnnotation(AutoMapper.class);
+        ParcelCodecs parcelCodecs = new ParcelCodecs(
+            processingEnv,
+            mParcelableTargets,
+            typeAdapters,
+            parcelMapping != null && parcelMapping.ordinalEnums(),
+            parcelMapping != null && parcelMapping.dedupeStrings(),
+            isRuntimeAvailable(SIZED_PARCELABLE),
+            mStrict
+        );
+
+        // mapped properties of lazy mappers are mapped on first access
+        List<Property> lazyProperties = mapping != null && mapping.lazy()
+            ? getLazyProperties(mappedProperties)
+            : ImmutableList.<Property>of();
+        Set<String> lazyNames = new HashSet<>();
+        for (Property property : lazyProperties) {
+            lazyNames.add(property.fieldName);
+        }
 
         // Generate the AutoParcel_??? class
         String pkg = generatePackageName(type, elementTargetNames.get(mapFrom));
@@ -321,7 +531,7 @@ public final class AutoMappperProcessor extends AbstractProcessor {
                 // create empty constructor
                 .addMethod(MethodSpec.constructorBuilder().addModifiers(PUBLIC).build())
                 // Add fields from mapping only
-                .addFields(generateFieldSpecs(properties/*, elementTargetNames*/))
+                .addFields(generateFieldSpecs(properties, lazyNames))
                 // Add mapFrom from constructor
                 .addMethod(
                     generateMapFromCreator(
@@ -329,28 +539,176 @@ public final class AutoMappperProcessor extends AbstractProcessor {
                         classTypeName,
                         mapFrom,
                         mappedProperties,
-                        elementTargetNames
+                        lazyNames,
+                        mapFrom != null && isPooled(mapFrom)
                     )
                 );
 
+        if (mapFrom != null) {
+            // Add the batch mapping methods next to mapFrom
+            subClass.addMethods(generateMapAllCreators(classTypeName, mapFrom));
+            // Add the streaming variants, mapping each element as it is read
+            addMappingIterator(subClass, classTypeName, mapFrom, isRuntimeAvailable(MAPPING_PREDICATE));
+            // Add mapInto to reuse existing targets
+            subClass.addMethod(
+                generateMapIntoCreator(classToExtend != null ? type : null, classTypeName, mapFrom, mappedProperties, lazyNames)
+            );
+            if (!lazyProperties.isEmpty()) {
+                addLazyProperties(subClass, mapFrom, lazyProperties);
+            }
+
+            if (isRuntimeAvailable(MAPPER)) {
+                // Add the singleton Mapper looked up by the AutoMappers registry
+                subClass.addField(generateMapperField(classTypeName, mapFrom));
+            }
+            if (isRuntimeAvailable(MAPPING_CONTEXT)) {
+                // Add the identity preserving mapFrom, only when the adapter runtime is on the classpath
+                subClass.addMethod(
+                    generateMapFromContextCreator(classToExtend != null ? type : null, classTypeName, mapFrom, mappedProperties)
+                );
+            }
+
+            if (mapping != null && mapping.poolSize() > 0) {
+                addRecyclingPool(subClass, classTypeName, mapping.poolSize(), properties, mappedProperties, lazyNames);
+            }
+            if (mapping != null && mapping.columnar()) {
+                // the columns themselves are generated by processColumns
+                List<VariableElement> columnFields = new ArrayList<>();
+                addNonPrivateFields(mapFrom, columnFields);
+                ClassName columns = ClassName.get(pkg, className + "Columns");
+                subClass.addMethod(MappingColumns.generateMapAllColumnar(columns, mapFrom, MappingColumns.columnFields(columnFields)));
+            }
+            if (mapping != null && mapping.parallel()) {
+                if (mapping.parallelThreshold() < 1) {
+                    mErrorReporter.abortWithError("parallelThreshold must be greater than 0", type);
+                }
+                subClass
+                    .addField(FieldSpec.builder(int.class, "PARALLEL_THRESHOLD", PRIVATE, STATIC, FINAL)
+                        .initializer("$L", mapping.parallelThreshold())
+                        .build())
+                    .addMethod(generateMapAllParallelCreator(classTypeName, mapFrom));
+            }
+        }
+
         if (classToExtend != null) {
             // extends from original abstract class
             subClass.superclass(ClassName.get(pkg, classToExtend));
         }
 
         if (isParcelable) {
+            // properties of versioned parcels are written in groups by the version they were added in
+            int parcelVersion = parcelMapping != null ? parcelMapping.version() : 0;
+            List<List<Property>> parcelGroups = getParcelGroups(properties, parcelVersion);
+            boolean parcelIdentity = parcelMapping != null && parcelMapping.parcelIdentity();
+            // the tables are held by locals of the constructor and writeToParcel
+            NameAllocator parcelNames = new NameAllocator();
+            for (Property property : properties) {
+                parcelNames.newName(property.fieldName, property);
+            }
+            boolean identityScope = mapFrom != null
+                && mIdentityScopes.contains(ClassName.bestGuess(elementTargetNames.get(mapFrom)));
+            ParcelScope parcelScope = new ParcelScope(
+                parcelCodecs.usesStringTable(properties) || identityScope ? parcelNames.newName("table") : null,
+                parcelGroups.size() > 1 && isRuntimeAvailable(ParcelCodecs.PARCEL_TABLE) ? parcelNames.newName("outerStrings") : null,
+                parcelIdentity ? parcelNames.newName("references") : null
+            );
+            if (parcelScope.table != null && !isRuntimeAvailable(ParcelCodecs.PARCEL_TABLE)) {
+                mErrorReporter.abortWithError("deduplicated strings require the adapter runtime", type);
+            }
+            if (parcelIdentity && !isRuntimeAvailable(ParcelCodecs.PARCEL_TABLE)) {
+                mErrorReporter.abortWithError("parcelIdentity requires the adapter runtime", type);
+            }
+            parcelCodecs.setStringTable(parcelScope.table);
+            if (mStrict) {
+                reportReflectiveFallbacks(properties, typeAdapters, parcelCodecs);
+            }
+            List<ParcelHeader> parcelHeaders = new ArrayList<>();
+            for (int version = 0; version < parcelGroups.size(); version++) {
+                String prefix = version == 0 ? "header" : "v" + version + "Header";
+                parcelHeaders.add(new ParcelHeader(parcelGroups.get(version), typeAdapters, parcelCodecs, prefix));
+            }
             subClass
                 // Add the private constructor
-                .addMethod(generateConstructorFromParcel(processingEnv, properties, typeAdapters))
+                .addMethod(generateConstructorFromParcel(processingEnv, parcelGroups, typeAdapters, parcelCodecs, parcelHeaders, parcelScope))
                 // overrides describeContents()
                 .addMethod(generateDescribeContents())
                 // static final CREATOR
-                .addField(generateCreator(processingEnv, properties, classTypeName, typeAdapters))
+                .addField(generateCreator(processingEnv, properties, classTypeName, typeAdapters, parcelIdentity))
                 // overrides writeToParcel()
-                .addMethod(generateWriteToParcel(0, processingEnv, properties, typeAdapters))
+                .addMethod(generateWriteToParcel(processingEnv, properties, parcelGroups, typeAdapters, parcelCodecs, parcelHeaders, parcelScope, !lazyProperties.isEmpty()))
+                // typed codecs of lists and arrays
+                .addMethods(parcelCodecs.methods())
+                .addFields(parcelCodecs.fields())
             ;
 
-            subClass.addSuperinterface(ClassName.get("android.os", "Parcelable"));
+            if (isRuntimeAvailable(SIZED_PARCELABLE)) {
+                // the bytes written by writeToParcel(), only when the adapter runtime is on the classpath
+                subClass
+                    .addMethod(generateParcelSizeHint(processingEnv, properties, parcelGroups, typeAdapters, parcelCodecs, parcelHeaders, parcelScope, parcelIdentity, !lazyProperties.isEmpty()))
+                    .addSuperinterface(SIZED_PARCELABLE);
+            } else {
+                subClass.addSuperinterface(ClassName.get("android.os", "Parcelable"));
+            }
+        }
+
+        boolean isBinary = mapFrom != null
+            ? mBinaryTargets.contains(ClassName.bestGuess(elementTargetNames.get(mapFrom)))
+            : type.getAnnotation(AutoMapper.class).codec() != AutoMapper.Codec.NONE;
+        boolean isFlyweight = parcelMapping != null && parcelMapping.flyweight();
+        boolean compact = mapFrom != null
+            ? mCompactTargets.contains(ClassName.bestGuess(elementTargetNames.get(mapFrom)))
+            : type.getAnnotation(AutoMapper.class).codec() == AutoMapper.Codec.COMPACT;
+        // flyweight records share the helpers of the binary codec
+        BinaryCodecs binaryCodecs = isBinary || isFlyweight
+            ? new BinaryCodecs(processingEnv, compact, mBinaryTargets, typeAdapters)
+            : null;
+        if (isBinary) {
+            // the same groups and headers as parcels, written without Android
+            int binaryVersion = parcelMapping != null ? parcelMapping.version() : 0;
+            List<List<Property>> binaryGroups = getParcelGroups(properties, binaryVersion);
+            for (Property property : properties) {
+                String unsupported = binaryCodecs.unsupported(property);
+                if (unsupported != null) {
+                    mErrorReporter.abortWithError(unsupported, property.element);
+                }
+            }
+            List<ParcelHeader> binaryHeaders = new ArrayList<>();
+            for (int version = 0; version < binaryGroups.size(); version++) {
+                String prefix = version == 0 ? "header" : "v" + version + "Header";
+                binaryHeaders.add(binaryCodecs.header(binaryGroups.get(version), prefix));
+            }
+            for (BinaryCodecs.Format format : BinaryCodecs.Format.values()) {
+                subClass
+                    .addMethod(generateBinaryWriteTo(format, binaryGroups, binaryCodecs, binaryHeaders, !lazyProperties.isEmpty()))
+                    .addMethod(generateBinaryReadFrom(format, classTypeName, properties, binaryGroups, binaryCodecs, binaryHeaders));
+            }
+            if (isRuntimeAvailable(BinaryCodecs.BINARY_TYPE_ADAPTER)) {
+                // the codec as a BinaryTypeAdapter, e.g. for MappedCache, only when the adapter runtime is on the classpath
+                subClass.addField(generateBinaryAdapterField(classTypeName));
+            }
+        }
+        if (isFlyweight) {
+            FlyweightLayout layout = new FlyweightLayout(processingEnv, properties, binaryCodecs);
+            for (Property property : properties) {
+                if (FlyweightLayout.RESERVED.contains(property.fieldName)) {
+                    mErrorReporter.abortWithError("flyweight readers have a " + property.fieldName
+                        + "() method of their own, rename the property", property.element);
+                }
+            }
+            for (Property property : layout.encoded()) {
+                String unsupported = binaryCodecs.unsupported(property);
+                if (unsupported != null) {
+                    mErrorReporter.abortWithError(unsupported, property.element);
+                }
+            }
+            subClass
+                .addMethod(layout.writeRecordTo(!lazyProperties.isEmpty()))
+                .addType(layout.reader(ClassName.get(pkg, className)));
+        }
+        if (binaryCodecs != null) {
+            subClass
+                .addMethods(binaryCodecs.methods())
+                .addFields(binaryCodecs.fields());
         }
 
         if (!typeAdapters.isEmpty()) {
@@ -391,6 +749,13 @@ public final class AutoMappperProcessor extends AbstractProcessor {
         for (VariableElement element : elements) {
             fieldName = element.getSimpleName().toString();
             typeElement = processingEnv.getElementUtils().getTypeElement(element.asType().toString());
+            if (TypeUtil.isMap(element, mTypeUtils, processingEnv.getElementUtils()) && TypeUtil.isIterable(element)) {
+                Property property = buildMapProperty(fieldName, element, elementTargetNames);
+                if (property != null) {
+                    builder.add(property);
+                    continue;
+                }
+            }
             if (TypeUtil.isIterable(element)) {
                 Element enclosedElement = TypeUtil.getGenericElement(element, processingEnv.getElementUtils());
                 if (enclosedElement instanceof TypeElement && elementTargetNames.containsKey(enclosedElement)) {
@@ -398,8 +763,14 @@ public final class AutoMappperProcessor extends AbstractProcessor {
                     ClassName collection = ClassName.bestGuess(rawType.toString());
                     String target = elementTargetNames.get(enclosedElement);
                     if (target != null) {
+                        if (!MappedCollections.isSupported(collection)) {
+                            mErrorReporter.abortWithError("Collection type `" + collection + "` not supported", element);
+                        }
                         TypeName finalCollection = ParameterizedTypeName.get(collection, ClassName.bestGuess(target));
-                        builder.add(new Property(fieldName, finalCollection, element, true));
+                        Property property = new Property(fieldName, finalCollection, element, true);
+                        property.mappedSource = (TypeElement) enclosedElement;
+                        property.mappedTarget = ClassName.bestGuess(target);
+                        builder.add(property);
                         continue;
                     }
                 }
@@ -408,19 +779,23 @@ public final class AutoMappperProcessor extends AbstractProcessor {
                 if (enclosedElement != null && elementTargetNames.containsKey(enclosedElement)) {
                     ClassName className = ClassName.bestGuess(elementTargetNames.get(enclosedElement));
                     ArrayTypeName mappedArray = ArrayTypeName.of(className);
-                    builder.add(new Property(fieldName, mappedArray, element, true));
+                    Property property = new Property(fieldName, mappedArray, element, true);
+                    property.mappedSource = (TypeElement) enclosedElement;
+                    property.mappedTarget = className;
+                    builder.add(property);
                     continue;
                 }
             } else if (elementTargetNames.containsKey(typeElement)) {
                 Element mapped = processingEnv.getElementUtils().getTypeElement(elementTargetNames.get(typeElement));
-                builder.add(
-                    new Property(
-                        fieldName,
-                        (mapped != null ? TypeName.get(mapped.asType()) : ClassName.bestGuess(elementTargetNames.get(typeElement))),
-                        (mapped != null ? (VariableElement) mapped : element),
-                        true
-                    )
+                Property property = new Property(
+                    fieldName,
+                    (mapped != null ? TypeName.get(mapped.asType()) : ClassName.bestGuess(elementTargetNames.get(typeElement))),
+                    (mapped != null ? (VariableElement) mapped : element),
+                    true
                 );
+                property.mappedSource = typeElement;
+                property.mappedTarget = ClassName.bestGuess(elementTargetNames.get(typeElement));
+                builder.add(property);
                 continue;
             }
             builder.add(new Property(fieldName, element));
@@ -470,53 +845,235 @@ public final class AutoMappperProcessor extends AbstractProcessor {
         return builder.build();
     }
 
+    /**
+     * Splits the properties into the groups of the versions they were added in, the group of
+     * version 0 holding the properties without <code>@ParcelVersion</code>.
+     */
+    private List<List<Property>> getParcelGroups(List<Property> properties, int version) {
+        List<List<Property>> groups = new ArrayList<>();
+        for (int i = 0; i <= version; i++) {
+            groups.add(new ArrayList<Property>());
+        }
+        for (Property property : properties) {
+            if (property.version() > version) {
+                mErrorReporter.abortWithError("@ParcelVersion(from = " + property.version()
+                    + ") requires the mapping version to be at least " + property.version(), property.element);
+            }
+            groups.get(property.version()).add(property);
+        }
+
+        return groups;
+    }
+
+    /**
+     * Reports every property without typed codec or type adapter which <code>Parcel</code> would write
+     * reflectively, all of them rather than the first only.
+     */
+    private void reportReflectiveFallbacks(
+        List<Property> properties,
+        ImmutableMap<TypeMirror, FieldSpec> typeAdapters,
+        ParcelCodecs codecs
+    ) {
+        for (Property p : properties) {
+            if (p.typeAdapter != null && typeAdapters.containsKey(p.typeAdapter) && !codecs.adaptsElements(p)
+                || codecs.supports(p)) {
+                continue;
+            }
+            String fallback = Parcelables.reflectiveFallback(Parcelables.getTypeNameFromProperty(p, mTypeUtils));
+            if (fallback != null) {
+                mErrorReporter.reportError("strict mode: " + p.fieldName + " would be parcelled with " + fallback + ";"
+                    + " give it a @ParcelAdapter or only use types with a typed codec: strings, primitives, final"
+                    + " Parcelables and plain classes with public fields and a public no-arg constructor, or lists,"
+                    + " arrays and maps of them", p.element);
+            }
+        }
+    }
+
+    /**
+     * Generates <code>writeTo</code>, writing the version of versioned classes and then every group of
+     * properties as its header followed by its properties. Unlike parcels the groups are not prefixed by
+     * their length, data of a newer version cannot be read and is rejected by <code>readFrom</code>.
+     */
+    private MethodSpec generateBinaryWriteTo(
+        BinaryCodecs.Format format,
+        List<List<Property>> groups,
+        BinaryCodecs codecs,
+        List<ParcelHeader> headers,
+        boolean lazy
+    ) {
+        MethodSpec.Builder builder = format.throwing(MethodSpec.methodBuilder("writeTo")
+            .addModifiers(PUBLIC)
+            .addParameter(format.output, "out"));
+
+        if (lazy) {
+            // lazy properties are written from their fields
+            builder.addStatement("materializeAll()");
+        }
+        if (groups.size() > 1) {
+            builder.addCode(codecs.writeUnsigned(format, "out", String.valueOf(groups.size() - 1)));
+        }
+        for (int version = 0; version < groups.size(); version++) {
+            if (groups.size() > 1) {
+                builder.addCode("// properties added in version $L\n", version);
+            }
+            List<Property> group = groups.get(version);
+            ParcelHeader header = headers.get(version);
+            builder.addCode(header.write(group, word -> codecs.writeUnsigned(format, "out", word)));
+            for (Property property : group) {
+                builder.addCode(codecs.write(property, format, "out", header));
+            }
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Generates <code>readFrom</code>, the counterpart of {@link #generateBinaryWriteTo}. Groups of
+     * versions older than the current one are read when the data has them, the properties of newer
+     * groups keep their default value.
+     */
+    private MethodSpec generateBinaryReadFrom(
+        BinaryCodecs.Format format,
+        TypeName typeName,
+        List<Property> properties,
+        List<List<Property>> groups,
+        BinaryCodecs codecs,
+        List<ParcelHeader> headers
+    ) {
+        MethodSpec.Builder builder = format.throwing(MethodSpec.methodBuilder("readFrom")
+            .addModifiers(PUBLIC, STATIC)
+            .returns(typeName)
+            .addParameter(format.input, "in"));
+
+        // locals must not shadow the properties, which the headers are written by
+        NameAllocator names = new NameAllocator();
+        for (Property property : properties) {
+            names.newName(property.fieldName, property);
+        }
+        names.newName("in");
+        for (ParcelHeader header : headers) {
+            header.reserveNames(names);
+        }
+        String value = names.newName("value");
+        String version = groups.size() > 1 ? names.newName("version") : null;
+
+        if (version != null) {
+            int current = groups.size() - 1;
+            builder.addStatement("int $N = $L", version, codecs.readUnsigned(format, "in"));
+            builder.beginControlFlow("if ($N > $L)", version, current);
+            builder.addStatement("throw new $T($S + $N + $S)", format.failure(), "Version ", version, " is newer than " + current);
+            builder.endControlFlow();
+        }
+        builder.addStatement("$T $N = new $T()", typeName, value, typeName);
+        for (int g = 0; g < groups.size(); g++) {
+            if (g > 0) {
+                builder.beginControlFlow("if ($N >= $L)", version, g);
+            }
+            List<Property> group = groups.get(g);
+            ParcelHeader header = headers.get(g);
+            builder.addCode(header.read(codecs.readUnsigned(format, "in")));
+            for (Property property : group) {
+                builder.addStatement("$N.$N = $L", value, property.fieldName, codecs.read(property, format, "in", header));
+            }
+            if (g > 0) {
+                builder.endControlFlow();
+            }
+        }
+
+        return builder.addStatement("return $N", value).build();
+    }
+
     private MethodSpec generateConstructorFromParcel(
             ProcessingEnvironment env,
-            ImmutableList<Property> properties,
-            ImmutableMap<TypeMirror, FieldSpec> typeAdapters) {
+            List<List<Property>> groups,
+            ImmutableMap<TypeMirror, FieldSpec> typeAdapters,
+            ParcelCodecs codecs,
+            List<ParcelHeader> headers,
+            ParcelScope scope) {
 
         // Create the PRIVATE constructor from Parcel
         MethodSpec.Builder builder = MethodSpec.constructorBuilder()
                 .addModifiers(PRIVATE)      // private
                 .addParameter(ClassName.bestGuess("android.os.Parcel"), "in"); // input param
 
+        if (groups.size() == 1) {
+            // not versioned, the properties are all there is
+            CodeBlock body = generateReadGroup(env, groups.get(0), typeAdapters, codecs, headers.get(0));
+            return builder.addCode(scope.wrap(body, "in", true)).build();
+        }
+
+        // First thing is reading the Parcelable object version, then every group behind its byte length
+        CodeBlock.Builder body = CodeBlock.builder();
+        body.addStatement("int version = in.readInt()");
+        body.addStatement("int groupLength");
+        body.addStatement("int groupStart");
+        for (int version = 0; version < groups.size(); version++) {
+            if (version > 0) {
+                // groups of later versions are missing from older parcels, their properties keep their defaults
+                body.beginControlFlow("if (version >= $L)", version);
+            }
+            body.addStatement("groupLength = in.readInt()");
+            body.addStatement("groupStart = in.dataPosition()");
+            body.add(generateReadGroup(env, groups.get(version), typeAdapters, codecs, headers.get(version)));
+            body.addStatement("in.setDataPosition(groupStart + groupLength)");
+            if (version > 0) {
+                body.endControlFlow();
+            }
+        }
+
+        // the groups of newer versions are skipped without decoding them
+        body.beginControlFlow("for (int newer = $L; newer < version; newer++)", groups.size() - 1)
+            .addStatement("groupLength = in.readInt()");
+        if (scope.countsReferences()) {
+            // along with the objects they added to the table, so that later back-references keep their index
+            body.addStatement("in.setDataPosition(in.dataPosition() + groupLength - 4)")
+                .addStatement("$T.skipReferences(in, in.readInt())", ParcelCodecs.PARCEL_TABLE);
+        } else {
+            body.addStatement("in.setDataPosition(in.dataPosition() + groupLength)");
+        }
+        body.endControlFlow();
+
+        return builder.addCode(scope.wrap(body.build(), "in", true)).build();
+    }
+
+    private CodeBlock generateReadGroup(
+            ProcessingEnvironment env,
+            List<Property> properties,
+            ImmutableMap<TypeMirror, FieldSpec> typeAdapters,
+            ParcelCodecs codecs,
+            ParcelHeader header) {
+
         // get a code block builder
         CodeBlock.Builder block = CodeBlock.builder();
 
-//        // First thing is reading the Parcelable object version
-//        block.add("this.version = in.readInt();\n");
+        // the enum schema and the null flags and booleans go first
+        CodeBlock enumSchema = codecs.readEnumSchema(properties, "in");
+        if (enumSchema != null) {
+            block.add(enumSchema);
+        }
+        block.add(header.read("in"));
 
-        // Now, iterate all properties, check the version initialize them
+        // Now, iterate all properties and initialize them
         for (Property p : properties) {
-
-//            // get the property version
-//            int pVersion = p.version();
-//            if (pVersion > 0) {
-//                block.beginControlFlow("if (this.version >= $L)", pVersion);
-//            }
-
             block.add("this.$N = ", p.fieldName);
 
-            if (p.typeAdapter != null && typeAdapters.containsKey(p.typeAdapter)) {
-                Parcelables.readValueWithTypeAdapter(block, p, typeAdapters.get(p.typeAdapter));
+            if (codecs.adaptsElements(p) && !codecs.supports(p)) {
+                mErrorReporter.abortWithError("the parcel adapter adapts neither " + p.typeName + " nor its elements", p.element);
+            }
+            if (p.typeAdapter != null && typeAdapters.containsKey(p.typeAdapter) && !codecs.adaptsElements(p)) {
+                Parcelables.readValueWithTypeAdapter(block, p, typeAdapters.get(p.typeAdapter), header);
             } else {
                 TypeName parcelableType = Parcelables.getTypeNameFromProperty(p, env.getTypeUtils());
-                if (parcelableType == null) {
+                if (parcelableType == null && !codecs.supports(p)) {
                     mErrorReporter.abortWithError("could not create parcelable for type " + p.typeName, p.element);
                 }
-                Parcelables.readValue(block, p, parcelableType);
+                Parcelables.readValue(block, p, parcelableType, codecs, header);
             }
 
             block.add(";\n");
-
-//            if (pVersion > 0) {
-//                block.endControlFlow();
-//            }
         }
 
-        builder.addCode(block.build());
-
-        return builder.build();
+        return block.build();
     }
 
     private String generatedSubclassName(TypeElement type, int depth) {
@@ -542,10 +1099,14 @@ public final class AutoMappperProcessor extends AbstractProcessor {
     }
 
     private MethodSpec generateWriteToParcel(
-        int version,
         ProcessingEnvironment env,
-        ImmutableList<Property> properties,
-        ImmutableMap<TypeMirror, FieldSpec> typeAdapters
+        List<Property> properties,
+        List<List<Property>> groups,
+        ImmutableMap<TypeMirror, FieldSpec> typeAdapters,
+        ParcelCodecs codecs,
+        List<ParcelHeader> headers,
+        ParcelScope scope,
+        boolean lazy
     ) {
         ParameterSpec dest = ParameterSpec
                 .builder(ClassName.get("android.os", "Parcel"), "dest")
@@ -556,23 +1117,194 @@ public final class AutoMappperProcessor extends AbstractProcessor {
                 .addModifiers(PUBLIC)
                 .addParameter(dest)
                 .addParameter(flags);
-//
-//        // write first the parcelable object version...
-//        builder.addCode(Parcelables.writeVersion(version, dest));
+
+        if (lazy) {
+            // lazy properties are written from their fields
+            builder.addStatement("materializeAll()");
+        }
+
+        if (groups.size() == 1) {
+            // not versioned, the properties are all there is
+            CodeBlock body = generateWriteGroup(env, groups.get(0), typeAdapters, codecs, headers.get(0), dest, flags);
+            return builder.addCode(scope.wrap(body, dest.name, false)).build();
+        }
+
+        // locals must not shadow the properties, which are written by their simple name
+        NameAllocator names = new NameAllocator();
+        for (Property property : properties) {
+            names.newName(property.fieldName, property);
+        }
+        String lengthPosition = names.newName("lengthPosition");
+        String groupEnd = names.newName("groupEnd");
+        String groupReferences = names.newName("groupReferences");
+
+        // write first the parcelable object version, then every group behind its byte length
+        CodeBlock.Builder body = CodeBlock.builder();
+        body.add(Parcelables.writeVersion(groups.size() - 1, dest));
+        body.addStatement("int $N", lengthPosition);
+        body.addStatement("int $N", groupEnd);
+        if (scope.countsReferences()) {
+            body.addStatement("int $N", groupReferences);
+        }
+        for (int version = 0; version < groups.size(); version++) {
+            // only groups after the first can be skipped, and need to tell how many objects they added
+            boolean counted = version > 0 && scope.countsReferences();
+            body.add("// properties added in version $L\n", version);
+            body.addStatement("$N = $N.dataPosition()", lengthPosition, dest);
+            body.addStatement("$N.writeInt(0)", dest);
+            if (counted) {
+                body.addStatement("$N = $T.referenceCount($N)", groupReferences, ParcelCodecs.PARCEL_TABLE, dest);
+            }
+            body.add(generateWriteGroup(env, groups.get(version), typeAdapters, codecs, headers.get(version), dest, flags));
+            if (counted) {
+                body.addStatement("$N.writeInt($T.referenceCount($N) - $N)", dest, ParcelCodecs.PARCEL_TABLE, dest, groupReferences);
+            }
+            body.addStatement("$N = $N.dataPosition()", groupEnd, dest);
+            body.addStatement("$N.setDataPosition($N)", dest, lengthPosition);
+            body.addStatement("$N.writeInt($N - $N - 4)", dest, groupEnd, lengthPosition);
+            body.addStatement("$N.setDataPosition($N)", dest, groupEnd);
+        }
+
+        return builder.addCode(scope.wrap(body.build(), dest.name, false)).build();
+    }
+
+    private CodeBlock generateWriteGroup(
+        ProcessingEnvironment env,
+        List<Property> properties,
+        ImmutableMap<TypeMirror, FieldSpec> typeAdapters,
+        ParcelCodecs codecs,
+        ParcelHeader header,
+        ParameterSpec dest,
+        ParameterSpec flags
+    ) {
+        CodeBlock.Builder block = CodeBlock.builder();
+
+        // the enum schema and the header go first
+        CodeBlock enumSchema = codecs.writeEnumSchema(properties, dest.name);
+        if (enumSchema != null) {
+            block.add(enumSchema);
+        }
+        block.add(header.write(properties, dest.name));
 
         // ...then write all the properties
         for (Property p : properties) {
-            if (p.typeAdapter != null && typeAdapters.containsKey(p.typeAdapter)) {
+            if (p.typeAdapter != null && typeAdapters.containsKey(p.typeAdapter) && !codecs.adaptsElements(p)) {
                 FieldSpec typeAdapter = typeAdapters.get(p.typeAdapter);
-                builder.addCode(Parcelables.writeValueWithTypeAdapter(typeAdapter, p, dest));
+                block.add(Parcelables.writeValueWithTypeAdapter(typeAdapter, p, dest));
             } else {
-                builder.addCode(Parcelables.writeValue(p, dest, flags, env.getTypeUtils()));
+                block.add(Parcelables.writeValue(p, dest, flags, env.getTypeUtils(), codecs, header));
+            }
+        }
+
+        return block.build();
+    }
+
+    /**
+     * Generates <code>parcelSizeHint()</code>, which adds the sizes of the properties whose size depends
+     * on their value to the bytes every parcel of the class takes. Objects parcelled by identity and
+     * deduplicated strings count once per table of the parcel, as they are written once per table.
+     */
+    private MethodSpec generateParcelSizeHint(
+        ProcessingEnvironment env,
+        List<Property> properties,
+        List<List<Property>> groups,
+        ImmutableMap<TypeMirror, FieldSpec> typeAdapters,
+        ParcelCodecs codecs,
+        List<ParcelHeader> headers,
+        ParcelScope scope,
+        boolean identity,
+        boolean lazy
+    ) {
+        // locals must not shadow the properties, which are read by their simple name
+        NameAllocator names = new NameAllocator();
+        for (Property property : properties) {
+            names.newName(property.fieldName, property);
+        }
+        String size = names.newName("size");
+
+        // the version and the length of every group
+        int fixedSize = groups.size() > 1 ? 4 + groups.size() * 4 : 0;
+        if (scope.countsReferences()) {
+            // the number of objects added by every group after the first
+            fixedSize += (groups.size() - 1) * 4;
+        }
+        if (identity) {
+            // the marker of a new object
+            fixedSize += 4;
+        }
+        CodeBlock.Builder variableSize = CodeBlock.builder();
+        for (int version = 0; version < groups.size(); version++) {
+            ParcelHeader header = headers.get(version);
+            if (codecs.writeEnumSchema(groups.get(version), "dest") != null) {
+                fixedSize += 4;
+            }
+            fixedSize += header.size();
+            for (Property p : groups.get(version)) {
+                CodeBlock valueSize;
+                if (p.typeAdapter != null && typeAdapters.containsKey(p.typeAdapter) && !codecs.adaptsElements(p)) {
+                    valueSize = codecs.adapterSize(p);
+                } else {
+                    valueSize = Parcelables.sizeOfValue(p, env.getTypeUtils(), codecs, header);
+                }
+                if (valueSize == null) {
+                    valueSize = Parcelables.sizeOfUntypedValue(p, env.getTypeUtils(), header);
+                }
+                Integer constant = constantOf(valueSize);
+                if (header.hasNullBit(p)) {
+                    if (constant == null || constant > 0) {
+                        variableSize.beginControlFlow("if ($N != null)", p.fieldName)
+                            .addStatement("$N += $L", size, valueSize)
+                            .endControlFlow();
+                    }
+                } else if (constant != null) {
+                    fixedSize += constant;
+                } else {
+                    variableSize.addStatement("$N += $L", size, valueSize);
+                }
             }
         }
 
+        MethodSpec.Builder builder = MethodSpec.methodBuilder("parcelSizeHint")
+            .addAnnotation(Override.class)
+            .addModifiers(PUBLIC)
+            .returns(int.class);
+        CodeBlock variable = variableSize.build();
+        if (variable.isEmpty()) {
+            return builder.addStatement("return $L", fixedSize).build();
+        }
+        if (identity) {
+            // an object counted before is written as a back-reference, which also ends cycles
+            builder.beginControlFlow("if (!$T.begin(this))", ParcelCodecs.PARCEL_SIZES)
+                .addStatement("return 4")
+                .endControlFlow()
+                .beginControlFlow("try");
+        }
+        CodeBlock.Builder body = CodeBlock.builder();
+        if (lazy) {
+            // lazy properties are sized from their fields
+            body.addStatement("materializeAll()");
+        }
+        body.addStatement("int $N = $L", size, fixedSize)
+            .add(variable)
+            .addStatement("return $N", size);
+        builder.addCode(scope.wrapSize(body.build()));
+        if (identity) {
+            builder.nextControlFlow("finally")
+                .addStatement("$T.end()", ParcelCodecs.PARCEL_SIZES)
+                .endControlFlow();
+        }
+
         return builder.build();
     }
 
+    private static Integer constantOf(CodeBlock size) {
+        try {
+            return Integer.valueOf(size.toString());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
     private MethodSpec generateDescribeContents() {
         return MethodSpec.methodBuilder("describeContents")
                 .addAnnotation(Override.class)
@@ -586,7 +1318,8 @@ public final class AutoMappperProcessor extends AbstractProcessor {
         ProcessingEnvironment env,
         ImmutableList<Property> properties,
         TypeName type,
-        ImmutableMap<TypeMirror, FieldSpec> typeAdapters
+        ImmutableMap<TypeMirror, FieldSpec> typeAdapters,
+        boolean identity
     ) {
         ClassName creator = ClassName.bestGuess("android.os.Parcelable.Creator");
         TypeName creatorOfClass = ParameterizedTypeName.get(creator, type);
@@ -594,7 +1327,18 @@ public final class AutoMappperProcessor extends AbstractProcessor {
         Types typeUtils = env.getTypeUtils();
         CodeBlock.Builder ctorCall = CodeBlock.builder();
         boolean requiresSuppressWarnings = false;
-        ctorCall.add("return new $T(in);\n", type);
+        if (identity) {
+            // an object read before is shared, only new objects are read in full
+            ctorCall.addStatement("$T table = $T.begin(in)", ParcelCodecs.PARCEL_TABLE, ParcelCodecs.PARCEL_TABLE);
+            ctorCall.beginControlFlow("try");
+            ctorCall.addStatement("$T shared = table.readReference()", type);
+            ctorCall.addStatement("return shared != null ? shared : new $T(in)", type);
+            ctorCall.nextControlFlow("finally");
+            ctorCall.addStatement("table.end()");
+            ctorCall.endControlFlow();
+        } else {
+            ctorCall.add("return new $T(in);\n", type);
+        }
 
         // Method createFromParcel()
         MethodSpec.Builder createFromParcel = MethodSpec.methodBuilder("createFromParcel")
@@ -656,11 +1400,108 @@ public final class AutoMappperProcessor extends AbstractProcessor {
         }
     }
 
+    /**
+     * Returns the mapped sources whose generated class is <code>Parcelable</code>: those whose mapping
+     * asks for it and, transitively, every mapped source nested in them, since a parcelable class
+     * writes its nested mapped properties through their own <code>CREATOR</code>.
+     */
+    private Set<TypeElement> getParcelableMappings(List<TypeElement> mappedElements) {
+        Set<TypeElement> parcelable = new HashSet<>();
+        for (TypeElement mappedElement : mappedElements) {
+            AutoMapper mapping = getMappingAnnotation(mappedElement);
+            TypeElement mappingType = mMappingTypes.get(mappedElement);
+            if (mapping != null && mapping.parcelable()
+                || mappingType != null && ancestoIsParcelable(processingEnv, mappingType)) {
+                parcelable.add(mappedElement);
+            }
+        }
+
+        return addNestedMappings(parcelable, mappedElements);
+    }
+
+    /**
+     * Returns the mapped sources nesting, transitively, a source parcelled by identity without being
+     * parcelled by identity themselves. Their generated classes open the table of the parcel, so that
+     * the objects below them share it rather than each starting a table of their own.
+     */
+    private Set<TypeElement> getIdentityScopes(List<TypeElement> mappedElements) {
+        Set<TypeElement> scopes = new HashSet<>();
+        for (TypeElement mappedElement : mappedElements) {
+            AutoMapper mapping = getMappingAnnotation(mappedElement);
+            if (mapping != null && mapping.parcelIdentity()) {
+                continue;
+            }
+            Set<TypeElement> nested = addNestedMappings(new HashSet<>(Collections.singleton(mappedElement)), mappedElements);
+            for (TypeElement element : nested) {
+                AutoMapper nestedMapping = getMappingAnnotation(element);
+                if (nestedMapping != null && nestedMapping.parcelIdentity()) {
+                    scopes.add(mappedElement);
+                    break;
+                }
+            }
+        }
+
+        return scopes;
+    }
+
+    /**
+     * Returns the mapped sources whose generated class has one of the binary <code>codecs</code>, along
+     * with every mapped source nested in them, which the binary codec writes through their own codec.
+     */
+    private Set<TypeElement> getBinaryMappings(List<TypeElement> mappedElements, AutoMapper.Codec... codecs) {
+        List<AutoMapper.Codec> accepted = Arrays.asList(codecs);
+        Set<TypeElement> binary = new HashSet<>();
+        for (TypeElement mappedElement : mappedElements) {
+            AutoMapper mapping = getMappingAnnotation(mappedElement);
+            if (mapping != null && accepted.contains(mapping.codec())) {
+                binary.add(mappedElement);
+            }
+        }
+
+        return addNestedMappings(binary, mappedElements);
+    }
+
+    /**
+     * Adds the mapped sources nested, transitively, in <code>roots</code> to it.
+     */
+    private Set<TypeElement> addNestedMappings(Set<TypeElement> roots, List<TypeElement> mappedElements) {
+        Deque<TypeElement> pending = new ArrayDeque<>(roots);
+        while (!pending.isEmpty()) {
+            List<VariableElement> fields = new ArrayList<>();
+            addNonPrivateFields(pending.poll(), fields);
+            for (VariableElement field : fields) {
+                for (TypeElement nested : getFieldTypeElements(field)) {
+                    if (mappedElements.contains(nested) && roots.add(nested)) {
+                        pending.add(nested);
+                    }
+                }
+            }
+        }
+
+        return roots;
+    }
+
+    private List<TypeElement> getFieldTypeElements(VariableElement field) {
+        List<TypeElement> elements = new ArrayList<>();
+        if (TypeUtil.isArray(field)) {
+            TypeElement component = TypeUtil.getEnclosedArrayElement(field, processingEnv.getElementUtils());
+            if (component != null) {
+                elements.add(component);
+            }
+        } else if (field.asType().getKind() == TypeKind.DECLARED) {
+            elements.add((TypeElement) mTypeUtils.asElement(field.asType()));
+            elements.addAll(TypeUtil.getGenericElements(field, processingEnv.getElementUtils()));
+        }
+
+        return elements;
+    }
+
     private boolean ancestoIsParcelable(ProcessingEnvironment env, TypeElement type) {
         // TODO: 15/07/16 check recursively
         TypeMirror classType = type.asType();
-        TypeMirror parcelable = env.getElementUtils().getTypeElement("android.os.Parcelable").asType();
-        return TypeUtil.isClassOfType(env.getTypeUtils(), parcelable, classType);
+        TypeElement parcelable = env.getElementUtils().getTypeElement("android.os.Parcelable");
+        // classes compiled without Android, e.g. for their binary codec only, are never parcelable
+        return parcelable != null && TypeUtil.isClassOfType(env.getTypeUtils(), parcelable.asType(), classType);
     }
 
     private static AnnotationSpec createSuppressUncheckedWarningAnnotation() {
@@ -669,10 +1510,12 @@ public final class AutoMappperProcessor extends AbstractProcessor {
                 .build();
     }
 
-    private Iterable<FieldSpec> generateFieldSpecs(ImmutableList<Property> properties) {
+    private Iterable<FieldSpec> generateFieldSpecs(ImmutableList<Property> properties, Set<String> lazyNames) {
         List<FieldSpec> fields = new ArrayList<>();
         for (Property property : properties) {
-            fields.add(FieldSpec.builder(property.typeName, property.fieldName, new Modifier[]{PUBLIC}).build());
+            // lazy properties are only reachable through their getter
+            Modifier visibility = lazyNames.contains(property.fieldName) ? PRIVATE : PUBLIC;
+            fields.add(FieldSpec.builder(property.typeName, property.fieldName, new Modifier[]{visibility}).build());
         }
 
         return fields;
@@ -683,7 +1526,8 @@ public final class AutoMappperProcessor extends AbstractProcessor {
         TypeName typeName,
         TypeElement source,
         Iterable<Property> params,
-        Map<TypeElement, String> elementTargetNames
+        Set<String> lazyNames,
+        boolean pooled
     ) {
         MethodSpec.Builder builder = MethodSpec.methodBuilder("mapFrom")
             .addModifiers(STATIC, PUBLIC, FINAL)
@@ -692,46 +1536,23 @@ public final class AutoMappperProcessor extends AbstractProcessor {
         if (source != null) {
             builder.addParameter(ClassName.bestGuess(source.toString()), "source");
 
-            builder.addStatement("$T mapped = new $T()", typeName, typeName);
+            builder.beginControlFlow("if (source == null)");
+            builder.addStatement("return null");
+            builder.endControlFlow();
+            if (pooled) {
+                builder.addStatement("$T mapped = obtain()", typeName);
+            } else {
+                builder.addStatement("$T mapped = new $T()", typeName, typeName);
+            }
             for (Property param : params) {
-                if (param.isMapped) {
-                    if (TypeUtil.isIterable(param.element)) {
-                        Element enclosedElement = TypeUtil.getGenericElement(param.element, processingEnv.getElementUtils());
-                        if (enclosedElement instanceof TypeElement && elementTargetNames.containsKey(enclosedElement)) {
-                            String target = elementTargetNames.get(enclosedElement);
-                            TypeName rawType = TypeUtil.getRawTypeOfIterable(param.element);
-                            String collectionName = TypeUtil.simpleNameOf(rawType.toString());
-                            if (target != null) {
-                                TypeName enclosedMapperType = ClassName.bestGuess(target);
-                                builder.addStatement("mapped.$N = $T.$N()", param.fieldName, ClassName.bestGuess("java.util.Collections"), getEmptyIteratorMethodName(collectionName));
-                                builder.beginControlFlow("if (source.$N != null)", param.fieldName);
-                                builder.beginControlFlow("for ($T item : source.$N)", enclosedElement.asType(), param.fieldName);
-                                builder.addStatement("mapped.$N.add($T.mapFrom(item))",param.fieldName, enclosedMapperType);
-                                builder.endControlFlow();
-                                builder.endControlFlow();
-                                continue;
-                            }
-                        }
-                    } else if (TypeUtil.isArray(param.element)) {
-                        Element enclosedElement = TypeUtil.getEnclosedArrayElement(param.element, processingEnv.getElementUtils());
-                        if (enclosedElement != null && elementTargetNames.containsKey(enclosedElement)) {
-                            ClassName className = ClassName.bestGuess(elementTargetNames.get(enclosedElement));
-                            builder.beginControlFlow("if (source.$N != null)", param.fieldName);
-                            builder.addStatement("mapped.$N = new $T[source.$N.length]", param.fieldName, className, param.fieldName);
-                            builder.beginControlFlow("for (int i = 0; i < source.$N.length; i++)", param.fieldName);
-                            builder.addStatement("mapped.$N[i] = $T.mapFrom(source.$N[i])", param.fieldName, className, param.fieldName);
-                            builder.endControlFlow();
-                            builder.nextControlFlow("else");
-                            builder.addStatement("mapped.$N = null", param.fieldName);
-                            builder.endControlFlow();
-                            continue;
-                        }
-                    }
-                    builder.addStatement("mapped.$N = $T.mapFrom(source.$N)",param.fieldName, param.typeName, param.fieldName);
-                } else {
-                    builder.addStatement("mapped.$N = source.$N", param.fieldName, param.fieldName);
+                if (!lazyNames.contains(param.fieldName)) {
+                    builder.addCode(generatePropertyMapping(param, "mapped", CodeBlock.of("")));
                 }
             }
+            if (!lazyNames.isEmpty()) {
+                builder.addStatement("mapped.lazySource = source");
+                builder.addStatement("mapped.lazyPending = LAZY_PROPERTIES");
+            }
             if (classToExtend != null && hasCustomMappingMethod(classToExtend)) {
                 builder.addStatement("mapped.map(mapped)");
             }
@@ -744,26 +1565,750 @@ public final class AutoMappperProcessor extends AbstractProcessor {
         return builder.build();
     }
 
-    private String getEmptyIteratorMethodName(String collectionName) {
-        switch (collectionName) {
-            case "List":
-            case "Collection":
-                return "emptyList";
+    /**
+     * Generates the <code>mapFrom</code> overload taking a <code>MappingContext</code>. Every source object
+     * is mapped once per context, the target is registered before its properties are mapped so shared
+     * sub-objects and cycles resolve to the same instance.
+     */
+    private MethodSpec generateMapFromContextCreator(
+        TypeElement classToExtend,
+        TypeName typeName,
+        TypeElement source,
+        Iterable<Property> params
+    ) {
+        MethodSpec.Builder builder = MethodSpec.methodBuilder("mapFrom")
+            .addModifiers(STATIC, PUBLIC, FINAL)
+            .returns(typeName)
+            .addParameter(ClassName.get(source), "source")
+            .addParameter(MAPPING_CONTEXT, "context");
+
+        builder.beginControlFlow("if (source == null)");
+        builder.addStatement("return null");
+        builder.nextControlFlow("else if (context == null)");
+        builder.addStatement("return mapFrom(source)");
+        builder.endControlFlow();
+        builder.addStatement("$T mapped = context.get(source, $T.class)", typeName, typeName);
+        builder.beginControlFlow("if (mapped != null)");
+        builder.addStatement("return mapped");
+        builder.endControlFlow();
+        if (isPooled(source)) {
+            builder.addStatement("mapped = obtain()");
+        } else {
+            builder.addStatement("mapped = new $T()", typeName);
+        }
+        builder.addStatement("context.put(source, $T.class, mapped)", typeName);
+        for (Property param : params) {
+            builder.addCode(generatePropertyMapping(param, "mapped", CodeBlock.of(", context")));
+        }
+        if (classToExtend != null && hasCustomMappingMethod(classToExtend)) {
+            builder.addStatement("mapped.map(mapped)");
+        }
+        builder.addStatement("return mapped");
 
-            case "Set":
-                return "emptySet";
+        return builder.build();
+    }
+
+    /**
+     * Returns the property of a map whose keys or values are mapped, or <code>null</code> if neither is.
+     */
+    private Property buildMapProperty(String fieldName, VariableElement element, Map<TypeElement, String> elementTargetNames) {
+        ParameterizedTypeName mapType = (ParameterizedTypeName) TypeName.get(element.asType());
+        TypeName keyType = mapType.typeArguments.get(0);
+        TypeName valueType = mapType.typeArguments.get(1);
+        TypeElement keyElement = processingEnv.getElementUtils().getTypeElement(keyType.toString());
+        TypeElement valueElement = processingEnv.getElementUtils().getTypeElement(valueType.toString());
+        String keyTarget = keyElement != null ? elementTargetNames.get(keyElement) : null;
+        String valueTarget = valueElement != null ? elementTargetNames.get(valueElement) : null;
+        if (keyTarget == null && valueTarget == null) {
+            return null;
+        }
+        if (!MappedCollections.isSupportedMap(mapType.rawType)) {
+            mErrorReporter.abortWithError("Map type `" + mapType.rawType + "` not supported", element);
+        }
 
-            case "ArrayList":
-                return "ArrayList";
+        Property property = new Property(
+            fieldName,
+            ParameterizedTypeName.get(
+                mapType.rawType,
+                keyTarget != null ? ClassName.bestGuess(keyTarget) : keyType,
+                valueTarget != null ? ClassName.bestGuess(valueTarget) : valueType
+            ),
+            element,
+            true
+        );
+        property.mappedMap = mapType.rawType;
+        if (keyTarget != null) {
+            property.mappedKeySource = keyElement;
+            property.mappedKeyTarget = ClassName.bestGuess(keyTarget);
+        }
+        if (valueTarget != null) {
+            property.mappedSource = valueElement;
+            property.mappedTarget = ClassName.bestGuess(valueTarget);
+        }
+
+        return property;
+    }
 
-            case "Map":
-                return "emptyMap";
+    private CodeBlock generateMapMapping(Property param, String targetField, String sourceField, CodeBlock mapperArgs) {
+        List<TypeName> types = ((ParameterizedTypeName) TypeName.get(param.element.asType())).typeArguments;
+
+        return MappedCollections.mapMap(
+            targetField,
+            sourceField,
+            param.fieldName,
+            param.mappedMap,
+            types.get(0),
+            param.mappedKeyTarget,
+            types.get(1),
+            param.mappedTarget,
+            mapperArgs
+        );
+    }
 
-            default:
-                throw new RuntimeException("Collection type `" + collectionName + "` not supported");
+    private CodeBlock generatePropertyMapping(Property param, String target, CodeBlock mapperArgs) {
+        String targetField = target + "." + param.fieldName;
+        String sourceField = "source." + param.fieldName;
+        if (!param.isMapped) {
+            return CodeBlock.builder().addStatement("$L = $L", targetField, sourceField).build();
+        }
+        if (param.isMappedMap()) {
+            return generateMapMapping(param, targetField, sourceField, mapperArgs);
         }
+        if (param.isMappedCollection()) {
+            return MappedCollections.mapCollection(
+                targetField,
+                sourceField,
+                param.fieldName,
+                (ClassName) TypeUtil.getRawTypeOfIterable(param.element),
+                TypeName.get(param.mappedSource.asType()),
+                param.mappedTarget,
+                mapperArgs
+            );
+        }
+        if (param.isMappedArray()) {
+            return MappedCollections.mapArray(
+                targetField,
+                sourceField,
+                param.fieldName,
+                TypeName.get(param.mappedSource.asType()),
+                param.mappedTarget,
+                mapperArgs
+            );
+        }
+
+        return CodeBlock.builder()
+            .addStatement("$L = $T.mapFrom($L$L)", targetField, param.mappedTarget, sourceField, mapperArgs)
+            .build();
+    }
+
+    /**
+     * Generates <code>mapInto</code>, which overwrites the properties of an existing target. Nested
+     * mapped properties, list and array elements are mapped into the instances already held by the
+     * target, only missing instances are created.
+     */
+    private MethodSpec generateMapIntoCreator(
+        TypeElement classToExtend,
+        TypeName typeName,
+        TypeElement source,
+        Iterable<Property> params,
+        Set<String> lazyNames
+    ) {
+        MethodSpec.Builder builder = MethodSpec.methodBuilder("mapInto")
+            .addModifiers(STATIC, PUBLIC, FINAL)
+            .returns(typeName)
+            .addParameter(ClassName.get(source), "source")
+            .addParameter(typeName, "target");
+
+        builder.beginControlFlow("if (source == null)");
+        builder.addStatement("return null");
+        builder.endControlFlow();
+        builder.beginControlFlow("if (target == null)");
+        builder.addStatement("return mapFrom(source)");
+        builder.endControlFlow();
+        for (Property param : params) {
+            if (!lazyNames.contains(param.fieldName)) {
+                builder.addCode(generatePropertyMappingInto(param, "target"));
+            }
+        }
+        if (!lazyNames.isEmpty()) {
+            builder.addStatement("target.lazySource = source");
+            builder.addStatement("target.lazyPending = LAZY_PROPERTIES");
+        }
+        if (classToExtend != null && hasCustomMappingMethod(classToExtend)) {
+            builder.addStatement("target.map(target)");
+        }
+        builder.addStatement("return target");
+
+        return builder.build();
+    }
+
+    private CodeBlock generatePropertyMappingInto(Property param, String target) {
+        String targetField = target + "." + param.fieldName;
+        String sourceField = "source." + param.fieldName;
+        if (!param.isMapped) {
+            return CodeBlock.builder().addStatement("$L = $L", targetField, sourceField).build();
+        }
+        if (param.isMappedMap()) {
+            // maps can not reuse their values by position, they are rebuilt like sets
+            return generateMapMapping(param, targetField, sourceField, CodeBlock.of(""));
+        }
+        if (param.isMappedCollection()) {
+            return MappedCollections.mapCollectionInto(
+                targetField,
+                sourceField,
+                param.fieldName,
+                (ClassName) TypeUtil.getRawTypeOfIterable(param.element),
+                TypeName.get(param.mappedSource.asType()),
+                param.mappedTarget,
+                isPooled(param.mappedSource)
+            );
+        }
+        if (param.isMappedArray()) {
+            return MappedCollections.mapArrayInto(
+                targetField,
+                sourceField,
+                param.fieldName,
+                TypeName.get(param.mappedSource.asType()),
+                param.mappedTarget,
+                isPooled(param.mappedSource)
+            );
+        }
+
+        return CodeBlock.builder()
+            .addStatement("$L = $T.mapInto($L, $L)", targetField, param.mappedTarget, sourceField, targetField)
+            .build();
+    }
+
+    private List<Property> getLazyProperties(List<Property> mappedProperties) {
+        List<Property> lazyProperties = new ArrayList<>();
+        for (Property property : mappedProperties) {
+            // pending properties are tracked in the bits of a long, any further one is mapped eagerly
+            if (property.isMapped && lazyProperties.size() < Long.SIZE) {
+                lazyProperties.add(property);
+            }
+        }
+
+        return lazyProperties;
+    }
+
+    /**
+     * Generates the state and the getters of lazy properties. The source is kept until every lazy
+     * property has been read once, each bit of <code>lazyPending</code> marks a property still to be
+     * mapped. Properties are mapped under the instance lock, the volatile write of
+     * <code>lazyPending</code> publishes them to the unsynchronized getters. Properties are mapped
+     * with <code>mapInto</code>, so a target re-armed by <code>mapInto</code> reuses its instances.
+     */
+    private void addLazyProperties(TypeSpec.Builder subClass, TypeElement source, List<Property> lazyProperties) {
+        long all = lazyProperties.size() == Long.SIZE ? -1L : (1L << lazyProperties.size()) - 1;
+        subClass.addField(FieldSpec.builder(long.class, "LAZY_PROPERTIES", PRIVATE, STATIC, FINAL)
+            .initializer("0x$LL", Long.toHexString(all))
+            .build());
+        subClass.addField(FieldSpec.builder(ClassName.get(source), "lazySource", PRIVATE).build());
+        subClass.addField(FieldSpec.builder(long.class, "lazyPending", PRIVATE, Modifier.VOLATILE).build());
+
+        MethodSpec.Builder materializeAll = MethodSpec.methodBuilder("materializeAll")
+            .addJavadoc("Maps all pending lazy properties and releases the source.\n")
+            .addModifiers(PUBLIC)
+            .beginControlFlow("if (lazyPending != 0L)");
+        for (int i = 0; i < lazyProperties.size(); i++) {
+            Property property = lazyProperties.get(i);
+            String flag = "0x" + Long.toHexString(1L << i) + "L";
+            String suffix = CaseFormat.LOWER_CAMEL.to(CaseFormat.UPPER_CAMEL, property.fieldName);
+
+            subClass.addMethod(MethodSpec.methodBuilder("get" + suffix)
+                .addModifiers(PUBLIC)
+                .returns(property.typeName)
+                .beginControlFlow("if ((lazyPending & $L) != 0L)", flag)
+                .addStatement("materialize$L()", suffix)
+                .endControlFlow()
+                .addStatement("return $N", property.fieldName)
+                .build());
+
+            subClass.addMethod(MethodSpec.methodBuilder("materialize" + suffix)
+                .addModifiers(PRIVATE, Modifier.SYNCHRONIZED)
+                .addStatement("long pending = lazyPending")
+                .beginControlFlow("if ((pending & $L) != 0L)", flag)
+                .addStatement("$T source = lazySource", ClassName.get(source))
+                .addCode(generatePropertyMappingInto(property, "this"))
+                .addStatement("pending &= ~$L", flag)
+                .beginControlFlow("if (pending == 0L)")
+                .addStatement("lazySource = null")
+                .endControlFlow()
+                .addStatement("lazyPending = pending")
+                .endControlFlow()
+                .build());
+
+            materializeAll.addStatement("materialize$L()", suffix);
+        }
+        materializeAll.endControlFlow();
+        subClass.addMethod(materializeAll.build());
+    }
+
+    /**
+     * Generates the recycling pool of a mapping, <code>mapFrom</code> takes its instances from the pool
+     * and <code>mapInto</code> hands back the list and array elements it drops. References are cleared
+     * when an instance is recycled, so the pool does not keep the objects they point to alive, and
+     * primitives which are not mapped from the source, as well as lazy ones, are reset. Recycling an
+     * instance which is in the pool already throws.
+     */
+    private void addRecyclingPool(
+        TypeSpec.Builder subClass,
+        TypeName typeName,
+        int poolSize,
+        List<Property> properties,
+        List<Property> mappedProperties,
+        Set<String> lazyNames
+    ) {
+        subClass.addField(FieldSpec.builder(ArrayTypeName.of(typeName), "POOL", PRIVATE, STATIC, FINAL)
+            .initializer("new $T[$L]", typeName, poolSize)
+            .build());
+        subClass.addField(FieldSpec.builder(int.class, "poolCount", PRIVATE, STATIC).build());
+
+        subClass.addMethod(MethodSpec.methodBuilder("obtain")
+            .addModifiers(STATIC, PUBLIC, FINAL)
+            .returns(typeName)
+            .beginControlFlow("synchronized (POOL)")
+            .beginControlFlow("if (poolCount > 0)")
+            .addStatement("$T instance = POOL[--poolCount]", typeName)
+            .addStatement("POOL[poolCount] = null")
+            .addStatement("return instance")
+            .endControlFlow()
+            .endControlFlow()
+            .addStatement("return new $T()", typeName)
+            .build());
+
+        Set<String> mappedNames = new HashSet<>();
+        for (Property property : mappedProperties) {
+            mappedNames.add(property.fieldName);
+        }
+        MethodSpec.Builder recycle = MethodSpec.methodBuilder("recycle")
+            .addModifiers(STATIC, PUBLIC, FINAL)
+            .addParameter(typeName, "instance")
+            .beginControlFlow("if (instance == null)")
+            .addStatement("return")
+            .endControlFlow()
+            .beginControlFlow("synchronized (POOL)")
+            .beginControlFlow("for (int i = 0; i < poolCount; i++)")
+            .beginControlFlow("if (POOL[i] == instance)")
+            .addStatement("throw new $T($S)", IllegalStateException.class, "Already in the pool!")
+            .endControlFlow()
+            .endControlFlow();
+        for (Property property : properties) {
+            if (!property.typeName.isPrimitive()
+                || !mappedNames.contains(property.fieldName)
+                || lazyNames.contains(property.fieldName)) {
+                recycle.addStatement("instance.$N = $L", property.fieldName, defaultValue(property.typeName));
+            }
+        }
+        if (!lazyNames.isEmpty()) {
+            recycle.addStatement("instance.lazySource = null");
+            recycle.addStatement("instance.lazyPending = 0L");
+        }
+        recycle
+            .beginControlFlow("if (poolCount < POOL.length)")
+            .addStatement("POOL[poolCount++] = instance")
+            .endControlFlow()
+            .endControlFlow();
+        subClass.addMethod(recycle.build());
+    }
+
+    private static String defaultValue(TypeName type) {
+        if (type.equals(TypeName.BOOLEAN)) {
+            return "false";
+        }
+
+        return type.isPrimitive() ? "0" : "null";
+    }
+
+    private boolean isPooled(TypeElement mapFrom) {
+        AutoMapper mapping = getMappingAnnotation(mapFrom);
+
+        return mapping != null && mapping.poolSize() > 0;
+    }
+
+    /**
+     * Adds <code>mapIterator</code> and <code>mapLazily</code>, which map each source element only when it
+     * is read, so a paged or streamed source never needs a fully mapped copy. With the adapter runtime on
+     * the classpath both also take a <code>MappingPredicate</code>, which is applied to the sources
+     * before their targets are allocated.
+     */
+    private void addMappingIterator(TypeSpec.Builder subClass, TypeName typeName, TypeElement source, boolean withPredicate) {
+        TypeName sourceName = ClassName.get(source);
+        ClassName iteratorName = ClassName.get(Iterator.class);
+        ClassName iterableName = ClassName.get(Iterable.class);
+        TypeName sourceIterator = ParameterizedTypeName.get(iteratorName, sourceName);
+        TypeName sourceIterable = ParameterizedTypeName.get(iterableName, sourceName);
+        TypeName mappedIterator = ParameterizedTypeName.get(iteratorName, typeName);
+        TypeName mappedIterable = ParameterizedTypeName.get(iterableName, typeName);
+        TypeName predicate = withPredicate
+            ? ParameterizedTypeName.get(MAPPING_PREDICATE, WildcardTypeName.supertypeOf(sourceName))
+            : null;
+        ClassName iteratorClass = ((ClassName) typeName).nestedClass("MappingIterator");
+
+        MethodSpec.Builder constructor = MethodSpec.constructorBuilder()
+            .addParameter(sourceIterator, "source")
+            .addStatement("this.source = source");
+        MethodSpec.Builder hasNext = MethodSpec.methodBuilder("hasNext")
+            .addAnnotation(Override.class)
+            .addModifiers(PUBLIC)
+            .returns(boolean.class);
+        MethodSpec.Builder next = MethodSpec.methodBuilder("next")
+            .addAnnotation(Override.class)
+            .addModifiers(PUBLIC)
+            .returns(typeName);
+        MethodSpec.Builder remove = MethodSpec.methodBuilder("remove")
+            .addAnnotation(Override.class)
+            .addModifiers(PUBLIC);
+        TypeSpec.Builder iterator = TypeSpec.classBuilder(iteratorClass)
+            .addModifiers(PRIVATE, STATIC, FINAL)
+            .addSuperinterface(mappedIterator)
+            .addField(sourceIterator, "source", PRIVATE, FINAL);
+
+        if (withPredicate) {
+            // the predicate needs to look ahead, the accepted source is held until next() maps it
+            iterator
+                .addField(predicate, "predicate", PRIVATE, FINAL)
+                .addField(sourceName, "pending", PRIVATE)
+                .addField(boolean.class, "hasPending", PRIVATE);
+            constructor
+                .addParameter(predicate, "predicate")
+                .addStatement("this.predicate = predicate");
+            hasNext
+                .beginControlFlow("if (predicate == null)")
+                .addStatement("return source.hasNext()")
+                .endControlFlow()
+                .beginControlFlow("while (!hasPending && source.hasNext())")
+                .addStatement("$T item = source.next()", sourceName)
+                .beginControlFlow("if (predicate.accept(item))")
+                .addStatement("pending = item")
+                .addStatement("hasPending = true")
+                .endControlFlow()
+                .endControlFlow()
+                .addStatement("return hasPending");
+            next
+                .beginControlFlow("if (predicate == null)")
+                .addStatement("return mapFrom(source.next())")
+                .endControlFlow()
+                .beginControlFlow("if (!hasNext())")
+                .addStatement("throw new $T()", NoSuchElementException.class)
+                .endControlFlow()
+                .addStatement("$T item = pending", sourceName)
+                .addStatement("pending = null")
+                .addStatement("hasPending = false")
+                .addStatement("return mapFrom(item)");
+            remove
+                .beginControlFlow("if (predicate != null)")
+                .addStatement("throw new $T($S)", UnsupportedOperationException.class, "remove() with a predicate")
+                .endControlFlow()
+                .addStatement("source.remove()");
+        } else {
+            hasNext.addStatement("return source.hasNext()");
+            next.addStatement("return mapFrom(source.next())");
+            remove.addStatement("source.remove()");
+        }
+
+        subClass.addType(iterator
+            .addMethod(constructor.build())
+            .addMethod(hasNext.build())
+            .addMethod(next.build())
+            .addMethod(remove.build())
+            .build());
+
+        CodeBlock noPredicate = CodeBlock.of(withPredicate ? ", null" : "");
+        subClass
+            .addMethod(MethodSpec.methodBuilder("mapIterator")
+                .addModifiers(STATIC, PUBLIC, FINAL)
+                .returns(mappedIterator)
+                .addParameter(sourceIterator, "source")
+                .beginControlFlow("if (source == null)")
+                .addStatement("return null")
+                .endControlFlow()
+                .addStatement("return new $T(source$L)", iteratorClass, noPredicate)
+                .build())
+            .addMethod(MethodSpec.methodBuilder("mapLazily")
+                .addModifiers(STATIC, PUBLIC, FINAL)
+                .returns(mappedIterable)
+                .addParameter(sourceIterable, "source", FINAL)
+                .beginControlFlow("if (source == null)")
+                .addStatement("return null")
+                .endControlFlow()
+                .addStatement("return $L", generateMappingIterable(typeName, iteratorClass, noPredicate))
+                .build());
+
+        if (withPredicate) {
+            subClass
+                .addMethod(MethodSpec.methodBuilder("mapIterator")
+                    .addModifiers(STATIC, PUBLIC, FINAL)
+                    .returns(mappedIterator)
+                    .addParameter(sourceIterator, "source")
+                    .addParameter(predicate, "predicate")
+                    .beginControlFlow("if (source == null)")
+                    .addStatement("return null")
+                    .endControlFlow()
+                    .addStatement("return new $T(source, predicate)", iteratorClass)
+                    .build())
+                .addMethod(MethodSpec.methodBuilder("mapLazily")
+                    .addModifiers(STATIC, PUBLIC, FINAL)
+                    .returns(mappedIterable)
+                    .addParameter(sourceIterable, "source", FINAL)
+                    .addParameter(predicate, "predicate", FINAL)
+                    .beginControlFlow("if (source == null)")
+                    .addStatement("return null")
+                    .endControlFlow()
+                    .addStatement("return $L", generateMappingIterable(typeName, iteratorClass, CodeBlock.of(", predicate")))
+                    .build());
+        }
+    }
+
+    private TypeSpec generateMappingIterable(TypeName typeName, ClassName iteratorClass, CodeBlock iteratorArgs) {
+        TypeName mappedIterator = ParameterizedTypeName.get(ClassName.get(Iterator.class), typeName);
+
+        return TypeSpec.anonymousClassBuilder("")
+            .addSuperinterface(ParameterizedTypeName.get(ClassName.get(Iterable.class), typeName))
+            .addMethod(MethodSpec.methodBuilder("iterator")
+                .addAnnotation(Override.class)
+                .addModifiers(PUBLIC)
+                .returns(mappedIterator)
+                .addStatement("return new $T(source.iterator()$L)", iteratorClass, iteratorArgs)
+                .build())
+            .build();
+    }
+
+    private FieldSpec generateMapperField(TypeName typeName, TypeElement source) {
+        TypeName sourceName = ClassName.get(source);
+        TypeName mapperName = ParameterizedTypeName.get(MAPPER, sourceName, typeName);
+        TypeSpec mapper = TypeSpec.anonymousClassBuilder("")
+            .addSuperinterface(mapperName)
+            .addMethod(MethodSpec.methodBuilder("map")
+                .addAnnotation(Override.class)
+                .addModifiers(PUBLIC)
+                .returns(typeName)
+                .addParameter(sourceName, "source")
+                .addStatement("return mapFrom(source)")
+                .build())
+            .addMethod(MethodSpec.methodBuilder("mapAll")
+                .addAnnotation(Override.class)
+                .addModifiers(PUBLIC)
+                .returns(ParameterizedTypeName.get(ClassName.get(List.class), typeName))
+                .addParameter(ParameterizedTypeName.get(ClassName.get(List.class), sourceName), "source")
+                .addStatement("return $T.mapAll(source)", typeName)
+                .build())
+            .addMethod(MethodSpec.methodBuilder("mapInto")
+                .addAnnotation(Override.class)
+                .addModifiers(PUBLIC)
+                .returns(typeName)
+                .addParameter(sourceName, "source")
+                .addParameter(typeName, "target")
+                .addStatement("return $T.mapInto(source, target)", typeName)
+                .build())
+            .build();
+
+        return FieldSpec.builder(mapperName, "MAPPER", PUBLIC, STATIC, FINAL)
+            .initializer("$L", mapper)
+            .build();
+    }
+
+    private FieldSpec generateBinaryAdapterField(TypeName typeName) {
+        TypeName adapterName = ParameterizedTypeName.get(BinaryCodecs.BINARY_TYPE_ADAPTER, typeName);
+        TypeSpec.Builder adapter = TypeSpec.anonymousClassBuilder("")
+            .addSuperinterface(adapterName);
+        for (BinaryCodecs.Format format : BinaryCodecs.Format.values()) {
+            adapter
+                .addMethod(format.throwing(MethodSpec.methodBuilder("fromBinary"))
+                    .addAnnotation(Override.class)
+                    .addModifiers(PUBLIC)
+                    .returns(typeName)
+                    .addParameter(format.input, "in")
+                    .addStatement("return readFrom(in)")
+                    .build())
+                .addMethod(format.throwing(MethodSpec.methodBuilder("toBinary"))
+                    .addAnnotation(Override.class)
+                    .addModifiers(PUBLIC)
+                    .addParameter(typeName, "value")
+                    .addParameter(format.output, "out")
+                    .addStatement("value.writeTo(out)")
+                    .build());
+        }
+
+        return FieldSpec.builder(adapterName, "BINARY_ADAPTER", PUBLIC, STATIC, FINAL)
+            .initializer("$L", adapter.build())
+            .build();
+    }
+
+    /**
+     * Generates the <code>mapAll</code> overloads for lists, arrays and plain iterables. The result is
+     * allocated with the exact size of the source and every element goes through the static
+     * <code>mapFrom</code> of the same class, so the call site stays monomorphic.
+     */
+    private List<MethodSpec> generateMapAllCreators(TypeName typeName, TypeElement source) {
+        TypeName sourceName = ClassName.get(source);
+        TypeName sourceList = ParameterizedTypeName.get(ClassName.get(List.class), sourceName);
+        TypeName mappedList = ParameterizedTypeName.get(ClassName.get(List.class), typeName);
+        TypeName arrayList = ClassName.get(ArrayList.class);
+
+        MethodSpec fromList = MethodSpec.methodBuilder("mapAll")
+            .addModifiers(STATIC, PUBLIC, FINAL)
+            .returns(mappedList)
+            .addParameter(sourceList, "source")
+            .beginControlFlow("if (source == null)")
+            .addStatement("return null")
+            .endControlFlow()
+            .addStatement("int size = source.size()")
+            .addStatement("$T mapped = new $T<$T>(size)", mappedList, arrayList, typeName)
+            .beginControlFlow("if (source instanceof $T)", ClassName.get("java.util", "RandomAccess"))
+            .beginControlFlow("for (int i = 0; i < size; i++)")
+            .addStatement("mapped.add(mapFrom(source.get(i)))")
+            .endControlFlow()
+            .nextControlFlow("else")
+            .beginControlFlow("for ($T item : source)", sourceName)
+            .addStatement("mapped.add(mapFrom(item))")
+            .endControlFlow()
+            .endControlFlow()
+            .addStatement("return mapped")
+            .build();
+
+        MethodSpec fromArray = MethodSpec.methodBuilder("mapAll")
+            .addModifiers(STATIC, PUBLIC, FINAL)
+            .returns(ArrayTypeName.of(typeName))
+            .addParameter(ArrayTypeName.of(sourceName), "source")
+            .beginControlFlow("if (source == null)")
+            .addStatement("return null")
+            .endControlFlow()
+            .addStatement("int length = source.length")
+            .addStatement("$T[] mapped = new $T[length]", typeName, typeName)
+            .beginControlFlow("for (int i = 0; i < length; i++)")
+            .addStatement("mapped[i] = mapFrom(source[i])")
+            .endControlFlow()
+            .addStatement("return mapped")
+            .build();
+
+        TypeName sourceCollection = ParameterizedTypeName.get(ClassName.get(Collection.class), sourceName);
+        MethodSpec fromIterable = MethodSpec.methodBuilder("mapAll")
+            .addModifiers(STATIC, PUBLIC, FINAL)
+            .returns(mappedList)
+            .addParameter(ParameterizedTypeName.get(ClassName.get(Iterable.class), sourceName), "source")
+            .beginControlFlow("if (source == null)")
+            .addStatement("return null")
+            .endControlFlow()
+            .beginControlFlow("if (source instanceof $T)", List.class)
+            .addStatement("return mapAll(($T) source)", sourceList)
+            .endControlFlow()
+            .addStatement("$T mapped = source instanceof $T ? new $T<$T>((($T) source).size()) : new $T<$T>()",
+                mappedList, Collection.class, arrayList, typeName, sourceCollection, arrayList, typeName)
+            .beginControlFlow("for ($T item : source)", sourceName)
+            .addStatement("mapped.add(mapFrom(item))")
+            .endControlFlow()
+            .addStatement("return mapped")
+            .build();
+
+        return ImmutableList.of(fromList, fromArray, fromIterable);
+    }
+
+    /**
+     * Generates <code>mapAllParallel</code>, which splits lists of at least two chunks of
+     * <code>PARALLEL_THRESHOLD</code> elements by index range and maps the chunks concurrently into
+     * a presized array. The calling thread maps the first chunk itself, then waits for the others even
+     * if its own chunk failed, the executor rejected one or the thread is interrupted, which is restored
+     * once they are done. Both paths return an <code>ArrayList</code>, like <code>mapAll</code>.
+     */
+    private MethodSpec generateMapAllParallelCreator(TypeName typeName, TypeElement source) {
+        TypeName sourceName = ClassName.get(source);
+        TypeName sourceList = ParameterizedTypeName.get(ClassName.get(List.class), sourceName);
+        TypeName mappedList = ParameterizedTypeName.get(ClassName.get(List.class), typeName);
+        TypeName failure = ParameterizedTypeName.get(ClassName.get("java.util.concurrent.atomic", "AtomicReference"),
+            ClassName.get(Throwable.class));
+
+        TypeSpec chunk = TypeSpec.anonymousClassBuilder("")
+            .superclass(Runnable.class)
+            .addMethod(MethodSpec.methodBuilder("run")
+                .addAnnotation(Override.class)
+                .addModifiers(PUBLIC)
+                .beginControlFlow("try")
+                .beginControlFlow("for (int i = from; i < to; i++)")
+                .addStatement("mapped[i] = mapFrom(list.get(i))")
+                .endControlFlow()
+                .nextControlFlow("catch ($T e)", Throwable.class)
+                .addStatement("failure.compareAndSet(null, e)")
+                .nextControlFlow("finally")
+                .addStatement("done.countDown()")
+                .endControlFlow()
+                .build())
+            .build();
+
+        return MethodSpec.methodBuilder("mapAllParallel")
+            .addModifiers(STATIC, PUBLIC, FINAL)
+            .returns(mappedList)
+            .addParameter(sourceList, "source")
+            .addParameter(ClassName.get("java.util.concurrent", "Executor"), "executor")
+            .beginControlFlow("if (source == null)")
+            .addStatement("return null")
+            .endControlFlow()
+            .addStatement("int size = source.size()")
+            .addStatement("int chunks = $T.min($T.getRuntime().availableProcessors(), size / PARALLEL_THRESHOLD)",
+                Math.class, Runtime.class)
+            .beginControlFlow("if (chunks < 2)")
+            .addStatement("return mapAll(source)")
+            .endControlFlow()
+            .addCode("// chunks are read by index, copy sequential lists once up front\n")
+            .addStatement("final $T list = source instanceof $T ? source : new $T<$T>(source)",
+                sourceList, ClassName.get("java.util", "RandomAccess"), ArrayList.class, sourceName)
+            .addStatement("final $T[] mapped = new $T[size]", typeName, typeName)
+            .addStatement("final int chunkSize = (size + chunks - 1) / chunks")
+            .addStatement("final $T done = new $T((size - 1) / chunkSize)",
+                ClassName.get("java.util.concurrent", "CountDownLatch"), ClassName.get("java.util.concurrent", "CountDownLatch"))
+            .addStatement("final $T failure = new $T()", failure, failure)
+            .addStatement("int start = chunkSize")
+            .beginControlFlow("try")
+            .beginControlFlow("for (; start < size; start += chunkSize)")
+            .addStatement("final int from = start")
+            .addStatement("final int to = $T.min(start + chunkSize, size)", Math.class)
+            .addStatement("executor.execute($L)", chunk)
+            .endControlFlow()
+            .beginControlFlow("for (int i = 0; i < chunkSize; i++)")
+            .addStatement("mapped[i] = mapFrom(list.get(i))")
+            .endControlFlow()
+            .nextControlFlow("finally")
+            .addCode("// chunks the executor rejected never count down\n")
+            .beginControlFlow("for (; start < size; start += chunkSize)")
+            .addStatement("done.countDown()")
+            .endControlFlow()
+            .addCode("// wait even if the own chunk failed, no chunk may still be mapping once this method is left\n")
+            .addStatement("boolean interrupted = false")
+            .beginControlFlow("while (done.getCount() > 0)")
+            .beginControlFlow("try")
+            .addStatement("done.await()")
+            .nextControlFlow("catch ($T e)", InterruptedException.class)
+            .addStatement("interrupted = true")
+            .endControlFlow()
+            .endControlFlow()
+            .beginControlFlow("if (interrupted)")
+            .addStatement("$T.currentThread().interrupt()", Thread.class)
+            .endControlFlow()
+            .endControlFlow()
+            .addStatement("$T error = failure.get()", Throwable.class)
+            .beginControlFlow("if (error instanceof $T)", RuntimeException.class)
+            .addStatement("throw ($T) error", RuntimeException.class)
+            .nextControlFlow("else if (error instanceof $T)", Error.class)
+            .addStatement("throw ($T) error", Error.class)
+            .endControlFlow()
+            .addStatement("$T result = new $T<$T>(size)", mappedList, ArrayList.class, typeName)
+            .addStatement("$T.addAll(result, mapped)", ClassName.get("java.util", "Collections"))
+            .addStatement("return result")
+            .build();
+    }
+
+    /**
+     * Whether a class of the runtime, e.g. the <code>adapter</code> module, is on the compile classpath
+     * of the processed sources. Generated code only refers to the runtime when it is available.
+     */
+    private boolean isRuntimeAvailable(ClassName runtimeClass) {
+        return processingEnv.getElementUtils().getTypeElement(runtimeClass.toString()) != null;
+    }
 
+    private AutoMapper getMappingAnnotation(TypeElement mapFrom) {
+        AutoMapper mapping = mMappingAnnotations.get(mapFrom);
 
+        return mapping != null ? mapping : mapFrom.getAnnotation(AutoMapper.class);
     }
 
     private static TypeMirror getMap(AutoMapper annotation) {
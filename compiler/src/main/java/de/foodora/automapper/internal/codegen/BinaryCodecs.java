@@ -0,0 +1,1021 @@
+package de.foodora.automapper.internal.codegen;
+
+/*
+ * Copyright (C) 03/05/17 Foodora GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.squareup.javapoet.ArrayTypeName;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.NameAllocator;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeVariableName;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Types;
+
+import static javax.lang.model.element.Modifier.FINAL;
+import static javax.lang.model.element.Modifier.PRIVATE;
+import static javax.lang.model.element.Modifier.STATIC;
+
+/**
+ * Generates the binary codec of the properties of one generated class, the counterpart of the parcel
+ * code which needs neither Android nor reflection. The class gets <code>writeTo</code> and
+ * <code>readFrom</code> for <code>DataOutput</code>/<code>DataInput</code> and for <code>ByteBuffer</code>,
+ * both {@link Format forms} writing the same bytes.
+ *
+ * Properties follow the rules of parcels: null flags and booleans go to a {@link ParcelHeader}, nested
+ * classes with a binary codec are written through their own <code>writeTo</code> and
+ * <code>readFrom</code> behind a null flag, and properties with a <code>ParcelAdapter</code> are written
+ * by the adapter, which must also be a <code>BinaryTypeAdapter</code>. Strings are written as the
+ * length of their UTF-8 bytes followed by the bytes, <code>-1</code> for <code>null</code>, enums by
+ * name. Lists, sets, arrays and maps are written as their size followed by the elements, elements
+ * other than strings, enums and primitives behind a marker byte.
+ *
+ * The compact profile writes the same structure without padding: <code>short</code>, <code>int</code>
+ * and <code>long</code> as zigzag varints, the header, sizes and lengths as varints, the latter plus one
+ * so that <code>0</code> stands for <code>null</code>. ASCII strings are written without encoding them.
+ *
+ * Helpers are generated as private static methods of the class, one overload per form, and are
+ * collected by {@link #methods()}.
+ */
+final class BinaryCodecs {
+    static final ClassName BINARY_TYPE_ADAPTER = ClassName.get("de.foodora.automapper", "BinaryTypeAdapter");
+    private static final ClassName STRING = ClassName.get(String.class);
+    private static final ClassName ENUM = ClassName.get(Enum.class);
+    private static final ClassName LIST = ClassName.get(List.class);
+    private static final ClassName ARRAY_LIST = ClassName.get(ArrayList.class);
+    private static final ClassName COLLECTION = ClassName.get(Collection.class);
+    private static final ClassName SET = ClassName.get(Set.class);
+    private static final ClassName HASH_SET = ClassName.get(HashSet.class);
+    private static final ClassName LINKED_HASH_SET = ClassName.get(LinkedHashSet.class);
+    private static final ClassName MAP = ClassName.get(Map.class);
+    private static final ClassName HASH_MAP = ClassName.get(HashMap.class);
+    private static final ClassName LINKED_HASH_MAP = ClassName.get(LinkedHashMap.class);
+
+    /**
+     * The two forms of the codec, which only differ in the methods they call on their parameter.
+     */
+    enum Format {
+        STREAM(ClassName.get(DataOutput.class), ClassName.get(DataInput.class)),
+        BUFFER(ClassName.get(ByteBuffer.class), ClassName.get(ByteBuffer.class));
+
+        final ClassName output;
+        final ClassName input;
+
+        Format(ClassName output, ClassName input) {
+            this.output = output;
+            this.input = input;
+        }
+
+        /**
+         * Adds the exception the methods of the form may throw to <code>method</code>.
+         */
+        MethodSpec.Builder throwing(MethodSpec.Builder method) {
+            return this == STREAM ? method.addException(IOException.class) : method;
+        }
+
+        /**
+         * The exception thrown on malformed data.
+         */
+        ClassName failure() {
+            return this == STREAM ? ClassName.get(IOException.class) : ClassName.get(IllegalArgumentException.class);
+        }
+
+        /**
+         * Returns the statement writing the <code>primitive</code> expression <code>value</code>.
+         */
+        CodeBlock write(TypeName primitive, String out, String value) {
+            if (primitive.equals(TypeName.BOOLEAN)) {
+                return this == STREAM
+                    ? CodeBlock.of("$N.writeBoolean($L);\n", out, value)
+                    : CodeBlock.of("$N.put((byte) ($L ? 1 : 0));\n", out, value);
+            }
+            if (primitive.equals(TypeName.BYTE)) {
+                return CodeBlock.of("$N.$N($L);\n", out, this == STREAM ? "writeByte" : "put", value);
+            }
+
+            return CodeBlock.of("$N.$N$N($L);\n", out, this == STREAM ? "write" : "put", suffixOf(primitive), value);
+        }
+
+        /**
+         * Returns the expression reading a <code>primitive</code>.
+         */
+        CodeBlock read(TypeName primitive, String in) {
+            if (primitive.equals(TypeName.BOOLEAN)) {
+                return this == STREAM ? CodeBlock.of("$N.readBoolean()", in) : CodeBlock.of("$N.get() != 0", in);
+            }
+            if (primitive.equals(TypeName.BYTE)) {
+                return CodeBlock.of("$N.$N()", in, this == STREAM ? "readByte" : "get");
+            }
+
+            return CodeBlock.of("$N.$N$N()", in, this == STREAM ? "read" : "get", suffixOf(primitive));
+        }
+
+        /**
+         * Returns the statement writing the marker byte of an element, <code>0</code> for <code>null</code>.
+         */
+        CodeBlock writeMarker(String out, boolean present) {
+            return write(TypeName.BYTE, out, present ? "(byte) 1" : "(byte) 0");
+        }
+
+        /**
+         * Returns the condition which holds when the marker byte read flags a present element.
+         */
+        CodeBlock readMarker(String in) {
+            return CodeBlock.of("$L != 0", read(TypeName.BYTE, in));
+        }
+
+        private static String suffixOf(TypeName primitive) {
+            String name = primitive.toString();
+
+            return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        }
+    }
+
+    private final ProcessingEnvironment env;
+    private final boolean compact;
+    private final Set<ClassName> binaryTargets;
+    private final Map<TypeMirror, FieldSpec> typeAdapters;
+    private final Map<String, MethodSpec> methods = new LinkedHashMap<>();
+    private final Map<String, FieldSpec> fields = new LinkedHashMap<>();
+    private final Map<String, String> codecNames = new HashMap<>();
+    private final NameAllocator names = new NameAllocator();
+
+    /**
+     * @param compact whether the class is written with the compact profile
+     * @param binaryTargets generated classes of this round which have a binary codec
+     * @param typeAdapters the type adapter fields of the class
+     */
+    BinaryCodecs(
+        ProcessingEnvironment env,
+        boolean compact,
+        Set<ClassName> binaryTargets,
+        Map<TypeMirror, FieldSpec> typeAdapters
+    ) {
+        this.env = env;
+        this.compact = compact;
+        this.binaryTargets = binaryTargets;
+        this.typeAdapters = typeAdapters;
+    }
+
+    Collection<MethodSpec> methods() {
+        return methods.values();
+    }
+
+    Collection<FieldSpec> fields() {
+        return fields.values();
+    }
+
+    /**
+     * Returns why <code>property</code> cannot be written by the binary codec, <code>null</code> if it
+     * can.
+     */
+    String unsupported(AutoMappperProcessor.Property property) {
+        if (isAdapted(property)) {
+            TypeMirror adapter = property.typeAdapter;
+            TypeElement binaryAdapter = env.getElementUtils().getTypeElement(BINARY_TYPE_ADAPTER.toString());
+            Types types = env.getTypeUtils();
+            if (binaryAdapter == null || !types.isAssignable(types.erasure(adapter), types.erasure(binaryAdapter.asType()))) {
+                return adapter + " must implement " + BINARY_TYPE_ADAPTER + " to write " + property.fieldName + " with the binary codec";
+            }
+            return null;
+        }
+        if (valueOf(property, Format.STREAM, "out") == null) {
+            return property.typeName + " cannot be written with the binary codec, give " + property.fieldName
+                + " a @ParcelAdapter implementing " + BINARY_TYPE_ADAPTER;
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the header of <code>properties</code>, with the same null and value bits as a parcel.
+     */
+    ParcelHeader header(List<AutoMappperProcessor.Property> properties, String prefix) {
+        Set<String> nullable = new HashSet<>();
+        Set<String> booleans = new HashSet<>();
+        for (AutoMappperProcessor.Property property : properties) {
+            boolean adapted = isAdapted(property);
+            if (property.isNullable() || !adapted && isNested(property.typeName)) {
+                nullable.add(property.fieldName);
+            }
+            if (!adapted && ParcelHeader.isBoolean(property.typeName)) {
+                booleans.add(property.fieldName);
+            }
+        }
+
+        return new ParcelHeader(properties, nullable, booleans, prefix);
+    }
+
+    /**
+     * Returns the statements writing <code>property</code> from its field to <code>out</code>.
+     */
+    CodeBlock write(AutoMappperProcessor.Property property, Format format, String out, ParcelHeader header) {
+        CodeBlock.Builder block = CodeBlock.builder();
+        if (header.hasValueBit(property)) {
+            // booleans are written by the header
+            return block.build();
+        }
+        if (header.hasNullBit(property)) {
+            // the null flag is part of the header
+            block.beginControlFlow("if ($N != null)", property.fieldName);
+        }
+        block.add(writeValue(property, format, out));
+        if (header.hasNullBit(property)) {
+            block.endControlFlow();
+        }
+
+        return block.build();
+    }
+
+    /**
+     * Returns the expression reading <code>property</code> from <code>in</code>.
+     */
+    CodeBlock read(AutoMappperProcessor.Property property, Format format, String in, ParcelHeader header) {
+        CodeBlock value;
+        if (header.hasValueBit(property)) {
+            value = header.value(property);
+        } else {
+            value = readValue(property, format, in);
+        }
+        if (header.hasNullBit(property)) {
+            return CodeBlock.of("$L ? $L : null", header.isPresent(property), value);
+        }
+
+        return value;
+    }
+
+    /**
+     * Returns the statements writing the non-null value of <code>property</code> from its field, on its
+     * own rather than through a header.
+     */
+    CodeBlock writeValue(AutoMappperProcessor.Property property, Format format, String out) {
+        if (isAdapted(property)) {
+            return CodeBlock.of("$N.toBinary($N, $N);\n", typeAdapters.get(property.typeAdapter), property.fieldName, out);
+        }
+
+        return valueOf(property, format, out);
+    }
+
+    /**
+     * Returns the expression reading the value written by {@link #writeValue}.
+     */
+    CodeBlock readValue(AutoMappperProcessor.Property property, Format format, String in) {
+        if (isAdapted(property)) {
+            return CodeBlock.of("$N.fromBinary($N)", typeAdapters.get(property.typeAdapter), in);
+        }
+
+        return readValueOf(property, format, in);
+    }
+
+    boolean isAdapted(AutoMappperProcessor.Property property) {
+        return property.typeAdapter != null && typeAdapters.containsKey(property.typeAdapter);
+    }
+
+    /**
+     * Returns the statements writing the non-null value of <code>property</code>, <code>null</code> if
+     * its type has no binary codec.
+     */
+    private CodeBlock valueOf(AutoMappperProcessor.Property property, Format format, String out) {
+        TypeName type = property.typeName;
+        Kind kind = kindOf(property);
+        if (kind == Kind.PRIMITIVE) {
+            return writePrimitive(format, type.unbox(), out, property.fieldName);
+        }
+        if (kind == Kind.STRING) {
+            return CodeBlock.of("$N($N, $N);\n", addStringCodec("write"), property.fieldName, out);
+        }
+        if (kind == Kind.ENUM) {
+            return CodeBlock.of("$N($N, $N);\n", addEnumCodec("write"), property.fieldName, out);
+        }
+        String codec = codecOf(type);
+        if (codec != null) {
+            return CodeBlock.of("write$L($N, $N);\n", codec, property.fieldName, out);
+        }
+        if (isNested(type)) {
+            // nested classes have a null flag in the header
+            return CodeBlock.of("$N.writeTo($N);\n", property.fieldName, out);
+        }
+
+        return null;
+    }
+
+    private CodeBlock readValueOf(AutoMappperProcessor.Property property, Format format, String in) {
+        TypeName type = property.typeName;
+        Kind kind = kindOf(property);
+        if (kind == Kind.PRIMITIVE) {
+            return readPrimitive(format, type.unbox(), in);
+        }
+        if (kind == Kind.STRING) {
+            return CodeBlock.of("$N($N)", addStringCodec("read"), in);
+        }
+        if (kind == Kind.ENUM) {
+            return CodeBlock.of("$N($T.class, $N)", addEnumCodec("read"), type, in);
+        }
+        String codec = codecOf(type);
+        if (codec != null) {
+            return CodeBlock.of("read$L($N)", codec, in);
+        }
+
+        return CodeBlock.of("$T.readFrom($N)", type, in);
+    }
+
+    /**
+     * Classifies <code>property</code> like parcels do, by
+     * {@link Parcelables#getTypeNameFromProperty}: primitives, boxed primitives, strings and enums are
+     * written on their own, <code>null</code> stands for every other type.
+     */
+    private Kind kindOf(AutoMappperProcessor.Property property) {
+        TypeName type = Parcelables.getTypeNameFromProperty(property, env.getTypeUtils());
+        if (type == null) {
+            return null;
+        }
+        if (type.isPrimitive() || type.isBoxedPrimitive()) {
+            return Kind.PRIMITIVE;
+        }
+        if (type.equals(STRING)) {
+            return Kind.STRING;
+        }
+
+        return type.equals(ENUM) ? Kind.ENUM : null;
+    }
+
+    /**
+     * Returns the name of the codec of the list, array or map <code>type</code>, generating it first if
+     * needed, or <code>null</code> if <code>type</code> is neither or its elements have no binary codec.
+     */
+    private String codecOf(TypeName type) {
+        if (type instanceof ArrayTypeName) {
+            TypeName item = ((ArrayTypeName) type).componentType;
+            ElementCodec codec = elementCodec(item, true);
+
+            return codec != null ? addArrayCodec(item, codec) : null;
+        }
+        if (!(type instanceof ParameterizedTypeName)) {
+            return null;
+        }
+        ParameterizedTypeName parameterized = (ParameterizedTypeName) type;
+        ClassName rawType = parameterized.rawType;
+        if ((rawType.equals(LIST) || rawType.equals(ARRAY_LIST) || rawType.equals(COLLECTION))
+            && parameterized.typeArguments.size() == 1) {
+            TypeName item = parameterized.typeArguments.get(0);
+            ElementCodec codec = elementCodec(item, false);
+
+            return codec != null ? addCollectionCodec(ARRAY_LIST, "List", item, codec) : null;
+        }
+        if ((rawType.equals(SET) || rawType.equals(HASH_SET) || rawType.equals(LINKED_HASH_SET))
+            && parameterized.typeArguments.size() == 1) {
+            TypeName item = parameterized.typeArguments.get(0);
+            ElementCodec codec = elementCodec(item, false);
+            // a plain Set is read in the order it was written in
+            ClassName concrete = rawType.equals(HASH_SET) ? HASH_SET : LINKED_HASH_SET;
+
+            return codec != null ? addCollectionCodec(concrete, concrete.equals(HASH_SET) ? "HashSet" : "Set", item, codec) : null;
+        }
+        if ((rawType.equals(MAP) || rawType.equals(HASH_MAP) || rawType.equals(LINKED_HASH_MAP))
+            && parameterized.typeArguments.size() == 2) {
+            TypeName key = parameterized.typeArguments.get(0);
+            TypeName item = parameterized.typeArguments.get(1);
+            ElementCodec keyCodec = elementCodec(key, false);
+            ElementCodec codec = elementCodec(item, false);
+
+            return keyCodec != null && codec != null ? addMapCodec(rawType, key, keyCodec, item, codec) : null;
+        }
+
+        return null;
+    }
+
+    /**
+     * Collections are read into a <code>concrete</code> collection, sets sized like
+     * <code>mapAll</code> sizes them.
+     */
+    private String addCollectionCodec(ClassName concrete, String suffix, TypeName item, ElementCodec codec) {
+        String key = concrete + ":" + item;
+        String name = codecNames.get(key);
+        if (name != null) {
+            return name;
+        }
+        name = names.newName(simpleNameOf(item) + suffix);
+        codecNames.put(key, name);
+        TypeName collection = ParameterizedTypeName.get(concrete, item);
+        CodeBlock capacity = concrete.equals(ARRAY_LIST) ? CodeBlock.of("size") : MappedCollections.hashCapacity("size");
+
+        for (Format format : Format.values()) {
+            addMethod("write" + name, format, format.throwing(MethodSpec.methodBuilder("write" + name))
+                .addModifiers(PRIVATE, STATIC)
+                .addParameter(ParameterizedTypeName.get(COLLECTION, item), "value")
+                .addParameter(format.output, "out")
+                .beginControlFlow("if (value == null)")
+                .addCode(writeSize(format, "out", null))
+                .addStatement("return")
+                .endControlFlow()
+                .addCode(writeSize(format, "out", "value.size()"))
+                .beginControlFlow("for ($T element : value)", item)
+                .addCode(codec.write(format, "out", "element"))
+                .endControlFlow()
+                .build());
+
+            addMethod("read" + name, format, format.throwing(MethodSpec.methodBuilder("read" + name))
+                .addModifiers(PRIVATE, STATIC)
+                .returns(collection)
+                .addParameter(format.input, "in")
+                .addStatement("int size = $L", readSize(format, "in"))
+                .beginControlFlow("if (size < 0)")
+                .addStatement("return null")
+                .endControlFlow()
+                .addStatement("$T value = new $T<$T>($L)", collection, concrete, item, capacity)
+                .beginControlFlow("for (int i = 0; i < size; i++)")
+                .addStatement("value.add($L)", codec.read(format, "in"))
+                .endControlFlow()
+                .addStatement("return value")
+                .build());
+        }
+
+        return name;
+    }
+
+    private String addArrayCodec(TypeName item, ElementCodec codec) {
+        String key = "array:" + item;
+        String name = codecNames.get(key);
+        if (name != null) {
+            return name;
+        }
+        name = names.newName(simpleNameOf(item) + "Array");
+        codecNames.put(key, name);
+        TypeName array = ArrayTypeName.of(item);
+
+        for (Format format : Format.values()) {
+            addMethod("write" + name, format, format.throwing(MethodSpec.methodBuilder("write" + name))
+                .addModifiers(PRIVATE, STATIC)
+                .addParameter(array, "value")
+                .addParameter(format.output, "out")
+                .beginControlFlow("if (value == null)")
+                .addCode(writeSize(format, "out", null))
+                .addStatement("return")
+                .endControlFlow()
+                .addCode(writeSize(format, "out", "value.length"))
+                .beginControlFlow("for ($T element : value)", item)
+                .addCode(codec.write(format, "out", "element"))
+                .endControlFlow()
+                .build());
+
+            addMethod("read" + name, format, format.throwing(MethodSpec.methodBuilder("read" + name))
+                .addModifiers(PRIVATE, STATIC)
+                .returns(array)
+                .addParameter(format.input, "in")
+                .addStatement("int size = $L", readSize(format, "in"))
+                .beginControlFlow("if (size < 0)")
+                .addStatement("return null")
+                .endControlFlow()
+                .addStatement("$T value = new $T[size]", array, item)
+                .beginControlFlow("for (int i = 0; i < size; i++)")
+                .addStatement("value[i] = $L", codec.read(format, "in"))
+                .endControlFlow()
+                .addStatement("return value")
+                .build());
+        }
+
+        return name;
+    }
+
+    /**
+     * Maps are read into a map of the declared type, a plain <code>Map</code> becomes a
+     * <code>LinkedHashMap</code> to keep the order it was written in.
+     */
+    private String addMapCodec(ClassName rawType, TypeName key, ElementCodec keyCodec, TypeName item, ElementCodec codec) {
+        String cacheKey = "map:" + rawType + key + item;
+        String name = codecNames.get(cacheKey);
+        if (name != null) {
+            return name;
+        }
+        name = names.newName(simpleNameOf(key) + simpleNameOf(item) + rawType.simpleName());
+        codecNames.put(cacheKey, name);
+        ClassName concrete = rawType.equals(MAP) ? LINKED_HASH_MAP : rawType;
+        TypeName map = ParameterizedTypeName.get(concrete, key, item);
+        TypeName entry = ParameterizedTypeName.get(ClassName.get(Map.Entry.class), key, item);
+
+        for (Format format : Format.values()) {
+            addMethod("write" + name, format, format.throwing(MethodSpec.methodBuilder("write" + name))
+                .addModifiers(PRIVATE, STATIC)
+                .addParameter(ParameterizedTypeName.get(MAP, key, item), "value")
+                .addParameter(format.output, "out")
+                .beginControlFlow("if (value == null)")
+                .addCode(writeSize(format, "out", null))
+                .addStatement("return")
+                .endControlFlow()
+                .addCode(writeSize(format, "out", "value.size()"))
+                .beginControlFlow("for ($T entry : value.entrySet())", entry)
+                .addStatement("$T key = entry.getKey()", key)
+                .addCode(keyCodec.write(format, "out", "key"))
+                .addStatement("$T element = entry.getValue()", item)
+                .addCode(codec.write(format, "out", "element"))
+                .endControlFlow()
+                .build());
+
+            addMethod("read" + name, format, format.throwing(MethodSpec.methodBuilder("read" + name))
+                .addModifiers(PRIVATE, STATIC)
+                .returns(map)
+                .addParameter(format.input, "in")
+                .addStatement("int size = $L", readSize(format, "in"))
+                .beginControlFlow("if (size < 0)")
+                .addStatement("return null")
+                .endControlFlow()
+                .addStatement("$T value = new $T<$T, $T>($L)", map, concrete, key, item, MappedCollections.hashCapacity("size"))
+                .beginControlFlow("for (int i = 0; i < size; i++)")
+                .addStatement("$T key = $L", key, keyCodec.read(format, "in"))
+                .addStatement("value.put(key, $L)", codec.read(format, "in"))
+                .endControlFlow()
+                .addStatement("return value")
+                .build());
+        }
+
+        return name;
+    }
+
+    /**
+     * Adds the string helpers of both forms, returns the name of the <code>prefix</code>, i.e.
+     * <code>write</code> or <code>read</code>, helper.
+     */
+    private String addStringCodec(String prefix) {
+        String name = codecNames.get("string");
+        if (name != null) {
+            return prefix + name;
+        }
+        name = names.newName("String");
+        codecNames.put("string", name);
+        String charset = names.newName("UTF_8");
+        fields.put(charset, FieldSpec.builder(Charset.class, charset, PRIVATE, STATIC, FINAL)
+            .initializer("$T.forName($S)", Charset.class, "UTF-8")
+            .build());
+
+        for (Format format : Format.values()) {
+            MethodSpec.Builder write = format.throwing(MethodSpec.methodBuilder("write" + name))
+                .addModifiers(PRIVATE, STATIC)
+                .addParameter(String.class, "value")
+                .addParameter(format.output, "out")
+                .beginControlFlow("if (value == null)")
+                .addCode(writeSize(format, "out", null))
+                .addStatement("return")
+                .endControlFlow();
+            if (compact) {
+                // ASCII strings are their own UTF-8 bytes, written char by char without encoding them first
+                write.addStatement("int length = value.length()")
+                    .addStatement("int ascii = 0")
+                    .beginControlFlow("while (ascii < length && value.charAt(ascii) < 0x80)")
+                    .addStatement("ascii++")
+                    .endControlFlow()
+                    .beginControlFlow("if (ascii == length)")
+                    .addCode(writeSize(format, "out", "length"));
+                if (format == Format.STREAM) {
+                    write.addStatement("out.writeBytes(value)");
+                } else {
+                    // heap buffers are written in place, like they are read
+                    write.beginControlFlow("if (out.hasArray() && out.remaining() >= length)")
+                        .addStatement("byte[] array = out.array()")
+                        .addStatement("int offset = out.arrayOffset() + out.position()")
+                        .beginControlFlow("for (int i = 0; i < length; i++)")
+                        .addStatement("array[offset + i] = (byte) value.charAt(i)")
+                        .endControlFlow()
+                        .addStatement("out.position(out.position() + length)")
+                        .nextControlFlow("else")
+                        .beginControlFlow("for (int i = 0; i < length; i++)")
+                        .addStatement("out.put((byte) value.charAt(i))")
+                        .endControlFlow()
+                        .endControlFlow();
+                }
+                write.addStatement("return")
+                    .endControlFlow();
+            }
+            addMethod("write" + name, format, write
+                .addStatement("byte[] bytes = value.getBytes($N)", charset)
+                .addCode(writeSize(format, "out", "bytes.length"))
+                .addStatement("out.$N(bytes)", format == Format.STREAM ? "write" : "put")
+                .build());
+
+            MethodSpec.Builder read = format.throwing(MethodSpec.methodBuilder("read" + name))
+                .addModifiers(PRIVATE, STATIC)
+                .returns(String.class)
+                .addParameter(format.input, "in")
+                .addStatement("int length = $L", readSize(format, "in"))
+                .beginControlFlow("if (length < 0)")
+                .addStatement("return null")
+                .endControlFlow();
+            if (format == Format.BUFFER) {
+                // heap buffers are decoded in place, any other buffer byte by byte, without copying the bytes first
+                read.beginControlFlow("if (length > in.remaining())")
+                    .addStatement("throw new $T()", BufferUnderflowException.class)
+                    .endControlFlow()
+                    .addStatement("int start = in.position()")
+                    .addStatement("in.position(start + length)")
+                    .beginControlFlow("if (in.hasArray())")
+                    .addStatement("return new String(in.array(), in.arrayOffset() + start, length, $N)", charset)
+                    .endControlFlow()
+                    .addCode(decodeUtf8("in", "start", "start + length"));
+            } else {
+                read.addStatement("byte[] bytes = new byte[length]")
+                    .addStatement("in.readFully(bytes)")
+                    .addStatement("return new String(bytes, $N)", charset);
+            }
+            addMethod("read" + name, format, read.build());
+        }
+
+        return prefix + name;
+    }
+
+    /**
+     * Adds the enum helpers of both forms, which write enums by name.
+     */
+    private String addEnumCodec(String prefix) {
+        String name = codecNames.get("enum");
+        if (name != null) {
+            return prefix + name;
+        }
+        name = names.newName("Enum");
+        codecNames.put("enum", name);
+        String writeString = addStringCodec("write");
+        String readString = addStringCodec("read");
+        TypeVariableName e = TypeVariableName.get("E", ParameterizedTypeName.get(ClassName.get(Enum.class), TypeVariableName.get("E")));
+
+        for (Format format : Format.values()) {
+            addMethod("write" + name, format, format.throwing(MethodSpec.methodBuilder("write" + name))
+                .addModifiers(PRIVATE, STATIC)
+                .addParameter(ParameterizedTypeName.get(ClassName.get(Enum.class), TypeVariableName.get("?")), "value")
+                .addParameter(format.output, "out")
+                .addStatement("$N(value != null ? value.name() : null, out)", writeString)
+                .build());
+
+            addMethod("read" + name, format, format.throwing(MethodSpec.methodBuilder("read" + name))
+                .addModifiers(PRIVATE, STATIC)
+                .addTypeVariable(e)
+                .returns(e)
+                .addParameter(ParameterizedTypeName.get(ClassName.get(Class.class), e), "type")
+                .addParameter(format.input, "in")
+                .addStatement("String name = $N(in)", readString)
+                .addStatement("return name != null ? $T.valueOf(type, name) : null", Enum.class)
+                .build());
+        }
+
+        return prefix + name;
+    }
+
+    /**
+     * Returns the statement writing the <code>primitive</code> expression <code>value</code>. The compact
+     * profile writes <code>short</code>, <code>int</code> and <code>long</code> as zigzag varints and
+     * <code>char</code> as a varint, the padded one every primitive at its full width.
+     */
+    CodeBlock writePrimitive(Format format, TypeName primitive, String out, String value) {
+        if (!compact) {
+            return format.write(primitive, out, value);
+        }
+        if (primitive.equals(TypeName.SHORT) || primitive.equals(TypeName.INT)) {
+            return CodeBlock.of("$N($N, $N);\n", addVarintCodec("write", "SignedVarint"), value, out);
+        }
+        if (primitive.equals(TypeName.LONG)) {
+            return CodeBlock.of("$N($N, $N);\n", addVarintCodec("write", "SignedVarlong"), value, out);
+        }
+        if (primitive.equals(TypeName.CHAR)) {
+            return CodeBlock.of("$N($N, $N);\n", addVarintCodec("write", "Varint"), value, out);
+        }
+
+        return format.write(primitive, out, value);
+    }
+
+    CodeBlock readPrimitive(Format format, TypeName primitive, String in) {
+        if (!compact) {
+            return format.read(primitive, in);
+        }
+        if (primitive.equals(TypeName.SHORT)) {
+            return CodeBlock.of("(short) $N($N)", addVarintCodec("read", "SignedVarint"), in);
+        }
+        if (primitive.equals(TypeName.INT)) {
+            return CodeBlock.of("$N($N)", addVarintCodec("read", "SignedVarint"), in);
+        }
+        if (primitive.equals(TypeName.LONG)) {
+            return CodeBlock.of("$N($N)", addVarintCodec("read", "SignedVarlong"), in);
+        }
+        if (primitive.equals(TypeName.CHAR)) {
+            return CodeBlock.of("(char) $N($N)", addVarintCodec("read", "Varint"), in);
+        }
+
+        return format.read(primitive, in);
+    }
+
+    /**
+     * Returns the statement writing the non-negative <code>int</code> expression <code>value</code>, i.e.
+     * a version or a word of a header.
+     */
+    CodeBlock writeUnsigned(Format format, String out, String value) {
+        return compact
+            ? CodeBlock.of("$N($N, $N);\n", addVarintCodec("write", "Varint"), value, out)
+            : format.write(TypeName.INT, out, value);
+    }
+
+    CodeBlock readUnsigned(Format format, String in) {
+        return compact ? CodeBlock.of("$N($N)", addVarintCodec("read", "Varint"), in) : format.read(TypeName.INT, in);
+    }
+
+    /**
+     * Returns the statement writing the size of a string or container, <code>-1</code> for
+     * <code>null</code>. The compact profile writes the size plus one as a varint, <code>0</code> for
+     * <code>null</code>.
+     *
+     * @param size the size, <code>null</code> to write the size of <code>null</code>
+     */
+    private CodeBlock writeSize(Format format, String out, String size) {
+        if (!compact) {
+            return format.write(TypeName.INT, out, size != null ? size : "-1");
+        }
+
+        return CodeBlock.of("$N($L, $N);\n", addVarintCodec("write", "Varint"), size != null ? size + " + 1" : "0", out);
+    }
+
+    private CodeBlock readSize(Format format, String in) {
+        return compact
+            ? CodeBlock.of("$N($N) - 1", addVarintCodec("read", "Varint"), in)
+            : format.read(TypeName.INT, in);
+    }
+
+    /**
+     * Adds the varint helpers of both forms, unsigned LEB128 for <code>Varint</code> and
+     * <code>Varlong</code> and zigzag encoded for their <code>Signed</code> variants, returns the name
+     * of the <code>prefix</code> helper of <code>kind</code>.
+     */
+    private String addVarintCodec(String prefix, String kind) {
+        String name = codecNames.get(kind);
+        if (name != null) {
+            return prefix + name;
+        }
+        boolean signed = kind.startsWith("Signed");
+        boolean wide = kind.endsWith("Varlong");
+        TypeName type = wide ? TypeName.LONG : TypeName.INT;
+        if (signed) {
+            String unsigned = wide ? "Varlong" : "Varint";
+            String writeUnsigned = addVarintCodec("write", unsigned);
+            String readUnsigned = addVarintCodec("read", unsigned);
+            name = names.newName(kind);
+            codecNames.put(kind, name);
+            int shift = wide ? 63 : 31;
+            for (Format format : Format.values()) {
+                addMethod("write" + name, format, format.throwing(MethodSpec.methodBuilder("write" + name))
+                    .addModifiers(PRIVATE, STATIC)
+                    .addParameter(type, "value")
+                    .addParameter(format.output, "out")
+                    .addStatement("$N((value << 1) ^ (value >> $L), out)", writeUnsigned, shift)
+                    .build());
+
+                addMethod("read" + name, format, format.throwing(MethodSpec.methodBuilder("read" + name))
+                    .addModifiers(PRIVATE, STATIC)
+                    .returns(type)
+                    .addParameter(format.input, "in")
+                    .addStatement("$T value = $N(in)", type, readUnsigned)
+                    .addStatement("return (value >>> 1) ^ -(value & 1)")
+                    .build());
+            }
+
+            return prefix + name;
+        }
+
+        name = names.newName(kind);
+        codecNames.put(kind, name);
+        String mask = wide ? "0x7fL" : "0x7f";
+        for (Format format : Format.values()) {
+            addMethod("write" + name, format, format.throwing(MethodSpec.methodBuilder("write" + name))
+                .addModifiers(PRIVATE, STATIC)
+                .addParameter(type, "value")
+                .addParameter(format.output, "out")
+                .beginControlFlow("while ((value & ~$L) != 0)", mask)
+                .addCode(format.write(TypeName.BYTE, "out", "(byte) ((value & " + mask + ") | 0x80)"))
+                .addStatement("value >>>= 7")
+                .endControlFlow()
+                .addCode(format.write(TypeName.BYTE, "out", "(byte) value"))
+                .build());
+
+            addMethod("read" + name, format, format.throwing(MethodSpec.methodBuilder("read" + name))
+                .addModifiers(PRIVATE, STATIC)
+                .returns(type)
+                .addParameter(format.input, "in")
+                .addStatement("byte b = $L", format.read(TypeName.BYTE, "in"))
+                .beginControlFlow("if (b >= 0)")
+                .addCode("// most values fit into a single byte\n")
+                .addStatement("return b")
+                .endControlFlow()
+                .addStatement("$T value = b & 0x7f", type)
+                .beginControlFlow("for (int shift = 7; shift < $L; shift += 7)", wide ? 64 : 32)
+                .addStatement("b = $L", format.read(TypeName.BYTE, "in"))
+                .addStatement(wide ? "value |= (long) (b & 0x7f) << shift" : "value |= (b & 0x7f) << shift")
+                .beginControlFlow("if (b >= 0)")
+                .addStatement("return value")
+                .endControlFlow()
+                .endControlFlow()
+                .addStatement("throw new $T($S)", format.failure(), "Malformed " + kind.toLowerCase())
+                .build());
+        }
+
+        return prefix + name;
+    }
+
+    private void addMethod(String name, Format format, MethodSpec method) {
+        methods.put(name + ":" + format, method);
+    }
+
+    /**
+     * Returns the codec of single elements of type <code>item</code>, or <code>null</code> if there is
+     * none.
+     *
+     * @param primitives whether primitive elements are allowed, i.e. the elements of an array
+     */
+    private ElementCodec elementCodec(TypeName item, boolean primitives) {
+        if (item.equals(STRING)) {
+            addStringCodec("write");
+            return new ElementCodec(Kind.STRING, item, this);
+        }
+        if (item.isPrimitive()) {
+            return primitives ? new ElementCodec(Kind.PRIMITIVE, item, this) : null;
+        }
+        if (item.isBoxedPrimitive()) {
+            return new ElementCodec(Kind.BOXED, item, this);
+        }
+        if (!(item instanceof ClassName)) {
+            return null;
+        }
+        TypeElement element = env.getElementUtils().getTypeElement(item.toString());
+        if (element != null && element.getKind() == ElementKind.ENUM) {
+            addEnumCodec("write");
+            return new ElementCodec(Kind.ENUM, item, this);
+        }
+        if (isNested(item)) {
+            return new ElementCodec(Kind.NESTED, item, this);
+        }
+
+        return null;
+    }
+
+    /**
+     * Whether <code>type</code> has a binary codec of its own: it is generated with one in this round, or
+     * has static <code>readFrom</code> methods for both forms.
+     */
+    private boolean isNested(TypeName type) {
+        if (!(type instanceof ClassName)) {
+            return false;
+        }
+        if (binaryTargets.contains(type)) {
+            return true;
+        }
+        TypeElement element = env.getElementUtils().getTypeElement(type.toString());
+        if (element == null) {
+            return false;
+        }
+        Set<TypeName> inputs = new HashSet<>();
+        for (ExecutableElement method : ElementFilter.methodsIn(element.getEnclosedElements())) {
+            if (method.getSimpleName().contentEquals("readFrom")
+                && method.getModifiers().contains(Modifier.STATIC)
+                && method.getParameters().size() == 1) {
+                inputs.add(TypeName.get(method.getParameters().get(0).asType()));
+            }
+        }
+
+        return inputs.contains(Format.STREAM.input) && inputs.contains(Format.BUFFER.input);
+    }
+
+    /**
+     * Returns the statements decoding the UTF-8 bytes of <code>buffer</code> from the absolute index
+     * <code>from</code> to <code>to</code> and returning them as a string. The bytes are decoded one at a
+     * time, straight from buffers without an accessible array, like direct and memory-mapped ones,
+     * instead of copying them to a temporary array first.
+     */
+    static CodeBlock decodeUtf8(String buffer, String from, String to) {
+        return CodeBlock.builder()
+            .addStatement("int position = $L", from)
+            .addStatement("int limit = $L", to)
+            .add("// no more chars than bytes, a pair of surrogates takes four bytes\n")
+            .addStatement("char[] chars = new char[limit - position]")
+            .addStatement("int count = 0")
+            .beginControlFlow("while (position < limit)")
+            .addStatement("int b = $N.get(position++)", buffer)
+            .beginControlFlow("if (b >= 0)")
+            .addStatement("chars[count++] = (char) b")
+            .nextControlFlow("else if ((b & 0xe0) == 0xc0)")
+            .addStatement("chars[count++] = (char) ((b & 0x1f) << 6 | $N.get(position++) & 0x3f)", buffer)
+            .nextControlFlow("else if ((b & 0xf0) == 0xe0)")
+            .addStatement("chars[count++] = (char) ((b & 0x0f) << 12 | ($N.get(position++) & 0x3f) << 6 | $N.get(position++) & 0x3f)",
+                buffer, buffer)
+            .nextControlFlow("else")
+            .addStatement("int codePoint = (b & 0x07) << 18 | ($N.get(position++) & 0x3f) << 12 | ($N.get(position++) & 0x3f) << 6"
+                + " | $N.get(position++) & 0x3f", buffer, buffer, buffer)
+            .addStatement("chars[count++] = (char) (0xd7c0 + (codePoint >>> 10))")
+            .addStatement("chars[count++] = (char) (0xdc00 + (codePoint & 0x3ff))")
+            .endControlFlow()
+            .endControlFlow()
+            .addStatement("return new $T(chars, 0, count)", String.class)
+            .build();
+    }
+
+    private static String simpleNameOf(TypeName type) {
+        if (type.isPrimitive()) {
+            String name = type.toString();
+            return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        }
+
+        return type instanceof ClassName ? ((ClassName) type).simpleName() : "Value";
+    }
+
+    private enum Kind { STRING, PRIMITIVE, BOXED, ENUM, NESTED }
+
+    /**
+     * Writes and reads one element. Strings and enums are written with a length which flags
+     * <code>null</code>, primitives as themselves and other elements behind a marker byte.
+     */
+    private static final class ElementCodec {
+        private final Kind kind;
+        private final TypeName type;
+        private final BinaryCodecs codecs;
+
+        ElementCodec(Kind kind, TypeName type, BinaryCodecs codecs) {
+            this.kind = kind;
+            this.type = type;
+            this.codecs = codecs;
+        }
+
+        /**
+         * @param element local variable holding the element
+         */
+        CodeBlock write(Format format, String out, String element) {
+            CodeBlock.Builder block = CodeBlock.builder();
+            switch (kind) {
+                case STRING:
+                    return block.addStatement("$N($N, $N)", codecs.addStringCodec("write"), element, out).build();
+                case ENUM:
+                    return block.addStatement("$N($N, $N)", codecs.addEnumCodec("write"), element, out).build();
+                case PRIMITIVE:
+                    return codecs.writePrimitive(format, type, out, element);
+                default:
+                    break;
+            }
+            block.beginControlFlow("if ($N == null)", element);
+            block.add(format.writeMarker(out, false));
+            block.nextControlFlow("else");
+            block.add(format.writeMarker(out, true));
+            if (kind == Kind.BOXED) {
+                block.add(codecs.writePrimitive(format, type.unbox(), out, element));
+            } else {
+                block.addStatement("$N.writeTo($N)", element, out);
+            }
+            block.endControlFlow();
+
+            return block.build();
+        }
+
+        CodeBlock read(Format format, String in) {
+            switch (kind) {
+                case STRING:
+                    return CodeBlock.of("$N($N)", codecs.addStringCodec("read"), in);
+                case ENUM:
+                    return CodeBlock.of("$N($T.class, $N)", codecs.addEnumCodec("read"), type, in);
+                case PRIMITIVE:
+                    return codecs.readPrimitive(format, type, in);
+                case BOXED:
+                    return CodeBlock.of("$L ? $L : null", format.readMarker(in), codecs.readPrimitive(format, type.unbox(), in));
+                default:
+                    return CodeBlock.of("$L ? $T.readFrom($N) : null", format.readMarker(in), type, in);
+            }
+        }
+    }
+}
@@ -0,0 +1,383 @@
+package de.foodora.automapper.internal.codegen;
+
+/*
+ * Copyright (C) 03/05/17 Foodora GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.squareup.javapoet.ArrayTypeName;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.NameAllocator;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.ProcessingEnvironment;
+
+import static javax.lang.model.element.Modifier.FINAL;
+import static javax.lang.model.element.Modifier.PRIVATE;
+import static javax.lang.model.element.Modifier.PUBLIC;
+import static javax.lang.model.element.Modifier.STATIC;
+
+/**
+ * The record layout of the flyweight <code>Reader</code> of a generated class, which reads the
+ * properties of a record in a <code>ByteBuffer</code> on demand instead of decoding the whole record.
+ *
+ * A record starts with its size in bytes, followed by a {@link ParcelHeader} with a null bit for every
+ * property which is not a primitive and a value bit for every boolean. Then come fixed-width slots for
+ * the other primitives, boxed primitives and enums, the latter by ordinal, widest first. Strings and all
+ * other properties are variable, the record has a table with the offset of each of them, relative to
+ * the start of the record, followed by their bytes: strings as their UTF-8 bytes, which end where the
+ * next variable property starts, other properties as written by the {@link BinaryCodecs binary codec}.
+ *
+ * Every offset is known at compile time except those of the variable properties, so reading a
+ * primitive is a single absolute read of the buffer and re-pointing the reader at another record
+ * allocates nothing.
+ */
+final class FlyweightLayout {
+    static final String READER = "Reader";
+    // the public methods of the reader, which properties must not be named after
+    static final Set<String> RESERVED = new HashSet<>(Arrays.asList("wrap", "size", "read"));
+    private static final ClassName STRING = ClassName.get(String.class);
+    private static final ClassName ENUM = ClassName.get(Enum.class);
+
+    private final ProcessingEnvironment env;
+    private final List<AutoMappperProcessor.Property> properties;
+    private final BinaryCodecs codecs;
+    private final ParcelHeader header;
+    private final Map<String, Integer> slots = new HashMap<>();
+    private final List<AutoMappperProcessor.Property> variables = new ArrayList<>();
+    private final int tableOffset;
+
+    /**
+     * @param codecs writes and reads the variable properties other than strings
+     */
+    FlyweightLayout(ProcessingEnvironment env, List<AutoMappperProcessor.Property> properties, BinaryCodecs codecs) {
+        this.env = env;
+        this.properties = properties;
+        this.codecs = codecs;
+
+        Set<String> nullable = new HashSet<>();
+        Set<String> booleans = new HashSet<>();
+        List<AutoMappperProcessor.Property> fixed = new ArrayList<>();
+        for (AutoMappperProcessor.Property property : properties) {
+            if (!property.typeName.isPrimitive()) {
+                nullable.add(property.fieldName);
+            }
+            if (codecs.isAdapted(property)) {
+                variables.add(property);
+            } else if (ParcelHeader.isBoolean(property.typeName)) {
+                booleans.add(property.fieldName);
+            } else if (widthOf(property) > 0) {
+                fixed.add(property);
+            } else {
+                variables.add(property);
+            }
+        }
+        header = new ParcelHeader(properties, nullable, booleans, "bits");
+
+        // widest first, keeping the slots aligned as far as the record is
+        fixed.sort((a, b) -> widthOf(b) - widthOf(a));
+        int offset = 4 + header.size();
+        for (AutoMappperProcessor.Property property : fixed) {
+            slots.put(property.fieldName, offset);
+            offset += widthOf(property);
+        }
+        // the offset table is aligned to its ints
+        tableOffset = (offset + 3) & ~3;
+    }
+
+    /**
+     * The bytes of a fixed-width slot of <code>property</code>, <code>0</code> for variable properties.
+     */
+    private int widthOf(AutoMappperProcessor.Property property) {
+        if (isEnum(property)) {
+            return 4;
+        }
+        TypeName type = property.typeName.isBoxedPrimitive() ? property.typeName.unbox() : property.typeName;
+        if (type.equals(TypeName.BYTE)) {
+            return 1;
+        }
+        if (type.equals(TypeName.SHORT) || type.equals(TypeName.CHAR)) {
+            return 2;
+        }
+        if (type.equals(TypeName.INT) || type.equals(TypeName.FLOAT)) {
+            return 4;
+        }
+        if (type.equals(TypeName.LONG) || type.equals(TypeName.DOUBLE)) {
+            return 8;
+        }
+
+        return 0;
+    }
+
+    private boolean isEnum(AutoMappperProcessor.Property property) {
+        return ENUM.equals(Parcelables.getTypeNameFromProperty(property, env.getTypeUtils()));
+    }
+
+    /**
+     * The properties written with the binary codec, which must support them.
+     */
+    List<AutoMappperProcessor.Property> encoded() {
+        List<AutoMappperProcessor.Property> encoded = new ArrayList<>();
+        for (AutoMappperProcessor.Property property : variables) {
+            if (codecs.isAdapted(property) || !property.typeName.equals(STRING)) {
+                encoded.add(property);
+            }
+        }
+
+        return encoded;
+    }
+
+    /**
+     * Generates <code>writeRecordTo</code>, which writes the object as a record at the position of the
+     * buffer and moves the position past it.
+     */
+    MethodSpec writeRecordTo(boolean lazy) {
+        // locals must not shadow the properties, which the record is written from
+        NameAllocator names = new NameAllocator();
+        for (AutoMappperProcessor.Property property : properties) {
+            names.newName(property.fieldName, property);
+        }
+        names.newName("out");
+        header.reserveNames(names);
+        String start = names.newName("start");
+        String size = names.newName("size");
+
+        MethodSpec.Builder builder = MethodSpec.methodBuilder("writeRecordTo")
+            .addJavadoc("Writes this object as a record of {@link $N} at the position of {@code out}.\n", READER)
+            .addJavadoc("@return The size of the record.\n")
+            .addModifiers(PUBLIC)
+            .returns(TypeName.INT)
+            .addParameter(ByteBuffer.class, "out");
+
+        if (lazy) {
+            // lazy properties are written from their fields
+            builder.addStatement("materializeAll()");
+        }
+        builder.addStatement("int $N = out.position()", start);
+        builder.addCode(header.write(properties, word ->
+            CodeBlock.of("out.putInt($N + $L, $N);\n", start, 4 + 4 * header.indexOf(word), word)));
+        for (AutoMappperProcessor.Property property : properties) {
+            Integer slot = slots.get(property.fieldName);
+            if (slot == null) {
+                continue;
+            }
+            CodeBlock value = isEnum(property)
+                ? CodeBlock.of("$N.ordinal()", property.fieldName)
+                : CodeBlock.of("$N", property.fieldName);
+            if (header.hasNullBit(property)) {
+                builder.beginControlFlow("if ($N != null)", property.fieldName);
+            }
+            builder.addStatement("out.$N($N + $L, $L)", putterOf(property), start, slot, value);
+            if (header.hasNullBit(property)) {
+                builder.endControlFlow();
+            }
+        }
+
+        builder.addStatement("out.position($N + $L)", start, tableOffset + 4 * variables.size());
+        for (int i = 0; i < variables.size(); i++) {
+            AutoMappperProcessor.Property property = variables.get(i);
+            builder.addStatement("out.putInt($N + $L, out.position() - $N)", start, tableOffset + 4 * i, start);
+            if (header.hasNullBit(property)) {
+                builder.beginControlFlow("if ($N != null)", property.fieldName);
+            }
+            if (isString(property)) {
+                builder.addStatement("out.put($N.getBytes($N.UTF_8))", property.fieldName, READER);
+            } else {
+                builder.addCode(codecs.writeValue(property, BinaryCodecs.Format.BUFFER, "out"));
+            }
+            if (header.hasNullBit(property)) {
+                builder.endControlFlow();
+            }
+        }
+        builder.addStatement("int $N = out.position() - $N", size, start);
+        builder.addStatement("out.putInt($N, $N)", start, size);
+
+        return builder.addStatement("return $N", size).build();
+    }
+
+    /**
+     * Generates the <code>Reader</code> nested in the class, with an accessor per property named after
+     * it, <code>has</code> methods for the nullable ones and <code>read()</code> decoding the whole record.
+     */
+    TypeSpec reader(ClassName typeName) {
+        TypeSpec.Builder reader = TypeSpec.classBuilder(READER)
+            .addJavadoc("A flyweight over the records written by {@link #writeRecordTo}, reading the properties on\n")
+            .addJavadoc("demand. {@link #wrap} points the same reader at another record without allocating.\n")
+            .addModifiers(PUBLIC, STATIC, FINAL)
+            .addField(FieldSpec.builder(Charset.class, "UTF_8", PRIVATE, STATIC, FINAL)
+                .initializer("$T.forName($S)", Charset.class, "UTF-8")
+                .build())
+            .addField(ByteBuffer.class, "buffer", PRIVATE)
+            .addField(TypeName.INT, "offset", PRIVATE);
+
+        reader.addMethod(MethodSpec.methodBuilder("wrap")
+            .addJavadoc("Points this reader at the record at {@code offset} of {@code buffer}.\n")
+            .addModifiers(PUBLIC)
+            .returns(typeName.nestedClass(READER))
+            .addParameter(ByteBuffer.class, "buffer")
+            .addParameter(TypeName.INT, "offset")
+            .addStatement("this.buffer = buffer")
+            .addStatement("this.offset = offset")
+            .addStatement("return this")
+            .build());
+        reader.addMethod(MethodSpec.methodBuilder("size")
+            .addJavadoc("@return The size of the record in bytes, the record after it starts at {@code offset + size()}.\n")
+            .addModifiers(PUBLIC)
+            .returns(TypeName.INT)
+            .addStatement("return buffer.getInt(offset)")
+            .build());
+
+        NameAllocator names = new NameAllocator();
+        for (AutoMappperProcessor.Property property : properties) {
+            names.newName(property.fieldName, property);
+        }
+        for (String reserved : RESERVED) {
+            names.newName(reserved);
+        }
+        String string = names.newName("string");
+        for (AutoMappperProcessor.Property property : properties) {
+            if (header.hasNullBit(property)) {
+                reader.addMethod(MethodSpec.methodBuilder(names.newName("has" + capitalize(property.fieldName)))
+                    .addModifiers(PUBLIC)
+                    .returns(TypeName.BOOLEAN)
+                    .addStatement("return $L", bit(property, header.nullMask(property), "== 0"))
+                    .build());
+            }
+            reader.addMethod(accessor(property, reader, names, string));
+        }
+        reader.addMethod(MethodSpec.methodBuilder(string)
+            .addModifiers(PRIVATE)
+            .returns(STRING)
+            .addParameter(TypeName.INT, "start")
+            .addParameter(TypeName.INT, "end")
+            .beginControlFlow("if (buffer.hasArray())")
+            .addStatement("return new $T(buffer.array(), buffer.arrayOffset() + offset + start, end - start, UTF_8)", STRING)
+            .endControlFlow()
+            .addCode(BinaryCodecs.decodeUtf8("buffer", "offset + start", "offset + end"))
+            .build());
+
+        MethodSpec.Builder read = MethodSpec.methodBuilder("read")
+            .addJavadoc("Decodes the whole record.\n")
+            .addModifiers(PUBLIC)
+            .returns(typeName)
+            .addStatement("$T value = new $T()", typeName, typeName);
+        for (AutoMappperProcessor.Property property : properties) {
+            read.addStatement("value.$N = $N()", property.fieldName, property.fieldName);
+        }
+        reader.addMethod(read.addStatement("return value").build());
+
+        return reader.build();
+    }
+
+    private MethodSpec accessor(
+        AutoMappperProcessor.Property property,
+        TypeSpec.Builder reader,
+        NameAllocator names,
+        String string
+    ) {
+        MethodSpec.Builder accessor = MethodSpec.methodBuilder(property.fieldName)
+            .addModifiers(PUBLIC)
+            .returns(property.typeName);
+        CodeBlock present = header.hasNullBit(property) ? bit(property, header.nullMask(property), "== 0") : null;
+        CodeBlock value;
+        if (header.hasValueBit(property)) {
+            value = bit(property, header.valueMask(property), "!= 0");
+        } else if (slots.containsKey(property.fieldName)) {
+            CodeBlock slot = CodeBlock.of("offset + $L", slots.get(property.fieldName));
+            if (isEnum(property)) {
+                // values() copies the constants on every call
+                String constants = names.newName(property.fieldName.toUpperCase() + "_VALUES");
+                reader.addField(FieldSpec.builder(ArrayTypeName.of(property.typeName), constants, PRIVATE, STATIC, FINAL)
+                    .initializer("$T.values()", property.typeName)
+                    .build());
+                value = CodeBlock.of("$N[buffer.getInt($L)]", constants, slot);
+            } else {
+                value = CodeBlock.of("buffer.$N($L)", getterOf(property), slot);
+            }
+        } else {
+            int index = variables.indexOf(property);
+            CodeBlock start = CodeBlock.of("buffer.getInt(offset + $L)", tableOffset + 4 * index);
+            if (!codecs.isAdapted(property) && isString(property)) {
+                CodeBlock end = index + 1 < variables.size()
+                    ? CodeBlock.of("buffer.getInt(offset + $L)", tableOffset + 4 * (index + 1))
+                    : CodeBlock.of("buffer.getInt(offset)");
+                value = CodeBlock.of("$N($L, $L)", string, start, end);
+            } else {
+                // decoded from a view of the buffer, the position of the buffer is left alone
+                accessor.addJavadoc("Decodes the property, unlike the accessors of primitives and strings this allocates a view of the buffer.\n");
+                if (present != null) {
+                    accessor.beginControlFlow("if ($L)", bit(property, header.nullMask(property), "!= 0"))
+                        .addStatement("return null")
+                        .endControlFlow();
+                    present = null;
+                }
+                accessor.addStatement("$T in = buffer.duplicate()", ByteBuffer.class)
+                    .addStatement("in.position(offset + $L)", start);
+                value = codecs.readValue(property, BinaryCodecs.Format.BUFFER, "in");
+            }
+        }
+
+        if (present != null) {
+            return accessor.addStatement("return $L ? $L : null", present, value).build();
+        }
+
+        return accessor.addStatement("return $L", value).build();
+    }
+
+    private CodeBlock bit(AutoMappperProcessor.Property property, String mask, String test) {
+        return CodeBlock.of("(buffer.getInt(offset + $L) & $L) $L", 4 + 4 * header.wordIndexOf(property), mask, test);
+    }
+
+    private boolean isString(AutoMappperProcessor.Property property) {
+        return property.typeName.equals(STRING);
+    }
+
+    private String putterOf(AutoMappperProcessor.Property property) {
+        return "put" + accessorSuffix(property);
+    }
+
+    private String getterOf(AutoMappperProcessor.Property property) {
+        return "get" + accessorSuffix(property);
+    }
+
+    private String accessorSuffix(AutoMappperProcessor.Property property) {
+        if (isEnum(property)) {
+            return "Int";
+        }
+        TypeName type = property.typeName.isBoxedPrimitive() ? property.typeName.unbox() : property.typeName;
+        if (type.equals(TypeName.BYTE)) {
+            return "";
+        }
+
+        return capitalize(type.toString());
+    }
+
+    private static String capitalize(String name) {
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+}
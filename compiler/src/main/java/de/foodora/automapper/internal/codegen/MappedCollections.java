@@ -0,0 +1,487 @@
+package de.foodora.automapper.internal.codegen;
+
+/*
+ * Copyright (C) 03/05/17 Foodora GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+
+/**
+ * Generates the code that maps a collection of mapped elements into its target collection.
+ *
+ * The target collection is allocated with the exact capacity of the source, sources implementing
+ * {@link java.util.RandomAccess} are walked with an indexed loop and empty sources share the
+ * immutable empty instance of {@link java.util.Collections} whenever the declared type allows it.
+ */
+class MappedCollections {
+    private static final ClassName COLLECTIONS = ClassName.get("java.util", "Collections");
+    private static final ClassName LIST = ClassName.get("java.util", "List");
+    private static final ClassName RANDOM_ACCESS = ClassName.get("java.util", "RandomAccess");
+    private static final ClassName ARRAY_LIST = ClassName.get("java.util", "ArrayList");
+    private static final ClassName HASH_SET = ClassName.get("java.util", "HashSet");
+    private static final ClassName LINKED_HASH_SET = ClassName.get("java.util", "LinkedHashSet");
+    private static final ClassName MAP = ClassName.get("java.util", "Map");
+    private static final ClassName HASH_MAP = ClassName.get("java.util", "HashMap");
+    private static final ClassName LINKED_HASH_MAP = ClassName.get("java.util", "LinkedHashMap");
+
+    static boolean isSupported(ClassName collection) {
+        return kindOf(collection) != null;
+    }
+
+    static boolean isSupportedMap(ClassName map) {
+        return map.equals(MAP) || map.equals(HASH_MAP) || map.equals(LINKED_HASH_MAP);
+    }
+
+    /**
+     * Maps the map {@code source} into a new map assigned to {@code target}, presized so it never
+     * rehashes. Keys and values are mapped with the {@code mapFrom} of their generated type when
+     * {@code targetKey} respectively {@code targetValue} is not {@code null}, and copied otherwise.
+     *
+     * @param map raw declared type of the map, e.g. {@code java.util.Map}
+     */
+    static CodeBlock mapMap(
+        String target,
+        String source,
+        String name,
+        ClassName map,
+        TypeName sourceKey,
+        TypeName targetKey,
+        TypeName sourceValue,
+        TypeName targetValue,
+        CodeBlock mapperArgs
+    ) {
+        if (!isSupportedMap(map)) {
+            throw new IllegalArgumentException("Map type `" + map + "` not supported");
+        }
+
+        String sourceVar = name + "Source";
+        String sizeVar = name + "Size";
+        String capacityVar = name + "Capacity";
+        String mappedVar = name + "Mapped";
+        TypeName key = targetKey != null ? targetKey : sourceKey;
+        TypeName value = targetValue != null ? targetValue : sourceValue;
+        TypeName mappedType = ParameterizedTypeName.get(map, key, value);
+
+        CodeBlock.Builder block = CodeBlock.builder();
+        block.addStatement("$T $N = $L", ParameterizedTypeName.get(map, sourceKey, sourceValue), sourceVar, source);
+        block.beginControlFlow("if ($N == null || $N.isEmpty())", sourceVar, sourceVar);
+        if (map.equals(MAP)) {
+            block.addStatement("$L = $T.<$T, $T>emptyMap()", target, COLLECTIONS, key, value);
+        } else {
+            // concrete declared types can not hold the shared immutable instance
+            block.addStatement("$L = new $T<$T, $T>(0)", target, map, key, value);
+        }
+        block.nextControlFlow("else");
+        block.addStatement("int $N = $N.size()", sizeVar, sourceVar);
+        block.addStatement("int $N = $L", capacityVar, hashCapacity(sizeVar));
+        if (map.equals(MAP)) {
+            // keep the iteration order of ordered sources
+            block.addStatement("$T $N = $N instanceof $T ? new $T<$T, $T>($N) : new $T<$T, $T>($N)",
+                mappedType, mappedVar, sourceVar, LINKED_HASH_MAP, LINKED_HASH_MAP, key, value, capacityVar,
+                HASH_MAP, key, value, capacityVar);
+        } else {
+            block.addStatement("$T $N = new $T<$T, $T>($N)", mappedType, mappedVar, map, key, value, capacityVar);
+        }
+        block.beginControlFlow("for ($T<$T, $T> entry : $N.entrySet())", MAP.nestedClass("Entry"), sourceKey, sourceValue, sourceVar);
+        block.addStatement("$N.put($L, $L)", mappedVar,
+            mappedEntryPart("entry.getKey()", targetKey, mapperArgs),
+            mappedEntryPart("entry.getValue()", targetValue, mapperArgs));
+        block.endControlFlow();
+        block.addStatement("$L = $N", target, mappedVar);
+        block.endControlFlow();
+
+        return block.build();
+    }
+
+    private static CodeBlock mappedEntryPart(String part, TypeName mapper, CodeBlock mapperArgs) {
+        return mapper != null ? CodeBlock.of("$T.mapFrom($L$L)", mapper, part, mapperArgs) : CodeBlock.of("$L", part);
+    }
+
+    /**
+     * Maps {@code source} into {@code target}, both being expressions of the generated code.
+     *
+     * @param name        property name, used as prefix of the generated local variables
+     * @param collection  raw declared type of the collection, e.g. {@code java.util.List}
+     * @param sourceItem  type of the source elements
+     * @param targetItem  generated mapper type of the target elements
+     * @param mapperArgs  extra arguments passed along to the element {@code mapFrom}
+     */
+    static CodeBlock mapCollection(
+        String target,
+        String source,
+        String name,
+        ClassName collection,
+        TypeName sourceItem,
+        TypeName targetItem,
+        CodeBlock mapperArgs
+    ) {
+        Kind kind = kindOf(collection);
+        if (kind == null) {
+            throw new IllegalArgumentException("Collection type `" + collection + "` not supported");
+        }
+
+        String sourceVar = name + "Source";
+
+        CodeBlock.Builder block = CodeBlock.builder();
+        block.addStatement("$T $N = $L", ParameterizedTypeName.get(collection, sourceItem), sourceVar, source);
+        block.beginControlFlow("if ($N == null || $N.isEmpty())", sourceVar, sourceVar);
+        block.addStatement("$L = $L", target, emptyInstance(kind, collection, targetItem));
+        block.nextControlFlow("else");
+        addMappedCopy(block, kind, target, sourceVar, name, collection, sourceItem, targetItem, mapperArgs);
+        block.endControlFlow();
+
+        return block.build();
+    }
+
+    /**
+     * Maps {@code source} into the collection currently held by {@code target}. Lists backed by an
+     * {@link java.util.ArrayList} are updated in place and their elements are mapped into with
+     * {@code mapInto}, any other collection is replaced by a fresh copy.
+     *
+     * @param recycle whether the dropped elements are handed back to the pool of {@code targetItem}
+     */
+    static CodeBlock mapCollectionInto(
+        String target,
+        String source,
+        String name,
+        ClassName collection,
+        TypeName sourceItem,
+        TypeName targetItem,
+        boolean recycle
+    ) {
+        Kind kind = kindOf(collection);
+        if (kind == null) {
+            throw new IllegalArgumentException("Collection type `" + collection + "` not supported");
+        }
+        if (!kind.isList && kind != Kind.COLLECTION) {
+            // hashed collections can not reuse their elements by position
+            return mapCollection(target, source, name, collection, sourceItem, targetItem, CodeBlock.of(""));
+        }
+
+        String sourceVar = name + "Source";
+        String sizeVar = name + "Size";
+        String reusedVar = name + "Reused";
+        String reusableVar = name + "Reusable";
+        // declared next to the loop dropping the surplus when the source is an ArrayList, which opens no block
+        String indexVar = name + "Index";
+        TypeName reusedType = ParameterizedTypeName.get(ARRAY_LIST, targetItem);
+
+        CodeBlock.Builder block = CodeBlock.builder();
+        block.addStatement("$T $N = $L", ParameterizedTypeName.get(collection, sourceItem), sourceVar, source);
+        block.beginControlFlow("if ($N == null || $N.isEmpty())", sourceVar, sourceVar);
+        if (recycle) {
+            block.beginControlFlow("if ($L != null)", target);
+            block.beginControlFlow("for ($T item : $L)", targetItem, target);
+            block.addStatement("$T.recycle(item)", targetItem);
+            block.endControlFlow();
+            block.endControlFlow();
+        }
+        block.addStatement("$L = $L", target, emptyInstance(kind, collection, targetItem));
+        block.nextControlFlow("else if ($L instanceof $T)", target, ARRAY_LIST);
+        block.addStatement("$T $N = ($T) $L", reusedType, reusedVar, reusedType, target);
+        block.addStatement("int $N = $N.size()", sizeVar, sourceVar);
+        block.addStatement("int $N = $T.min($N, $N.size())", reusableVar, Math.class, sizeVar, reusedVar);
+
+        String listVar = beginIndexedAccess(block, kind, name, sourceVar, sourceItem);
+        if (listVar != null) {
+            block.addStatement("int $N = 0", indexVar);
+            block.beginControlFlow("for (; $N < $N; $N++)", indexVar, reusableVar, indexVar);
+            block.addStatement("$N.set($N, $T.mapInto($N.get($N), $N.get($N)))",
+                reusedVar, indexVar, targetItem, listVar, indexVar, reusedVar, indexVar);
+            block.endControlFlow();
+            block.beginControlFlow("for (; $N < $N; $N++)", indexVar, sizeVar, indexVar);
+            block.addStatement("$N.add($T.mapFrom($N.get($N)))", reusedVar, targetItem, listVar, indexVar);
+            block.endControlFlow();
+            if (kind != Kind.ARRAY_LIST) {
+                block.nextControlFlow("else");
+            }
+        }
+        if (kind != Kind.ARRAY_LIST) {
+            block.addStatement("int $N = 0", indexVar);
+            block.beginControlFlow("for ($T item : $N)", sourceItem, sourceVar);
+            block.beginControlFlow("if ($N < $N)", indexVar, reusableVar);
+            block.addStatement("$N.set($N, $T.mapInto(item, $N.get($N)))", reusedVar, indexVar, targetItem, reusedVar, indexVar);
+            block.nextControlFlow("else");
+            block.addStatement("$N.add($T.mapFrom(item))", reusedVar, targetItem);
+            block.endControlFlow();
+            block.addStatement("$N++", indexVar);
+            block.endControlFlow();
+        }
+        if (listVar != null && kind != Kind.ARRAY_LIST) {
+            block.endControlFlow();
+        }
+
+        // drop the surplus from the end, which does not shift the remaining elements
+        block.beginControlFlow("for (int i = $N.size() - 1; i >= $N; i--)", reusedVar, sizeVar);
+        if (recycle) {
+            block.addStatement("$T.recycle($N.remove(i))", targetItem, reusedVar);
+        } else {
+            block.addStatement("$N.remove(i)", reusedVar);
+        }
+        block.endControlFlow();
+        block.nextControlFlow("else");
+        addMappedCopy(block, kind, target, sourceVar, name, collection, sourceItem, targetItem, CodeBlock.of(""));
+        block.endControlFlow();
+
+        return block.build();
+    }
+
+    /**
+     * Maps the array {@code source} into {@code target}, {@code null} elements are kept as they are.
+     */
+    static CodeBlock mapArray(
+        String target,
+        String source,
+        String name,
+        TypeName sourceItem,
+        TypeName targetItem,
+        CodeBlock mapperArgs
+    ) {
+        String sourceVar = name + "Source";
+        String mappedVar = name + "Mapped";
+
+        CodeBlock.Builder block = CodeBlock.builder();
+        block.addStatement("$T[] $N = $L", sourceItem, sourceVar, source);
+        block.beginControlFlow("if ($N != null)", sourceVar);
+        block.addStatement("int length = $N.length", sourceVar);
+        block.addStatement("$T[] $N = new $T[length]", targetItem, mappedVar, targetItem);
+        block.beginControlFlow("for (int i = 0; i < length; i++)");
+        block.addStatement("$N[i] = $T.mapFrom($N[i]$L)", mappedVar, targetItem, sourceVar, mapperArgs);
+        block.endControlFlow();
+        block.addStatement("$L = $N", target, mappedVar);
+        block.nextControlFlow("else");
+        block.addStatement("$L = null", target);
+        block.endControlFlow();
+
+        return block.build();
+    }
+
+    /**
+     * Maps the array {@code source} into the array currently held by {@code target}. The array itself
+     * is reused when the length did not change, its elements are mapped into whenever possible.
+     *
+     * @param recycle whether the dropped elements are handed back to the pool of {@code targetItem}
+     */
+    static CodeBlock mapArrayInto(
+        String target,
+        String source,
+        String name,
+        TypeName sourceItem,
+        TypeName targetItem,
+        boolean recycle
+    ) {
+        String sourceVar = name + "Source";
+        String currentVar = name + "Current";
+        String mappedVar = name + "Mapped";
+        String reusableVar = name + "Reusable";
+
+        CodeBlock.Builder block = CodeBlock.builder();
+        block.addStatement("$T[] $N = $L", sourceItem, sourceVar, source);
+        block.addStatement("$T[] $N = $L", targetItem, currentVar, target);
+        block.beginControlFlow("if ($N != null)", sourceVar);
+        block.addStatement("int length = $N.length", sourceVar);
+        block.addStatement("$T[] $N = $N != null && $N.length == length ? $N : new $T[length]",
+            targetItem, mappedVar, currentVar, currentVar, currentVar, targetItem);
+        block.addStatement("int $N = $N != null ? $T.min(length, $N.length) : 0",
+            reusableVar, currentVar, Math.class, currentVar);
+        block.beginControlFlow("for (int i = 0; i < length; i++)");
+        block.addStatement("$N[i] = $T.mapInto($N[i], i < $N ? $N[i] : null)",
+            mappedVar, targetItem, sourceVar, reusableVar, currentVar);
+        block.endControlFlow();
+        if (recycle) {
+            block.beginControlFlow("for (int i = $N; $N != null && i < $N.length; i++)", reusableVar, currentVar, currentVar);
+            block.addStatement("$T.recycle($N[i])", targetItem, currentVar);
+            block.endControlFlow();
+        }
+        block.addStatement("$L = $N", target, mappedVar);
+        block.nextControlFlow("else");
+        if (recycle) {
+            block.beginControlFlow("if ($N != null)", currentVar);
+            block.beginControlFlow("for ($T item : $N)", targetItem, currentVar);
+            block.addStatement("$T.recycle(item)", targetItem);
+            block.endControlFlow();
+            block.endControlFlow();
+        }
+        block.addStatement("$L = null", target);
+        block.endControlFlow();
+
+        return block.build();
+    }
+
+    /**
+     * Adds the copy of the non empty {@code sourceVar} into a new collection assigned to {@code target}.
+     */
+    private static void addMappedCopy(
+        CodeBlock.Builder block,
+        Kind kind,
+        String target,
+        String sourceVar,
+        String name,
+        ClassName collection,
+        TypeName sourceItem,
+        TypeName targetItem,
+        CodeBlock mapperArgs
+    ) {
+        String sizeVar = name + "Size";
+        String mappedVar = name + "Mapped";
+
+        block.addStatement("int $N = $N.size()", sizeVar, sourceVar);
+        if (kind.isHashed) {
+            block.addStatement("int $NCapacity = $L", name, hashCapacity(sizeVar));
+        }
+        block.addStatement("$T $N = $L", ParameterizedTypeName.get(collection, targetItem), mappedVar,
+            newInstance(kind, collection, sourceVar, sizeVar, name + "Capacity", targetItem));
+
+        String listVar = beginIndexedAccess(block, kind, name, sourceVar, sourceItem);
+        if (listVar != null) {
+            block.beginControlFlow("for (int i = 0; i < $N; i++)", sizeVar);
+            block.addStatement("$N.add($T.mapFrom($N.get(i)$L))", mappedVar, targetItem, listVar, mapperArgs);
+            block.endControlFlow();
+            if (kind != Kind.ARRAY_LIST) {
+                block.nextControlFlow("else");
+            }
+        }
+        if (kind != Kind.ARRAY_LIST) {
+            block.beginControlFlow("for ($T item : $N)", sourceItem, sourceVar);
+            block.addStatement("$N.add($T.mapFrom(item$L))", mappedVar, targetItem, mapperArgs);
+            block.endControlFlow();
+        }
+        if (listVar != null && kind != Kind.ARRAY_LIST) {
+            block.endControlFlow();
+        }
+
+        block.addStatement("$L = $N", target, mappedVar);
+    }
+
+    /**
+     * Opens the branch in which {@code sourceVar} can be read by index and returns the name of the list
+     * to index, or {@code null} when the collection can only be iterated. Declared {@code ArrayList}s
+     * are always indexed and do not open a branch.
+     */
+    private static String beginIndexedAccess(
+        CodeBlock.Builder block,
+        Kind kind,
+        String name,
+        String sourceVar,
+        TypeName sourceItem
+    ) {
+        switch (kind) {
+            case ARRAY_LIST:
+                return sourceVar;
+            case LIST:
+                block.beginControlFlow("if ($N instanceof $T)", sourceVar, RANDOM_ACCESS);
+                return sourceVar;
+            case COLLECTION:
+                // a plain Collection may still be backed by an ArrayList at runtime
+                String listVar = name + "List";
+                TypeName list = ParameterizedTypeName.get(LIST, sourceItem);
+                block.beginControlFlow("if ($N instanceof $T && $N instanceof $T)", sourceVar, LIST, sourceVar, RANDOM_ACCESS);
+                block.addStatement("$T $N = ($T) $N", list, listVar, list, sourceVar);
+                return listVar;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Returns the expression of the initial capacity for a hash based collection holding {@code size}
+     * elements without rehashing, assuming the default load factor of 0.75.
+     */
+    static CodeBlock hashCapacity(String size) {
+        return CodeBlock.of("$N < 3 ? $N + 1 : (int) ($N / 0.75f + 1.0f)", size, size, size);
+    }
+
+    private static CodeBlock emptyInstance(Kind kind, ClassName collection, TypeName targetItem) {
+        switch (kind) {
+            case LIST:
+            case COLLECTION:
+                return CodeBlock.of("$T.<$T>emptyList()", COLLECTIONS, targetItem);
+            case SET:
+                return CodeBlock.of("$T.<$T>emptySet()", COLLECTIONS, targetItem);
+            default:
+                // concrete declared types can not hold the shared immutable instances
+                return CodeBlock.of("new $T<$T>(0)", collection, targetItem);
+        }
+    }
+
+    private static CodeBlock newInstance(
+        Kind kind,
+        ClassName collection,
+        String sourceVar,
+        String sizeVar,
+        String capacityVar,
+        TypeName targetItem
+    ) {
+        switch (kind) {
+            case LIST:
+            case COLLECTION:
+            case ARRAY_LIST:
+                return CodeBlock.of("new $T<$T>($N)", ARRAY_LIST, targetItem, sizeVar);
+            case SET:
+            case HASH_SET:
+                // keep the iteration order of ordered sources
+                return CodeBlock.of("$N instanceof $T ? new $T<$T>($N) : new $T<$T>($N)",
+                    sourceVar, LINKED_HASH_SET, LINKED_HASH_SET, targetItem, capacityVar, HASH_SET, targetItem, capacityVar);
+            case LINKED_HASH_SET:
+                return CodeBlock.of("new $T<$T>($N)", LINKED_HASH_SET, targetItem, capacityVar);
+            default:
+                throw new IllegalArgumentException("Collection type `" + collection + "` not supported");
+        }
+    }
+
+    private static Kind kindOf(ClassName collection) {
+        if (!"java.util".equals(collection.packageName())) {
+            return null;
+        }
+        switch (collection.simpleName()) {
+            case "List":
+                return Kind.LIST;
+            case "Collection":
+                return Kind.COLLECTION;
+            case "ArrayList":
+                return Kind.ARRAY_LIST;
+            case "Set":
+                return Kind.SET;
+            case "HashSet":
+                return Kind.HASH_SET;
+            case "LinkedHashSet":
+                return Kind.LINKED_HASH_SET;
+            default:
+                return null;
+        }
+    }
+
+    private enum Kind {
+        LIST(true, false, false),
+        ARRAY_LIST(true, true, false),
+        COLLECTION(false, false, false),
+        SET(false, false, true),
+        HASH_SET(false, false, true),
+        LINKED_HASH_SET(false, false, true);
+
+        final boolean isList;
+        final boolean isRandomAccess;
+        final boolean isHashed;
+
+        Kind(boolean isList, boolean isRandomAccess, boolean isHashed) {
+            this.isList = isList;
+            this.isRandomAccess = isRandomAccess;
+            this.isHashed = isHashed;
+        }
+    }
+}
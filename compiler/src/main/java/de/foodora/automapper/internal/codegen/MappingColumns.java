@@ -0,0 +1,129 @@
+package de.foodora.automapper.internal.codegen;
+
+/*
+ * Copyright (C) 03/05/17 Foodora GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.squareup.javapoet.ArrayTypeName;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.NameAllocator;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+
+import static javax.lang.model.element.Modifier.FINAL;
+import static javax.lang.model.element.Modifier.PRIVATE;
+import static javax.lang.model.element.Modifier.PUBLIC;
+import static javax.lang.model.element.Modifier.STATIC;
+
+/**
+ * Generates the columns of a mapping, a container holding a mapped list as one array per property
+ * instead of one object per element, and <code>mapAllColumnar</code> filling it.
+ *
+ * Only properties copied as they are by <code>mapFrom</code> get a column: primitives, boxed
+ * primitives, {@link String}s and enums, the rest is left to <code>mapAll</code>.
+ */
+final class MappingColumns {
+
+    private MappingColumns() {
+    }
+
+    /**
+     * Returns the fields of the source which get a column.
+     */
+    static List<VariableElement> columnFields(List<VariableElement> fields) {
+        List<VariableElement> columns = new ArrayList<>();
+        for (VariableElement field : fields) {
+            if (MappingViews.isImmutableType(field.asType())) {
+                columns.add(field);
+            }
+        }
+
+        return columns;
+    }
+
+    static TypeSpec generateColumns(ClassName columns, ClassName target, List<VariableElement> fields) {
+        NameAllocator names = new NameAllocator();
+        for (VariableElement field : fields) {
+            names.newName(field.getSimpleName().toString(), field);
+        }
+        String size = names.newName("size");
+
+        TypeSpec.Builder builder = TypeSpec.classBuilder(columns)
+            .addJavadoc("A list of {@link $T} as one array per property, filled by {@code $T.mapAllColumnar}.\n", target, target)
+            .addJavadoc("Element {@code i} of the list is at index {@code i} of every array.\n")
+            .addModifiers(PUBLIC, FINAL)
+            .addField(FieldSpec.builder(int.class, size, PRIVATE, FINAL).build());
+        MethodSpec.Builder constructor = MethodSpec.constructorBuilder()
+            .addParameter(int.class, "size")
+            .addStatement("this.$N = size", size);
+
+        for (VariableElement field : fields) {
+            String fieldName = field.getSimpleName().toString();
+            TypeName column = ArrayTypeName.of(TypeName.get(field.asType()));
+            builder.addField(FieldSpec.builder(column, fieldName, PUBLIC, FINAL).build());
+            constructor.addStatement("this.$N = new $T[size]", fieldName, TypeName.get(field.asType()));
+        }
+
+        return builder
+            .addMethod(constructor.build())
+            .addMethod(MethodSpec.methodBuilder("size")
+                .addJavadoc("@return The number of elements, the length of every array.\n")
+                .addModifiers(PUBLIC)
+                .returns(int.class)
+                .addStatement("return $N", size)
+                .build())
+            .build();
+    }
+
+    /**
+     * Generates <code>mapAllColumnar</code>, which copies the properties of every element into the columns
+     * in a single pass over the source. No target object is created, so the custom mapping method of
+     * mappers extending the mapping class does not run.
+     */
+    static MethodSpec generateMapAllColumnar(ClassName columns, TypeElement source, List<VariableElement> fields) {
+        TypeName sourceName = ClassName.get(source);
+        MethodSpec.Builder builder = MethodSpec.methodBuilder("mapAllColumnar")
+            .addModifiers(STATIC, PUBLIC, FINAL)
+            .returns(columns)
+            .addParameter(ParameterizedTypeName.get(ClassName.get(List.class), sourceName), "source")
+            .beginControlFlow("if (source == null)")
+            .addStatement("return null")
+            .endControlFlow()
+            .addStatement("$T columns = new $T(source.size())", columns, columns)
+            .addStatement("int i = 0")
+            .beginControlFlow("for ($T item : source)", sourceName)
+            .beginControlFlow("if (item == null)")
+            .addStatement("throw new $T($S + i + $S)", NullPointerException.class, "source.get(", ") == null")
+            .endControlFlow();
+        for (VariableElement field : fields) {
+            builder.addStatement("columns.$N[i] = item.$N", field.getSimpleName(), field.getSimpleName());
+        }
+
+        return builder
+            .addStatement("i++")
+            .endControlFlow()
+            .addStatement("return columns")
+            .build();
+    }
+}
@@ -0,0 +1,168 @@
+package de.foodora.automapper.internal.codegen;
+
+/*
+ * Copyright (C) 03/05/17 Foodora GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.google.common.base.CaseFormat;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+
+import static javax.lang.model.element.Modifier.FINAL;
+import static javax.lang.model.element.Modifier.PRIVATE;
+import static javax.lang.model.element.Modifier.PUBLIC;
+import static javax.lang.model.element.Modifier.STATIC;
+
+/**
+ * Generates the view of a mapping, a read-only wrapper that delegates every getter to the source
+ * instead of copying its fields.
+ *
+ * Views are only generated for sources whose properties can not change once constructed: every
+ * field has to be final and of a primitive, boxed primitive, {@link String} or enum type.
+ */
+final class MappingViews {
+    private static final ClassName STRING = ClassName.get(String.class);
+
+    private MappingViews() {
+    }
+
+    /**
+     * Returns the field which makes <code>fields</code> mutable, or <code>null</code> when a view may
+     * wrap them.
+     */
+    static VariableElement findMutableField(List<VariableElement> fields) {
+        for (VariableElement field : fields) {
+            if (!field.getModifiers().contains(Modifier.FINAL) || !isImmutableType(field.asType())) {
+                return field;
+            }
+        }
+
+        return null;
+    }
+
+    static TypeSpec generateView(
+        ClassName view,
+        ClassName target,
+        TypeElement source,
+        List<VariableElement> fields
+    ) {
+        TypeName sourceName = ClassName.get(source);
+        TypeSpec.Builder builder = TypeSpec.classBuilder(view)
+            .addModifiers(PUBLIC, FINAL)
+            .addField(FieldSpec.builder(sourceName, "source", PRIVATE, FINAL).build())
+            .addMethod(MethodSpec.constructorBuilder()
+                .addModifiers(PRIVATE)
+                .addParameter(sourceName, "source")
+                .addStatement("this.source = source")
+                .build())
+            .addMethod(MethodSpec.methodBuilder("wrap")
+                .addModifiers(PUBLIC, STATIC)
+                .returns(view)
+                .addParameter(sourceName, "source")
+                .addStatement("return source == null ? null : new $T(source)", view)
+                .build())
+            .addMethod(generateWrapAll(view, sourceName))
+            .addMethod(MethodSpec.methodBuilder("toMapped")
+                .addJavadoc("Copies the source into a new {@link $T}.\n", target)
+                .addModifiers(PUBLIC)
+                .returns(target)
+                .addStatement("return $T.mapFrom(source)", target)
+                .build());
+
+        for (VariableElement field : fields) {
+            String fieldName = field.getSimpleName().toString();
+            builder.addMethod(MethodSpec.methodBuilder("get" + CaseFormat.LOWER_CAMEL.to(CaseFormat.UPPER_CAMEL, fieldName))
+                .addModifiers(PUBLIC)
+                .returns(TypeName.get(field.asType()))
+                .addStatement("return source.$N", fieldName)
+                .build());
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Generates <code>wrapAll</code>, which returns a list wrapping each element when it is read. Nothing
+     * is allocated per element up front, sources without random access are copied into an array list.
+     */
+    private static MethodSpec generateWrapAll(ClassName view, TypeName sourceName) {
+        TypeName sourceList = ParameterizedTypeName.get(ClassName.get(List.class), sourceName);
+        TypeSpec viewList = TypeSpec.anonymousClassBuilder("")
+            .superclass(ParameterizedTypeName.get(ClassName.get(AbstractList.class), view))
+            .addMethod(MethodSpec.methodBuilder("get")
+                .addAnnotation(Override.class)
+                .addModifiers(PUBLIC)
+                .returns(view)
+                .addParameter(int.class, "index")
+                .addStatement("return wrap(elements.get(index))")
+                .build())
+            .addMethod(MethodSpec.methodBuilder("size")
+                .addAnnotation(Override.class)
+                .addModifiers(PUBLIC)
+                .returns(int.class)
+                .addStatement("return elements.size()")
+                .build())
+            .build();
+
+        return MethodSpec.methodBuilder("wrapAll")
+            .addModifiers(PUBLIC, STATIC)
+            .returns(ParameterizedTypeName.get(ClassName.get(List.class), view))
+            .addParameter(sourceList, "source")
+            .beginControlFlow("if (source == null)")
+            .addStatement("return null")
+            .endControlFlow()
+            .addStatement(
+                "final $T elements = source instanceof $T ? source : new $T<$T>(source)",
+                sourceList,
+                RandomAccess.class,
+                ArrayList.class,
+                sourceName
+            )
+            .addStatement("return $L", viewList)
+            .build();
+    }
+
+    static boolean isImmutableType(TypeMirror type) {
+        if (type.getKind().isPrimitive()) {
+            return true;
+        }
+        if (type.getKind() != TypeKind.DECLARED) {
+            return false;
+        }
+        TypeName typeName = TypeName.get(type);
+        if (typeName.equals(STRING) || typeName.isBoxedPrimitive()) {
+            return true;
+        }
+
+        return ((DeclaredType) type).asElement().getKind() == ElementKind.ENUM;
+    }
+}
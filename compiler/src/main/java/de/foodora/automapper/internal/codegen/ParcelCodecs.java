@@ -0,0 +1,1279 @@
+package de.foodora.automapper.internal.codegen;
+
+/*
+ * Copyright (C) 03/05/17 Foodora GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.google.common.base.CaseFormat;
+import com.squareup.javapoet.ArrayTypeName;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.NameAllocator;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Types;
+
+import static javax.lang.model.element.Modifier.FINAL;
+import static javax.lang.model.element.Modifier.PRIVATE;
+import static javax.lang.model.element.Modifier.STATIC;
+
+/**
+ * Generates typed parcel codecs for the properties of one generated class.
+ *
+ * Lists, arrays, maps and sparse arrays whose elements have a statically known codec are written as
+ * their size followed by the elements, instead of going through <code>Parcel.writeValue</code> for every element, which
+ * writes a type tag and the class name of each <code>Parcelable</code> and resolves its
+ * <code>CREATOR</code> reflectively when reading. The codecs are generated as private static methods
+ * of the class, one pair per element type, and are collected by {@link #methods()}. Element codecs
+ * exist for strings, boxed primitives, generated <code>Parcelable</code>s, final <code>Parcelable</code>s
+ * and for the type adapted by the <code>ParcelTypeAdapter</code> of the property, if that adapter does
+ * not adapt the property as a whole.
+ *
+ * Single properties of such a type are encoded inline the same way, behind their null flag in the
+ * {@link ParcelHeader}, instead of <code>writeParcelable</code> and <code>readParcelable</code>.
+ *
+ * With ordinal enums, enum properties are written as their ordinal and read from a cached
+ * <code>values()</code> array. The parcel then starts with a hash of the constants of those enums taken
+ * at compile time, so a parcel written by a build with different constants fails to read instead of
+ * silently decoding the wrong ones.
+ *
+ * Strings of deduplicated properties are written through the {@code ParcelTable} of the
+ * parcel, held by the local named by {@link #setStringTable(String)} in the generated methods and
+ * looked up by the codecs which need it.
+ *
+ * With the adapter runtime, every codec comes with a size method counting the bytes it writes for the
+ * <code>parcelSizeHint()</code> of the class, without writing anything.
+ *
+ * With strict parcels, plain classes get a codec of their own, which writes their public fields one by
+ * one and reads them into an instance created by the public no-arg constructor, instead of leaving
+ * them to <code>Parcel.writeSerializable</code> or <code>Parcel.writeValue</code>.
+ */
+final class ParcelCodecs {
+    static final ClassName PARCEL = ClassName.get("android.os", "Parcel");
+    private static final ClassName BAD_PARCELABLE = ClassName.get("android.os", "BadParcelableException");
+    private static final ClassName PARCELABLE = ClassName.get("android.os", "Parcelable");
+    private static final ClassName STRING = ClassName.get(String.class);
+    private static final ClassName LIST = ClassName.get(List.class);
+    private static final ClassName ARRAY_LIST = ClassName.get(ArrayList.class);
+    private static final ClassName COLLECTION = ClassName.get(Collection.class);
+    private static final ClassName MAP = ClassName.get(Map.class);
+    private static final ClassName HASH_MAP = ClassName.get(HashMap.class);
+    private static final ClassName LINKED_HASH_MAP = ClassName.get(LinkedHashMap.class);
+    private static final ClassName SPARSE_ARRAY = ClassName.get("android.util", "SparseArray");
+    private static final String PARCEL_TYPE_ADAPTER = "de.foodora.automapper.ParcelTypeAdapter";
+    private static final String SIZED_PARCELABLE = "de.foodora.automapper.SizedParcelable";
+    private static final String SIZED_PARCEL_TYPE_ADAPTER = "de.foodora.automapper.SizedParcelTypeAdapter";
+    static final ClassName PARCEL_SIZES = ClassName.get("de.foodora.automapper", "ParcelSizes");
+    static final ClassName PARCEL_TABLE = ClassName.get("de.foodora.automapper", "ParcelTable");
+
+    private final ProcessingEnvironment env;
+    private final Set<ClassName> parcelableTargets;
+    private final Map<TypeMirror, FieldSpec> typeAdapters;
+    private final boolean ordinalEnums;
+    private final boolean dedupeStrings;
+    private final boolean sizeHints;
+    private final boolean plainObjects;
+    private String stringTable;
+    private final Map<String, MethodSpec> methods = new LinkedHashMap<>();
+    private final Map<String, FieldSpec> enumValues = new LinkedHashMap<>();
+    private final Map<String, String> codecNames = new HashMap<>();
+    private final NameAllocator names = new NameAllocator();
+
+    /**
+     * @param parcelableTargets generated classes of this round which are <code>Parcelable</code>
+     * @param typeAdapters the type adapter fields of the class
+     * @param ordinalEnums whether enums are written as their ordinal rather than their name
+     * @param dedupeStrings whether the strings of all properties go through the string table
+     * @param sizeHints whether the generated classes have a <code>parcelSizeHint()</code>, which needs the
+     *                  adapter runtime
+     * @param plainObjects whether plain classes are written field by field, see {@link #isPlainObject}
+     */
+    ParcelCodecs(
+        ProcessingEnvironment env,
+        Set<ClassName> parcelableTargets,
+        Map<TypeMirror, FieldSpec> typeAdapters,
+        boolean ordinalEnums,
+        boolean dedupeStrings,
+        boolean sizeHints,
+        boolean plainObjects
+    ) {
+        this.env = env;
+        this.parcelableTargets = parcelableTargets;
+        this.typeAdapters = typeAdapters;
+        this.ordinalEnums = ordinalEnums;
+        this.dedupeStrings = dedupeStrings;
+        this.sizeHints = sizeHints;
+        this.plainObjects = plainObjects;
+    }
+
+    /**
+     * @param local name of the local holding the string table in the generated methods
+     */
+    void setStringTable(String local) {
+        this.stringTable = local;
+    }
+
+    /**
+     * Whether the strings of <code>property</code> are written through the string table.
+     */
+    boolean dedupes(AutoMappperProcessor.Property property) {
+        return (dedupeStrings || property.dedupe) && containsString(property.typeName);
+    }
+
+    /**
+     * Whether any of <code>properties</code> needs the string table of the parcel.
+     */
+    boolean usesStringTable(List<AutoMappperProcessor.Property> properties) {
+        for (AutoMappperProcessor.Property property : properties) {
+            if (dedupes(property)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the statements writing <code>property</code> with a typed codec, or <code>null</code> if
+     * there is none for its type.
+     */
+    CodeBlock write(AutoMappperProcessor.Property property, String out, String flags) {
+        if (isDedupedString(property)) {
+            return CodeBlock.of("$N.writeString($N);\n", stringTable, property.fieldName);
+        }
+        if (isSingle(property)) {
+            // the null flag of the property is part of the parcel header
+            return CodeBlock.of("$N.writeToParcel($N, $N);\n", property.fieldName, out, flags);
+        }
+        if (ordinalEnumOf(property) != null) {
+            return CodeBlock.of("$N.writeInt($N.ordinal());\n", out, property.fieldName);
+        }
+        String codec = codecOf(property);
+        if (codec == null) {
+            return null;
+        }
+
+        return CodeBlock.of("write$L(this.$N, $N, $N);\n", codec, property.fieldName, out, flags);
+    }
+
+    /**
+     * Returns the expression reading <code>property</code> with a typed codec, or <code>null</code> if
+     * there is none for its type.
+     */
+    CodeBlock read(AutoMappperProcessor.Property property, String in) {
+        if (isDedupedString(property)) {
+            return CodeBlock.of("$N.readString()", stringTable);
+        }
+        if (isSingle(property)) {
+            return CodeBlock.of("$T.CREATOR.createFromParcel($N)", property.typeName, in);
+        }
+        TypeElement ordinalEnum = ordinalEnumOf(property);
+        if (ordinalEnum != null) {
+            return CodeBlock.of("$N[$N.readInt()]", addEnumValues(ordinalEnum), in);
+        }
+        String codec = codecOf(property);
+        if (codec == null) {
+            return null;
+        }
+
+        return CodeBlock.of("read$L($N)", codec, in);
+    }
+
+    /**
+     * Returns the expression of the number of bytes the typed codec of <code>property</code> writes, or
+     * <code>null</code> if there is none for its type. Single parcelables are only counted when they
+     * are non-null.
+     */
+    CodeBlock size(AutoMappperProcessor.Property property) {
+        if (isDedupedString(property)) {
+            return ElementCodec.DEDUPED_STRING.size(property.fieldName);
+        }
+        if (isSingle(property)) {
+            return elementCodec(property.typeName, property).valueSize(property.fieldName);
+        }
+        if (ordinalEnumOf(property) != null) {
+            return CodeBlock.of("4");
+        }
+        String codec = codecOf(property);
+        if (codec == null) {
+            return null;
+        }
+
+        return CodeBlock.of("size$L(this.$N)", codec, property.fieldName);
+    }
+
+    /**
+     * Returns the expression of the number of bytes the <code>ParcelTypeAdapter</code> of
+     * <code>property</code> writes, for an adapter of the property itself. Adapters which do not know
+     * their size are counted as unbounded.
+     */
+    CodeBlock adapterSize(AutoMappperProcessor.Property property) {
+        if (isSizedAdapter(property.typeAdapter)) {
+            return CodeBlock.of("$N.parcelSize($N)", typeAdapters.get(property.typeAdapter), property.fieldName);
+        }
+
+        return CodeBlock.of("$T.unbounded()", PARCEL_SIZES);
+    }
+
+    boolean supports(AutoMappperProcessor.Property property) {
+        return isDedupedString(property) || isSingle(property) || codecOf(property) != null;
+    }
+
+    private boolean isDedupedString(AutoMappperProcessor.Property property) {
+        return property.typeName.equals(STRING) && dedupes(property);
+    }
+
+    /**
+     * Whether <code>property</code> is a single nested <code>Parcelable</code> written through its own
+     * <code>CREATOR</code>, which needs a null flag even if it is not annotated as nullable.
+     */
+    boolean isSingle(AutoMappperProcessor.Property property) {
+        if (!(property.typeName instanceof ClassName)) {
+            return false;
+        }
+        ElementCodec codec = elementCodec(property.typeName, property);
+
+        return codec != null && codec.isParcelable();
+    }
+
+    /**
+     * Whether the <code>ParcelTypeAdapter</code> of <code>property</code> adapts the elements of the
+     * property rather than the property itself, e.g. the values of a map.
+     */
+    boolean adaptsElements(AutoMappperProcessor.Property property) {
+        return elementAdapterType(property) != null;
+    }
+
+    Collection<MethodSpec> methods() {
+        return methods.values();
+    }
+
+    /**
+     * The cached <code>values()</code> arrays of the ordinal enums.
+     */
+    Collection<FieldSpec> fields() {
+        return enumValues.values();
+    }
+
+    /**
+     * Returns the statement writing the enum schema hash of <code>properties</code>, or <code>null</code>
+     * if none of them is an enum written by its ordinal.
+     */
+    CodeBlock writeEnumSchema(List<AutoMappperProcessor.Property> properties, String out) {
+        Map<String, List<String>> constants = enumConstantsOf(properties);
+        if (constants.isEmpty()) {
+            return null;
+        }
+
+        return CodeBlock.of("$N.writeInt($L);\n", out, enumSchemaHash(constants));
+    }
+
+    /**
+     * Returns the statements checking the enum schema hash of <code>properties</code> in the parcel,
+     * or <code>null</code> if none of them is an enum written by its ordinal.
+     */
+    CodeBlock readEnumSchema(List<AutoMappperProcessor.Property> properties, String in) {
+        Map<String, List<String>> constants = enumConstantsOf(properties);
+        if (constants.isEmpty()) {
+            return null;
+        }
+
+        return CodeBlock.builder()
+            .beginControlFlow("if ($N.readInt() != $L)", in, enumSchemaHash(constants))
+            .addStatement(
+                "throw new $T($S)",
+                BAD_PARCELABLE,
+                "Parcel was written with different constants of " + constants.keySet()
+            )
+            .endControlFlow()
+            .build();
+    }
+
+    private TypeElement ordinalEnumOf(AutoMappperProcessor.Property property) {
+        if (!ordinalEnums || property.element.asType().getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        TypeElement element = (TypeElement) env.getTypeUtils().asElement(property.element.asType());
+
+        return element.getKind() == ElementKind.ENUM ? element : null;
+    }
+
+    private String addEnumValues(TypeElement enumElement) {
+        String key = enumElement.getQualifiedName().toString();
+        String name = codecNames.get("enum:" + key);
+        if (name != null) {
+            return name;
+        }
+        ClassName enumName = ClassName.get(enumElement);
+        name = names.newName(CaseFormat.UPPER_CAMEL.to(CaseFormat.UPPER_UNDERSCORE, enumName.simpleName()) + "_VALUES");
+        codecNames.put("enum:" + key, name);
+        enumValues.put(name, FieldSpec.builder(ArrayTypeName.of(enumName), name, PRIVATE, STATIC, FINAL)
+            .initializer("$T.values()", enumName)
+            .build());
+
+        return name;
+    }
+
+    /**
+     * The constants of every ordinal enum among <code>properties</code>, by qualified name.
+     */
+    private Map<String, List<String>> enumConstantsOf(List<AutoMappperProcessor.Property> properties) {
+        Map<String, List<String>> constants = new TreeMap<>();
+        for (AutoMappperProcessor.Property property : properties) {
+            TypeElement enumElement = ordinalEnumOf(property);
+            if (enumElement == null) {
+                continue;
+            }
+            List<String> names = new ArrayList<>();
+            for (Element enclosed : enumElement.getEnclosedElements()) {
+                if (enclosed.getKind() == ElementKind.ENUM_CONSTANT) {
+                    names.add(enclosed.getSimpleName().toString());
+                }
+            }
+            constants.put(enumElement.getQualifiedName().toString(), names);
+        }
+
+        return constants;
+    }
+
+    /**
+     * Hash of the names and order of the constants of every ordinal enum, in the order of their
+     * qualified names.
+     */
+    private static String enumSchemaHash(Map<String, List<String>> constants) {
+        StringBuilder schema = new StringBuilder();
+        for (Map.Entry<String, List<String>> entry : constants.entrySet()) {
+            schema.append(entry.getKey()).append(entry.getValue()).append(';');
+        }
+
+        return "0x" + Integer.toHexString(schema.toString().hashCode());
+    }
+
+    /**
+     * Returns the name of the codec pair for the type of <code>property</code>, generating it first if
+     * needed, or <code>null</code> for types without typed codec.
+     */
+    private String codecOf(AutoMappperProcessor.Property property) {
+        TypeName type = property.typeName;
+        if (type instanceof ArrayTypeName) {
+            TypeName item = ((ArrayTypeName) type).componentType;
+            ElementCodec codec = elementCodec(item, property);
+            // String[] is handled natively by Parcel already
+            if (codec == null || codec == ElementCodec.STRING) {
+                return null;
+            }
+
+            return addArrayCodec(item, codec);
+        }
+        if (type instanceof ParameterizedTypeName) {
+            ParameterizedTypeName parameterized = (ParameterizedTypeName) type;
+            if (isList(parameterized.rawType) && parameterized.typeArguments.size() == 1) {
+                TypeName item = parameterized.typeArguments.get(0);
+                ElementCodec codec = elementCodec(item, property);
+                if (codec == null) {
+                    return null;
+                }
+
+                return addListCodec(item, codec);
+            }
+            if (isMap(parameterized.rawType) && parameterized.typeArguments.size() == 2) {
+                TypeName key = parameterized.typeArguments.get(0);
+                TypeName value = parameterized.typeArguments.get(1);
+                ElementCodec keyCodec = elementCodec(key, property);
+                ElementCodec valueCodec = elementCodec(value, property);
+                if (keyCodec == null || valueCodec == null) {
+                    return null;
+                }
+
+                return addMapCodec(parameterized.rawType, key, keyCodec, value, valueCodec);
+            }
+            if (parameterized.rawType.equals(SPARSE_ARRAY) && parameterized.typeArguments.size() == 1) {
+                TypeName item = parameterized.typeArguments.get(0);
+                ElementCodec codec = elementCodec(item, property);
+                if (codec == null) {
+                    return null;
+                }
+
+                return addSparseArrayCodec(item, codec);
+            }
+        }
+        if (type instanceof ClassName) {
+            ElementCodec codec = elementCodec(type, property);
+            if (codec != null && codec.isPlainObject()) {
+                return codec.method;
+            }
+        }
+
+        return null;
+    }
+
+    private String addListCodec(TypeName item, ElementCodec codec) {
+        String key = "list:" + item + codec.key();
+        String name = codecNames.get(key);
+        if (name != null) {
+            return name;
+        }
+        name = names.newName(codec.prefix() + simpleNameOf(item) + "List");
+        codecNames.put(key, name);
+        TypeName list = ParameterizedTypeName.get(LIST, item);
+        TypeName arrayList = ParameterizedTypeName.get(ARRAY_LIST, item);
+
+        methods.put("write" + name, MethodSpec.methodBuilder("write" + name)
+            .addModifiers(PRIVATE, STATIC)
+            .addParameter(ParameterizedTypeName.get(COLLECTION, item), "value")
+            .addParameter(PARCEL, "dest")
+            .addParameter(int.class, "flags")
+            .addCode(stringTableOf("dest", codec))
+            .beginControlFlow("if (value == null)")
+            .addStatement("dest.writeInt(-1)")
+            .addStatement("return")
+            .endControlFlow()
+            .addStatement("dest.writeInt(value.size())")
+            .beginControlFlow("if (value instanceof $T && value instanceof $T)", LIST, ClassName.get("java.util", "RandomAccess"))
+            .addStatement("$T items = ($T) value", list, list)
+            .beginControlFlow("for (int i = 0, size = items.size(); i < size; i++)")
+            .addStatement("$T element = items.get(i)", item)
+            .addCode(codec.write("element"))
+            .endControlFlow()
+            .nextControlFlow("else")
+            .beginControlFlow("for ($T element : value)", item)
+            .addCode(codec.write("element"))
+            .endControlFlow()
+            .endControlFlow()
+            .build());
+
+        addSizeMethod(name, ParameterizedTypeName.get(COLLECTION, item), "value.size()", codec.fixedSize(), CodeBlock.builder()
+            .beginControlFlow("for ($T element : value)", item)
+            .addStatement("bytes += $L", codec.size("element"))
+            .endControlFlow()
+            .build());
+
+        methods.put("read" + name, MethodSpec.methodBuilder("read" + name)
+            .addModifiers(PRIVATE, STATIC)
+            .returns(arrayList)
+            .addParameter(PARCEL, "in")
+            .addCode(stringTableOf("in", codec))
+            .addStatement("int size = in.readInt()")
+            .beginControlFlow("if (size < 0)")
+            .addStatement("return null")
+            .endControlFlow()
+            .addStatement("$T value = new $T<$T>(size)", arrayList, ARRAY_LIST, item)
+            .beginControlFlow("for (int i = 0; i < size; i++)")
+            .addStatement("value.add($L)", codec.read())
+            .endControlFlow()
+            .addStatement("return value")
+            .build());
+
+        return name;
+    }
+
+    private String addArrayCodec(TypeName item, ElementCodec codec) {
+        String key = "array:" + item + codec.key();
+        String name = codecNames.get(key);
+        if (name != null) {
+            return name;
+        }
+        name = names.newName(codec.prefix() + simpleNameOf(item) + "Array");
+        codecNames.put(key, name);
+        TypeName array = ArrayTypeName.of(item);
+
+        methods.put("write" + name, MethodSpec.methodBuilder("write" + name)
+            .addModifiers(PRIVATE, STATIC)
+            .addParameter(array, "value")
+            .addParameter(PARCEL, "dest")
+            .addParameter(int.class, "flags")
+            .addCode(stringTableOf("dest", codec))
+            .beginControlFlow("if (value == null)")
+            .addStatement("dest.writeInt(-1)")
+            .addStatement("return")
+            .endControlFlow()
+            .addStatement("dest.writeInt(value.length)")
+            .beginControlFlow("for ($T element : value)", item)
+            .addCode(codec.write("element"))
+            .endControlFlow()
+            .build());
+
+        addSizeMethod(name, array, "value.length", codec.fixedSize(), CodeBlock.builder()
+            .beginControlFlow("for ($T element : value)", item)
+            .addStatement("bytes += $L", codec.size("element"))
+            .endControlFlow()
+            .build());
+
+        methods.put("read" + name, MethodSpec.methodBuilder("read" + name)
+            .addModifiers(PRIVATE, STATIC)
+            .returns(array)
+            .addParameter(PARCEL, "in")
+            .addCode(stringTableOf("in", codec))
+            .addStatement("int size = in.readInt()")
+            .beginControlFlow("if (size < 0)")
+            .addStatement("return null")
+            .endControlFlow()
+            .addStatement("$T value = new $T[size]", array, item)
+            .beginControlFlow("for (int i = 0; i < size; i++)")
+            .addStatement("value[i] = $L", codec.read())
+            .endControlFlow()
+            .addStatement("return value")
+            .build());
+
+        return name;
+    }
+
+    /**
+     * Maps are read into a map of the declared type, a plain <code>Map</code> becomes a
+     * <code>LinkedHashMap</code> to keep the order it was written in. The map is presized so it never
+     * rehashes while it is read.
+     */
+    private String addMapCodec(
+        ClassName rawType,
+        TypeName key,
+        ElementCodec keyCodec,
+        TypeName item,
+        ElementCodec codec
+    ) {
+        String cacheKey = "map:" + rawType + key + keyCodec.key() + item + codec.key();
+        String name = codecNames.get(cacheKey);
+        if (name != null) {
+            return name;
+        }
+        name = names.newName(keyCodec.prefix() + simpleNameOf(key) + codec.prefix() + simpleNameOf(item) + simpleNameOf(rawType));
+        codecNames.put(cacheKey, name);
+        ClassName concrete = rawType.equals(MAP) ? LINKED_HASH_MAP : rawType;
+        TypeName map = ParameterizedTypeName.get(concrete, key, item);
+
+        methods.put("write" + name, MethodSpec.methodBuilder("write" + name)
+            .addModifiers(PRIVATE, STATIC)
+            .addParameter(ParameterizedTypeName.get(MAP, key, item), "value")
+            .addParameter(PARCEL, "dest")
+            .addParameter(int.class, "flags")
+            .addCode(stringTableOf("dest", keyCodec, codec))
+            .beginControlFlow("if (value == null)")
+            .addStatement("dest.writeInt(-1)")
+            .addStatement("return")
+            .endControlFlow()
+            .addStatement("dest.writeInt(value.size())")
+            .beginControlFlow("for ($T entry : value.entrySet())", ParameterizedTypeName.get(ClassName.get(Map.Entry.class), key, item))
+            .addStatement("$T key = entry.getKey()", key)
+            .addCode(keyCodec.write("key"))
+            .addStatement("$T element = entry.getValue()", item)
+            .addCode(codec.write("element"))
+            .endControlFlow()
+            .build());
+
+        int fixedSize = keyCodec.fixedSize() > 0 && codec.fixedSize() > 0 ? keyCodec.fixedSize() + codec.fixedSize() : -1;
+        CodeBlock.Builder entries = CodeBlock.builder();
+        if (keyCodec.fixedSize() > 0) {
+            entries.addStatement("bytes += value.size() * $L", keyCodec.fixedSize())
+                .beginControlFlow("for ($T element : value.values())", item)
+                .addStatement("bytes += $L", codec.size("element"))
+                .endControlFlow();
+        } else if (codec.fixedSize() > 0) {
+            entries.addStatement("bytes += value.size() * $L", codec.fixedSize())
+                .beginControlFlow("for ($T key : value.keySet())", key)
+                .addStatement("bytes += $L", keyCodec.size("key"))
+                .endControlFlow();
+        } else {
+            entries.beginControlFlow("for ($T entry : value.entrySet())", ParameterizedTypeName.get(ClassName.get(Map.Entry.class), key, item))
+                .addStatement("$T key = entry.getKey()", key)
+                .addStatement("bytes += $L", keyCodec.size("key"))
+                .addStatement("$T element = entry.getValue()", item)
+                .addStatement("bytes += $L", codec.size("element"))
+                .endControlFlow();
+        }
+        addSizeMethod(name, ParameterizedTypeName.get(MAP, key, item), "value.size()", fixedSize, entries.build());
+
+        methods.put("read" + name, MethodSpec.methodBuilder("read" + name)
+            .addModifiers(PRIVATE, STATIC)
+            .returns(map)
+            .addParameter(PARCEL, "in")
+            .addCode(stringTableOf("in", keyCodec, codec))
+            .addStatement("int size = in.readInt()")
+            .beginControlFlow("if (size < 0)")
+            .addStatement("return null")
+            .endControlFlow()
+            .addStatement("$T value = new $T<$T, $T>($L)", map, concrete, key, item, MappedCollections.hashCapacity("size"))
+            .beginControlFlow("for (int i = 0; i < size; i++)")
+            .addStatement("$T key = $L", key, keyCodec.read())
+            .addStatement("value.put(key, $L)", codec.read())
+            .endControlFlow()
+            .addStatement("return value")
+            .build());
+
+        return name;
+    }
+
+    /**
+     * Sparse arrays keep their keys sorted, so they are read back with <code>append</code>.
+     */
+    private String addSparseArrayCodec(TypeName item, ElementCodec codec) {
+        String key = "sparse:" + item + codec.key();
+        String name = codecNames.get(key);
+        if (name != null) {
+            return name;
+        }
+        name = names.newName(codec.prefix() + simpleNameOf(item) + "SparseArray");
+        codecNames.put(key, name);
+        TypeName sparseArray = ParameterizedTypeName.get(SPARSE_ARRAY, item);
+
+        methods.put("write" + name, MethodSpec.methodBuilder("write" + name)
+            .addModifiers(PRIVATE, STATIC)
+            .addParameter(sparseArray, "value")
+            .addParameter(PARCEL, "dest")
+            .addParameter(int.class, "flags")
+            .addCode(stringTableOf("dest", codec))
+            .beginControlFlow("if (value == null)")
+            .addStatement("dest.writeInt(-1)")
+            .addStatement("return")
+            .endControlFlow()
+            .addStatement("int size = value.size()")
+            .addStatement("dest.writeInt(size)")
+            .beginControlFlow("for (int i = 0; i < size; i++)")
+            .addStatement("dest.writeInt(value.keyAt(i))")
+            .addStatement("$T element = value.valueAt(i)", item)
+            .addCode(codec.write("element"))
+            .endControlFlow()
+            .build());
+
+        // every element is written behind its key
+        addSizeMethod(name, sparseArray, "value.size()", codec.fixedSize() > 0 ? 4 + codec.fixedSize() : -1, CodeBlock.builder()
+            .beginControlFlow("for (int i = 0, size = value.size(); i < size; i++)")
+            .addStatement("$T element = value.valueAt(i)", item)
+            .addStatement("bytes += 4 + $L", codec.size("element"))
+            .endControlFlow()
+            .build());
+
+        methods.put("read" + name, MethodSpec.methodBuilder("read" + name)
+            .addModifiers(PRIVATE, STATIC)
+            .returns(sparseArray)
+            .addParameter(PARCEL, "in")
+            .addCode(stringTableOf("in", codec))
+            .addStatement("int size = in.readInt()")
+            .beginControlFlow("if (size < 0)")
+            .addStatement("return null")
+            .endControlFlow()
+            .addStatement("$T value = new $T<$T>(size)", sparseArray, SPARSE_ARRAY, item)
+            .beginControlFlow("for (int i = 0; i < size; i++)")
+            .addStatement("int key = in.readInt()")
+            .addStatement("value.append(key, $L)", codec.read())
+            .endControlFlow()
+            .addStatement("return value")
+            .build());
+
+        return name;
+    }
+
+    /**
+     * Returns the statement looking up the string table of <code>parcel</code> if any of
+     * <code>codecs</code> needs it.
+     */
+    private static CodeBlock stringTableOf(String parcel, ElementCodec... codecs) {
+        for (ElementCodec codec : codecs) {
+            if (codec == ElementCodec.DEDUPED_STRING) {
+                return CodeBlock.builder()
+                    .addStatement("$T strings = $T.of($N)", PARCEL_TABLE, PARCEL_TABLE, parcel)
+                    .build();
+            }
+        }
+
+        return CodeBlock.builder().build();
+    }
+
+    /**
+     * Builds the size method of a codec. Values of elements of a fixed size are counted without
+     * iterating them, otherwise <code>elements</code> adds the size of every element to
+     * <code>bytes</code>.
+     *
+     * @param count expression of the number of elements of <code>value</code>
+     * @param fixedSize bytes per element, or <code>-1</code> if it depends on the element
+     */
+    private void addSizeMethod(String name, TypeName type, String count, int fixedSize, CodeBlock elements) {
+        if (!sizeHints) {
+            return;
+        }
+        MethodSpec.Builder builder = MethodSpec.methodBuilder("size" + name)
+            .addModifiers(PRIVATE, STATIC)
+            .returns(int.class)
+            .addParameter(type, "value")
+            .beginControlFlow("if (value == null)")
+            .addStatement("return 4")
+            .endControlFlow();
+        if (fixedSize > 0) {
+            builder.addStatement("return 4 + $L * $L", count, fixedSize);
+        } else {
+            builder.addStatement("int bytes = 4")
+                .addCode(elements)
+                .addStatement("return bytes");
+        }
+        methods.put("size" + name, builder.build());
+    }
+
+    /**
+     * Returns the codec of single elements of type <code>item</code>, or <code>null</code> if their
+     * type is only known at runtime.
+     */
+    ElementCodec elementCodec(TypeName item, AutoMappperProcessor.Property property) {
+        TypeName adapted = elementAdapterType(property);
+        if (adapted != null && adapted.equals(item)) {
+            return ElementCodec.adapter(typeAdapters.get(property.typeAdapter), isSizedAdapter(property.typeAdapter));
+        }
+        if (item.equals(STRING)) {
+            return dedupes(property) ? ElementCodec.DEDUPED_STRING : ElementCodec.STRING;
+        }
+        if (item.isBoxedPrimitive()) {
+            return ElementCodec.boxed(item);
+        }
+        if (!(item instanceof ClassName)) {
+            return null;
+        }
+        if (parcelableTargets.contains(item)) {
+            return ElementCodec.parcelable(item, sizeHints);
+        }
+        TypeElement element = env.getElementUtils().getTypeElement(item.toString());
+        if (element != null && isFinalParcelable(element)) {
+            return ElementCodec.parcelable(item, isSized(element));
+        }
+        if (element != null && plainObjects && isPlainObject(element, new HashSet<TypeElement>())) {
+            return ElementCodec.plainObject(item, addPlainObjectCodec(element));
+        }
+
+        return null;
+    }
+
+    /**
+     * Whether <code>element</code> is a plain class: a public concrete class extending
+     * <code>Object</code>, with a public no-arg constructor and only public, non-final instance fields
+     * of primitive, boxed, <code>String</code> or plain class types. Platform classes are never plain,
+     * their private state may be missing from the stubs they are compiled against.
+     *
+     * @param visiting plain classes being checked, which a field may refer to again
+     */
+    private boolean isPlainObject(TypeElement element, Set<TypeElement> visiting) {
+        Set<Modifier> modifiers = element.getModifiers();
+        if (element.getKind() != ElementKind.CLASS
+            || !modifiers.contains(Modifier.PUBLIC)
+            || modifiers.contains(Modifier.ABSTRACT)
+            || element.getNestingKind().isNested() && !modifiers.contains(Modifier.STATIC)
+            || !element.getTypeParameters().isEmpty()
+            || isPlatformClass(element)) {
+            return false;
+        }
+        TypeMirror superclass = element.getSuperclass();
+        if (superclass.getKind() != TypeKind.DECLARED
+            || !((TypeElement) ((DeclaredType) superclass).asElement()).getQualifiedName().contentEquals("java.lang.Object")) {
+            return false;
+        }
+        TypeMirror parcelable = env.getElementUtils().getTypeElement(PARCELABLE.toString()).asType();
+        if (env.getTypeUtils().isAssignable(element.asType(), parcelable)) {
+            return false;
+        }
+        boolean constructible = false;
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(element.getEnclosedElements())) {
+            constructible |= constructor.getParameters().isEmpty() && constructor.getModifiers().contains(Modifier.PUBLIC);
+        }
+        if (!constructible) {
+            return false;
+        }
+        if (!visiting.add(element)) {
+            return true;
+        }
+        for (VariableElement field : instanceFieldsOf(element)) {
+            if (!field.getModifiers().contains(Modifier.PUBLIC) || field.getModifiers().contains(Modifier.FINAL)) {
+                return false;
+            }
+            TypeMirror type = field.asType();
+            if (type.getKind().isPrimitive()) {
+                continue;
+            }
+            if (type.getKind() != TypeKind.DECLARED) {
+                return false;
+            }
+            TypeName typeName = TypeName.get(type);
+            if (typeName.equals(STRING) || typeName.isBoxedPrimitive()) {
+                continue;
+            }
+            if (!isPlainObject((TypeElement) ((DeclaredType) type).asElement(), visiting)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Plain objects are written behind a null marker, followed by their fields in declaration order.
+     */
+    private String addPlainObjectCodec(TypeElement element) {
+        String key = "plain:" + element.getQualifiedName();
+        String name = codecNames.get(key);
+        if (name != null) {
+            return name;
+        }
+        ClassName type = ClassName.get(element);
+        name = names.newName(type.simpleName());
+        // registered before the fields, which may refer to the class again
+        codecNames.put(key, name);
+
+        CodeBlock.Builder write = CodeBlock.builder();
+        CodeBlock.Builder read = CodeBlock.builder();
+        CodeBlock.Builder size = CodeBlock.builder();
+        int fixedSize = 4;
+        for (VariableElement field : instanceFieldsOf(element)) {
+            String value = "value." + field.getSimpleName();
+            TypeName fieldType = TypeName.get(field.asType());
+            if (fieldType.isPrimitive()) {
+                // written like a boxed element without its null marker
+                ElementCodec codec = ElementCodec.boxed(fieldType.box());
+                write.addStatement("$L", codec.writeValue(value));
+                read.addStatement("$N = $L", value, codec.readValue());
+                fixedSize += codec.fixedSize() - 4;
+                continue;
+            }
+            ElementCodec codec;
+            if (fieldType.equals(STRING)) {
+                codec = ElementCodec.STRING;
+            } else if (fieldType.isBoxedPrimitive()) {
+                codec = ElementCodec.boxed(fieldType);
+            } else {
+                TypeElement fieldElement = (TypeElement) env.getTypeUtils().asElement(field.asType());
+                codec = ElementCodec.plainObject(fieldType, addPlainObjectCodec(fieldElement));
+            }
+            write.add(codec.write(value));
+            read.addStatement("$N = $L", value, codec.read());
+            if (codec.fixedSize() > 0) {
+                fixedSize += codec.fixedSize();
+            } else {
+                size.addStatement("bytes += $L", codec.size(value));
+            }
+        }
+
+        methods.put("write" + name, MethodSpec.methodBuilder("write" + name)
+            .addModifiers(PRIVATE, STATIC)
+            .addParameter(type, "value")
+            .addParameter(PARCEL, "dest")
+            .addParameter(int.class, "flags")
+            .beginControlFlow("if (value == null)")
+            .addStatement("dest.writeInt(0)")
+            .addStatement("return")
+            .endControlFlow()
+            .addStatement("dest.writeInt(1)")
+            .addCode(write.build())
+            .build());
+
+        if (sizeHints) {
+            methods.put("size" + name, MethodSpec.methodBuilder("size" + name)
+                .addModifiers(PRIVATE, STATIC)
+                .returns(int.class)
+                .addParameter(type, "value")
+                .beginControlFlow("if (value == null)")
+                .addStatement("return 4")
+                .endControlFlow()
+                .addStatement("int bytes = $L", fixedSize)
+                .addCode(size.build())
+                .addStatement("return bytes")
+                .build());
+        }
+
+        methods.put("read" + name, MethodSpec.methodBuilder("read" + name)
+            .addModifiers(PRIVATE, STATIC)
+            .returns(type)
+            .addParameter(PARCEL, "in")
+            .beginControlFlow("if (in.readInt() == 0)")
+            .addStatement("return null")
+            .endControlFlow()
+            .addStatement("$T value = new $T()", type, type)
+            .addCode(read.build())
+            .addStatement("return value")
+            .build());
+
+        return name;
+    }
+
+    private boolean isPlatformClass(TypeElement element) {
+        String pkg = env.getElementUtils().getPackageOf(element).getQualifiedName().toString();
+
+        return pkg.startsWith("java.") || pkg.startsWith("javax.") || pkg.startsWith("android.");
+    }
+
+    private static List<VariableElement> instanceFieldsOf(TypeElement element) {
+        List<VariableElement> fields = new ArrayList<>();
+        for (VariableElement field : ElementFilter.fieldsIn(element.getEnclosedElements())) {
+            Set<Modifier> modifiers = field.getModifiers();
+            if (!modifiers.contains(Modifier.STATIC) && !modifiers.contains(Modifier.TRANSIENT)) {
+                fields.add(field);
+            }
+        }
+
+        return fields;
+    }
+
+    /**
+     * Returns the type adapted by the <code>ParcelTypeAdapter</code> of <code>property</code> if it does
+     * not adapt the property itself, <code>null</code> otherwise.
+     */
+    private TypeName elementAdapterType(AutoMappperProcessor.Property property) {
+        if (property.typeAdapter == null || !typeAdapters.containsKey(property.typeAdapter)) {
+            return null;
+        }
+        TypeMirror adapted = adaptedType(property.typeAdapter);
+        Types types = env.getTypeUtils();
+        if (adapted == null || types.isAssignable(types.erasure(property.element.asType()), types.erasure(adapted))) {
+            return null;
+        }
+
+        return TypeName.get(adapted);
+    }
+
+    private TypeMirror adaptedType(TypeMirror adapter) {
+        for (TypeMirror supertype : env.getTypeUtils().directSupertypes(adapter)) {
+            DeclaredType declared = (DeclaredType) supertype;
+            if (((TypeElement) declared.asElement()).getQualifiedName().contentEquals(PARCEL_TYPE_ADAPTER)) {
+                return declared.getTypeArguments().isEmpty() ? null : declared.getTypeArguments().get(0);
+            }
+            TypeMirror adapted = adaptedType(supertype);
+            if (adapted != null) {
+                return adapted;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Only final classes can be read through their own <code>CREATOR</code>, an instance of a subclass
+     * would need the <code>CREATOR</code> of its runtime class.
+     */
+    private boolean isFinalParcelable(TypeElement element) {
+        if (!element.getModifiers().contains(Modifier.FINAL) || element.getKind() != ElementKind.CLASS) {
+            return false;
+        }
+        TypeMirror parcelable = env.getElementUtils().getTypeElement(PARCELABLE.toString()).asType();
+        if (!env.getTypeUtils().isAssignable(element.asType(), parcelable)) {
+            return false;
+        }
+        for (VariableElement field : ElementFilter.fieldsIn(element.getEnclosedElements())) {
+            Set<Modifier> modifiers = field.getModifiers();
+            if (field.getSimpleName().contentEquals("CREATOR")
+                && modifiers.contains(Modifier.STATIC)
+                && modifiers.contains(Modifier.PUBLIC)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Whether <code>element</code> was generated with a <code>parcelSizeHint()</code>.
+     */
+    private boolean isSized(TypeElement element) {
+        TypeElement sized = env.getElementUtils().getTypeElement(SIZED_PARCELABLE);
+
+        return sized != null && env.getTypeUtils().isAssignable(element.asType(), sized.asType());
+    }
+
+    /**
+     * Whether <code>adapter</code> is a <code>SizedParcelTypeAdapter</code>.
+     */
+    private boolean isSizedAdapter(TypeMirror adapter) {
+        TypeElement sized = env.getElementUtils().getTypeElement(SIZED_PARCEL_TYPE_ADAPTER);
+        Types types = env.getTypeUtils();
+
+        return sized != null && types.isAssignable(adapter, types.erasure(sized.asType()));
+    }
+
+    private static boolean isList(ClassName rawType) {
+        return rawType.equals(LIST) || rawType.equals(ARRAY_LIST) || rawType.equals(COLLECTION);
+    }
+
+    private static boolean isMap(ClassName rawType) {
+        return rawType.equals(MAP) || rawType.equals(HASH_MAP) || rawType.equals(LINKED_HASH_MAP);
+    }
+
+    private static boolean containsString(TypeName type) {
+        if (type instanceof ArrayTypeName) {
+            return containsString(((ArrayTypeName) type).componentType);
+        }
+        if (type instanceof ParameterizedTypeName) {
+            for (TypeName argument : ((ParameterizedTypeName) type).typeArguments) {
+                if (containsString(argument)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        return type.equals(STRING);
+    }
+
+    private static String simpleNameOf(TypeName type) {
+        return type instanceof ClassName ? ((ClassName) type).simpleName() : "Value";
+    }
+
+    /**
+     * Writes and reads one element. Elements other than strings are written behind a null marker,
+     * parcelables directly through their own <code>writeToParcel</code> and <code>CREATOR</code>.
+     * Deduplicated strings go through the <code>strings</code> table looked up by the codec.
+     */
+    static final class ElementCodec {
+        static final ElementCodec STRING = new ElementCodec(Kind.STRING, ClassName.get(String.class), null, false, null);
+        static final ElementCodec DEDUPED_STRING = new ElementCodec(Kind.DEDUPED_STRING, ClassName.get(String.class), null, false, null);
+
+        private enum Kind { STRING, DEDUPED_STRING, BOXED, PARCELABLE, ADAPTER, PLAIN_OBJECT }
+
+        private final Kind kind;
+        private final TypeName type;
+        private final FieldSpec adapter;
+        private final boolean sized;
+        // name of the codec methods of plain objects
+        private final String method;
+
+        private ElementCodec(Kind kind, TypeName type, FieldSpec adapter, boolean sized, String method) {
+            this.kind = kind;
+            this.type = type;
+            this.adapter = adapter;
+            this.sized = sized;
+            this.method = method;
+        }
+
+        static ElementCodec boxed(TypeName type) {
+            return new ElementCodec(Kind.BOXED, type, null, false, null);
+        }
+
+        /**
+         * @param sized whether the parcelable has a <code>parcelSizeHint()</code>
+         */
+        static ElementCodec parcelable(TypeName type, boolean sized) {
+            return new ElementCodec(Kind.PARCELABLE, type, null, sized, null);
+        }
+
+        /**
+         * @param sized whether the adapter has a <code>parcelSize</code>
+         */
+        static ElementCodec adapter(FieldSpec adapter, boolean sized) {
+            return new ElementCodec(Kind.ADAPTER, null, adapter, sized, null);
+        }
+
+        /**
+         * @param method name of the codec methods of the plain class
+         */
+        static ElementCodec plainObject(TypeName type, String method) {
+            return new ElementCodec(Kind.PLAIN_OBJECT, type, null, false, method);
+        }
+
+        boolean isParcelable() {
+            return kind == Kind.PARCELABLE;
+        }
+
+        boolean isPlainObject() {
+            return kind == Kind.PLAIN_OBJECT;
+        }
+
+        /**
+         * Distinguishes codecs of the same element type in the names of the generated methods.
+         */
+        String key() {
+            if (kind == Kind.DEDUPED_STRING) {
+                return "#";
+            }
+            return kind == Kind.ADAPTER ? "@" + adapter.name : "";
+        }
+
+        /**
+         * Prefix of the element type in the names of the generated methods.
+         */
+        String prefix() {
+            return kind == Kind.DEDUPED_STRING ? "Deduped" : "";
+        }
+
+        /**
+         * @param element local variable holding the element
+         */
+        CodeBlock write(String element) {
+            CodeBlock.Builder block = CodeBlock.builder();
+            if (kind == Kind.STRING) {
+                return block.addStatement("dest.writeString($N)", element).build();
+            }
+            if (kind == Kind.DEDUPED_STRING) {
+                return block.addStatement("strings.writeString($N)", element).build();
+            }
+            if (kind == Kind.PLAIN_OBJECT) {
+                // the codec writes the null marker itself
+                return block.addStatement("write$L($N, dest, flags)", method, element).build();
+            }
+            block.beginControlFlow("if ($N == null)", element);
+            block.addStatement("dest.writeInt(0)");
+            block.nextControlFlow("else");
+            block.addStatement("dest.writeInt(1)");
+            block.addStatement("$L", writeValue(element));
+            block.endControlFlow();
+
+            return block.build();
+        }
+
+        /**
+         * Returns the bytes every element is written with, or <code>-1</code> if it depends on the
+         * element.
+         */
+        int fixedSize() {
+            switch (kind) {
+                case STRING:
+                case DEDUPED_STRING:
+                case PLAIN_OBJECT:
+                case PARCELABLE:
+                case ADAPTER:
+                    return -1;
+                default:
+                    break;
+            }
+            TypeName primitive = type.unbox();
+
+            return 4 + (primitive.equals(TypeName.LONG) || primitive.equals(TypeName.DOUBLE) ? 8 : 4);
+        }
+
+        /**
+         * Returns the expression of the bytes <code>element</code> is written with, including its
+         * null marker.
+         */
+        CodeBlock size(String element) {
+            if (kind == Kind.STRING) {
+                return CodeBlock.of("$T.string($N)", PARCEL_SIZES, element);
+            }
+            if (kind == Kind.DEDUPED_STRING) {
+                return CodeBlock.of("$T.dedupedString($N)", PARCEL_SIZES, element);
+            }
+            if (kind == Kind.PLAIN_OBJECT) {
+                return CodeBlock.of("size$L($N)", method, element);
+            }
+            if (fixedSize() > 0) {
+                return CodeBlock.of("$L", fixedSize());
+            }
+
+            return CodeBlock.of("($N == null ? 4 : 4 + $L)", element, valueSize(element));
+        }
+
+        /**
+         * Returns the expression of the bytes the non-null <code>element</code> is written with,
+         * without null marker. Elements written by an adapter or a parcelable which do not know their
+         * size are counted as unbounded.
+         */
+        CodeBlock valueSize(String element) {
+            if (kind == Kind.STRING || kind == Kind.DEDUPED_STRING || kind == Kind.PLAIN_OBJECT) {
+                return size(element);
+            }
+            if (kind == Kind.PARCELABLE || kind == Kind.ADAPTER) {
+                if (!sized) {
+                    return CodeBlock.of("$T.unbounded()", PARCEL_SIZES);
+                }
+                return kind == Kind.PARCELABLE
+                    ? CodeBlock.of("$N.parcelSizeHint()", element)
+                    : CodeBlock.of("$N.parcelSize($N)", adapter, element);
+            }
+
+            return CodeBlock.of("$L", fixedSize() - 4);
+        }
+
+        CodeBlock read() {
+            if (kind == Kind.STRING) {
+                return CodeBlock.of("in.readString()");
+            }
+            if (kind == Kind.DEDUPED_STRING) {
+                return CodeBlock.of("strings.readString()");
+            }
+            if (kind == Kind.PLAIN_OBJECT) {
+                return CodeBlock.of("read$L(in)", method);
+            }
+
+            return CodeBlock.of("in.readInt() != 0 ? $L : null", readValue());
+        }
+
+        private CodeBlock writeValue(String element) {
+            switch (kind) {
+                case PARCELABLE:
+                    return CodeBlock.of("$N.writeToParcel(dest, flags)", element);
+                case ADAPTER:
+                    return CodeBlock.of("$N.toParcel($N, dest)", adapter, element);
+                default:
+                    break;
+            }
+            TypeName primitive = type.unbox();
+            if (primitive.equals(TypeName.LONG)) {
+                return CodeBlock.of("dest.writeLong($N)", element);
+            } else if (primitive.equals(TypeName.FLOAT)) {
+                return CodeBlock.of("dest.writeFloat($N)", element);
+            } else if (primitive.equals(TypeName.DOUBLE)) {
+                return CodeBlock.of("dest.writeDouble($N)", element);
+            } else if (primitive.equals(TypeName.BYTE)) {
+                return CodeBlock.of("dest.writeByte($N)", element);
+            } else if (primitive.equals(TypeName.BOOLEAN)) {
+                return CodeBlock.of("dest.writeInt($N ? 1 : 0)", element);
+            }
+
+            // int, short and char
+            return CodeBlock.of("dest.writeInt($N)", element);
+        }
+
+        private CodeBlock readValue() {
+            switch (kind) {
+                case PARCELABLE:
+                    return CodeBlock.of("$T.CREATOR.createFromParcel(in)", type);
+                case ADAPTER:
+                    return CodeBlock.of("$N.fromParcel(in)", adapter);
+                default:
+                    break;
+            }
+            TypeName primitive = type.unbox();
+            if (primitive.equals(TypeName.LONG)) {
+                return CodeBlock.of("in.readLong()");
+            } else if (primitive.equals(TypeName.FLOAT)) {
+                return CodeBlock.of("in.readFloat()");
+            } else if (primitive.equals(TypeName.DOUBLE)) {
+                return CodeBlock.of("in.readDouble()");
+            } else if (primitive.equals(TypeName.BYTE)) {
+                return CodeBlock.of("in.readByte()");
+            } else if (primitive.equals(TypeName.BOOLEAN)) {
+                return CodeBlock.of("in.readInt() != 0");
+            } else if (primitive.equals(TypeName.SHORT)) {
+                return CodeBlock.of("(short) in.readInt()");
+            } else if (primitive.equals(TypeName.CHAR)) {
+                return CodeBlock.of("(char) in.readInt()");
+            }
+
+            return CodeBlock.of("in.readInt()");
+        }
+    }
+}
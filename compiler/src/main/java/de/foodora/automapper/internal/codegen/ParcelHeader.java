@@ -0,0 +1,273 @@
+package de.foodora.automapper.internal.codegen;
+
+/*
+ * Copyright (C) 03/05/17 Foodora GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.NameAllocator;
+import com.squareup.javapoet.TypeName;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import javax.lang.model.type.TypeMirror;
+
+/**
+ * The packed header written in front of the properties of a parcel.
+ *
+ * Every nullable property, as well as every nested <code>Parcelable</code> written through its
+ * <code>CREATOR</code>, gets a null bit and every boolean property a value bit, 32 of them per
+ * <code>int</code> of the header. The header is written once and read once, so nullable properties do
+ * not cost a marker <code>int</code> each and booleans are not written on their own at all.
+ *
+ * The binary codec writes the same header, through the <code>int</code> methods of its stream or buffer or,
+ * in its compact profile, as varints.
+ */
+final class ParcelHeader {
+    private final Map<String, Integer> nullBits = new HashMap<>();
+    private final Map<String, Integer> valueBits = new HashMap<>();
+    private final List<String> words = new ArrayList<>();
+
+    /**
+     * @param prefix of the names of the locals holding the header
+     */
+    ParcelHeader(
+        List<AutoMappperProcessor.Property> properties,
+        Map<TypeMirror, FieldSpec> typeAdapters,
+        ParcelCodecs codecs,
+        String prefix
+    ) {
+        this(properties, parcelNullBits(properties, typeAdapters, codecs), parcelValueBits(properties, typeAdapters, codecs), prefix);
+    }
+
+    /**
+     * @param nullable names of the properties with a null bit
+     * @param booleans names of the properties with a value bit
+     * @param prefix of the names of the locals holding the header
+     */
+    ParcelHeader(List<AutoMappperProcessor.Property> properties, Set<String> nullable, Set<String> booleans, String prefix) {
+        NameAllocator names = new NameAllocator();
+        for (AutoMappperProcessor.Property property : properties) {
+            names.newName(property.fieldName, property);
+        }
+
+        int bits = 0;
+        for (AutoMappperProcessor.Property property : properties) {
+            if (nullable.contains(property.fieldName)) {
+                nullBits.put(property.fieldName, bits++);
+            }
+            if (booleans.contains(property.fieldName)) {
+                valueBits.put(property.fieldName, bits++);
+            }
+        }
+        for (int i = 0; i * Integer.SIZE < bits; i++) {
+            words.add(names.newName(prefix + i));
+        }
+    }
+
+    private static Set<String> parcelNullBits(
+        List<AutoMappperProcessor.Property> properties,
+        Map<TypeMirror, FieldSpec> typeAdapters,
+        ParcelCodecs codecs
+    ) {
+        Set<String> nullable = new HashSet<>();
+        for (AutoMappperProcessor.Property property : properties) {
+            if (property.isNullable() || !isAdapted(property, typeAdapters, codecs) && codecs.isSingle(property)) {
+                nullable.add(property.fieldName);
+            }
+        }
+
+        return nullable;
+    }
+
+    private static Set<String> parcelValueBits(
+        List<AutoMappperProcessor.Property> properties,
+        Map<TypeMirror, FieldSpec> typeAdapters,
+        ParcelCodecs codecs
+    ) {
+        Set<String> booleans = new HashSet<>();
+        for (AutoMappperProcessor.Property property : properties) {
+            if (!isAdapted(property, typeAdapters, codecs) && isBoolean(property.typeName)) {
+                booleans.add(property.fieldName);
+            }
+        }
+
+        return booleans;
+    }
+
+    private static boolean isAdapted(
+        AutoMappperProcessor.Property property,
+        Map<TypeMirror, FieldSpec> typeAdapters,
+        ParcelCodecs codecs
+    ) {
+        return property.typeAdapter != null
+            && typeAdapters.containsKey(property.typeAdapter)
+            && !codecs.adaptsElements(property);
+    }
+
+    /**
+     * Reserves the names of the locals holding the header in <code>names</code>.
+     */
+    void reserveNames(NameAllocator names) {
+        for (String word : words) {
+            names.newName(word, word);
+        }
+    }
+
+    /**
+     * The number of bytes the header is written with.
+     */
+    int size() {
+        return words.size() * 4;
+    }
+
+    boolean hasNullBit(AutoMappperProcessor.Property property) {
+        return nullBits.containsKey(property.fieldName);
+    }
+
+    boolean hasValueBit(AutoMappperProcessor.Property property) {
+        return valueBits.containsKey(property.fieldName);
+    }
+
+    /**
+     * The index of the word holding the bits of <code>property</code>.
+     */
+    int wordIndexOf(AutoMappperProcessor.Property property) {
+        Integer bit = nullBits.containsKey(property.fieldName)
+            ? nullBits.get(property.fieldName)
+            : valueBits.get(property.fieldName);
+        return bit / Integer.SIZE;
+    }
+
+    /**
+     * The index of the local <code>word</code> returned by {@link #write}.
+     */
+    int indexOf(String word) {
+        return words.indexOf(word);
+    }
+
+    /**
+     * Returns the mask of the null bit of <code>property</code> within its word.
+     */
+    String nullMask(AutoMappperProcessor.Property property) {
+        return bitOf(nullBits.get(property.fieldName));
+    }
+
+    /**
+     * Returns the mask of the value bit of <code>property</code> within its word.
+     */
+    String valueMask(AutoMappperProcessor.Property property) {
+        return bitOf(valueBits.get(property.fieldName));
+    }
+
+    /**
+     * Returns the condition which holds when the nullable <code>property</code> was not null.
+     */
+    CodeBlock isPresent(AutoMappperProcessor.Property property) {
+        return CodeBlock.of("($L) == 0", mask(nullBits.get(property.fieldName)));
+    }
+
+    /**
+     * Returns the value of the boolean <code>property</code>.
+     */
+    CodeBlock value(AutoMappperProcessor.Property property) {
+        return CodeBlock.of("($L) != 0", mask(valueBits.get(property.fieldName)));
+    }
+
+    /**
+     * Computes the header from the fields of the object and writes it to <code>dest</code>.
+     */
+    CodeBlock write(List<AutoMappperProcessor.Property> properties, String dest) {
+        return write(properties, word -> CodeBlock.of("$N.writeInt($N);\n", dest, word));
+    }
+
+    /**
+     * @param writeWord returns the statement writing the local holding a word of the header
+     */
+    CodeBlock write(List<AutoMappperProcessor.Property> properties, Function<String, CodeBlock> writeWord) {
+        CodeBlock.Builder block = CodeBlock.builder();
+        for (String word : words) {
+            block.addStatement("int $N = 0", word);
+        }
+        for (AutoMappperProcessor.Property property : properties) {
+            Integer nullBit = nullBits.get(property.fieldName);
+            if (nullBit != null) {
+                block.beginControlFlow("if ($N == null)", property.fieldName);
+                block.addStatement("$N |= $L", wordOf(nullBit), bitOf(nullBit));
+                if (valueBits.containsKey(property.fieldName)) {
+                    block.nextControlFlow("else if ($N)", property.fieldName);
+                    addSetValueBit(block, property);
+                }
+                block.endControlFlow();
+            } else if (valueBits.containsKey(property.fieldName)) {
+                block.beginControlFlow("if ($N)", property.fieldName);
+                addSetValueBit(block, property);
+                block.endControlFlow();
+            }
+        }
+        for (String word : words) {
+            block.add(writeWord.apply(word));
+        }
+
+        return block.build();
+    }
+
+    /**
+     * Reads the header from <code>in</code> into locals, ahead of the properties.
+     */
+    CodeBlock read(String in) {
+        return read(CodeBlock.of("$N.readInt()", in));
+    }
+
+    /**
+     * @param readWord the expression reading a word of the header
+     */
+    CodeBlock read(CodeBlock readWord) {
+        CodeBlock.Builder block = CodeBlock.builder();
+        for (String word : words) {
+            block.addStatement("int $N = $L", word, readWord);
+        }
+
+        return block.build();
+    }
+
+    private void addSetValueBit(CodeBlock.Builder block, AutoMappperProcessor.Property property) {
+        int valueBit = valueBits.get(property.fieldName);
+        block.addStatement("$N |= $L", wordOf(valueBit), bitOf(valueBit));
+    }
+
+    private CodeBlock mask(int bit) {
+        return CodeBlock.of("$N & $L", wordOf(bit), bitOf(bit));
+    }
+
+    private String wordOf(int bit) {
+        return words.get(bit / Integer.SIZE);
+    }
+
+    private static String bitOf(int bit) {
+        return "0x" + Integer.toHexString(1 << (bit % Integer.SIZE));
+    }
+
+    static boolean isBoolean(TypeName type) {
+        return type.equals(TypeName.BOOLEAN) || type.equals(TypeName.BOOLEAN.box());
+    }
+}
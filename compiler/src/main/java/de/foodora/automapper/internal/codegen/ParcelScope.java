@@ -0,0 +1,145 @@
+package de.foodora.automapper.internal.codegen;
+
+/*
+ * Copyright (C) 03/05/17 Foodora GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.squareup.javapoet.CodeBlock;
+
+import static de.foodora.automapper.internal.codegen.ParcelCodecs.PARCEL_SIZES;
+import static de.foodora.automapper.internal.codegen.ParcelCodecs.PARCEL_TABLE;
+
+/**
+ * The scope of the table of the parcel, around the bodies of the parcel constructor and of
+ * <code>writeToParcel</code>.
+ *
+ * Classes parcelled by identity look themselves up in the table before anything else: an object
+ * written before is written as a back-reference only, an object being read is registered before its
+ * properties are read, so that cycles resolve to it. Classes with deduplicated strings or nesting a
+ * class parcelled by identity join the table of the parcel for as long as they are written or read, so
+ * that all objects below them share one table. Versioned classes suspend the strings of the
+ * enclosing object first: a reader skipping their groups of newer versions would miss the strings
+ * those groups add to the table. The objects of the table stay shared, each group of a newer version
+ * ends with the number of objects it added, which a skipping reader adds as well.
+ */
+final class ParcelScope {
+    final String table;
+    private final String outerTable;
+    private final String referenceTable;
+
+    /**
+     * @param table name of the local holding the table, <code>null</code> if the class has no
+     *              deduplicated strings and nests no class parcelled by identity
+     * @param outerTable name of the local holding the suspended table, <code>null</code> if the class is
+     *                   not versioned
+     * @param referenceTable name of the local holding the table the object is looked up in,
+     *                       <code>null</code> if the class is not parcelled by identity
+     */
+    ParcelScope(String table, String outerTable, String referenceTable) {
+        this.table = table;
+        this.outerTable = outerTable;
+        this.referenceTable = referenceTable;
+    }
+
+    /**
+     * Whether the groups of versions after the first end with the number of objects they added to the
+     * table.
+     */
+    boolean countsReferences() {
+        return outerTable != null;
+    }
+
+    /**
+     * @param read whether <code>body</code> is the body of the parcel constructor, rather than of
+     *             <code>writeToParcel</code>
+     */
+    CodeBlock wrap(CodeBlock body, String parcel, boolean read) {
+        CodeBlock tables = wrapTables(body, parcel);
+        if (referenceTable == null) {
+            return tables;
+        }
+        CodeBlock.Builder block = CodeBlock.builder();
+        block.addStatement("$T $N = $T.begin($N)", PARCEL_TABLE, referenceTable, PARCEL_TABLE, parcel);
+        block.beginControlFlow("try");
+        if (read) {
+            block.addStatement("$N.register(this)", referenceTable);
+        } else {
+            block.beginControlFlow("if ($N.writeReference(this))", referenceTable);
+            block.addStatement("return");
+            block.endControlFlow();
+        }
+        block.add(tables);
+        block.nextControlFlow("finally");
+        block.addStatement("$N.end()", referenceTable);
+        block.endControlFlow();
+
+        return block.build();
+    }
+
+    /**
+     * Wraps the body of <code>parcelSizeHint()</code> in the same tables as <code>writeToParcel</code>,
+     * so that the hint counts the strings and shared objects of the table once, as they are written.
+     * Objects parcelled by identity are looked up by the hint itself.
+     */
+    CodeBlock wrapSize(CodeBlock body) {
+        if (table == null && outerTable == null) {
+            return body;
+        }
+        CodeBlock.Builder block = CodeBlock.builder();
+        if (outerTable != null) {
+            block.addStatement("$T $N = $T.suspend()", Object.class, outerTable, PARCEL_SIZES);
+        }
+        if (table != null) {
+            block.addStatement("$T.begin()", PARCEL_SIZES);
+        }
+        block.beginControlFlow("try");
+        block.add(body);
+        block.nextControlFlow("finally");
+        if (table != null) {
+            block.addStatement("$T.end()", PARCEL_SIZES);
+        }
+        if (outerTable != null) {
+            block.addStatement("$T.resume($N)", PARCEL_SIZES, outerTable);
+        }
+        block.endControlFlow();
+
+        return block.build();
+    }
+
+    private CodeBlock wrapTables(CodeBlock body, String parcel) {
+        if (table == null && outerTable == null) {
+            return body;
+        }
+        CodeBlock.Builder block = CodeBlock.builder();
+        if (outerTable != null) {
+            block.addStatement("$T $N = $T.suspend()", PARCEL_TABLE, outerTable, PARCEL_TABLE);
+        }
+        if (table != null) {
+            block.addStatement("$T $N = $T.begin($N)", PARCEL_TABLE, table, PARCEL_TABLE, parcel);
+        }
+        block.beginControlFlow("try");
+        block.add(body);
+        block.nextControlFlow("finally");
+        if (table != null) {
+            block.addStatement("$N.end()", table);
+        }
+        if (outerTable != null) {
+            block.addStatement("$T.resume($N)", PARCEL_TABLE, outerTable);
+        }
+        block.endControlFlow();
+
+        return block.build();
+    }
+}
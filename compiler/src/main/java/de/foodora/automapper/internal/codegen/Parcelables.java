@@ -69,13 +69,24 @@ class Parcelables {
             BUNDLE, PARCELABLE, PARCELABLEARRAY, CHARSEQUENCE, IBINDER, OBJECTARRAY,
             SERIALIZABLE, PERSISTABLEBUNDLE, SIZE, SIZEF);
 
-    static void readValue(CodeBlock.Builder block, AutoMappperProcessor.Property property, final TypeName parcelableType) {
+    static void readValue(
+        CodeBlock.Builder block,
+        AutoMappperProcessor.Property property,
+        final TypeName parcelableType,
+        ParcelCodecs codecs,
+        ParcelHeader header
+    ) {
 
-        if (property.isNullable()) {
-            block.add("in.readInt() == 0 ? ");
+        if (header.hasNullBit(property)) {
+            block.add("$L ? ", header.isPresent(property));
         }
 
-        if (parcelableType.equals(STRING)) {
+        CodeBlock typed = codecs.read(property, "in");
+        if (typed != null) {
+            block.add(typed);
+        } else if (header.hasValueBit(property)) {
+            block.add(header.value(property));
+        } else if (parcelableType.equals(STRING)) {
             block.add("in.readString()");
         } else if (parcelableType.equals(TypeName.BYTE) || parcelableType.equals(TypeName.BYTE.box())) {
             block.add("in.readByte()");
@@ -157,17 +168,22 @@ class Parcelables {
             block.add("($T) in.readValue($T.class.getClassLoader())", property.typeName, parcelableType);
         }
 
-        if (property.isNullable()) {
+        if (header.hasNullBit(property)) {
             block.add(" : null");
         }
     }
 
-    public static void readValueWithTypeAdapter(CodeBlock.Builder block, AutoMappperProcessor.Property property, final FieldSpec adapter) {
-        if (property.isNullable()) {
-            block.add("in.readInt() == 0 ? ");
+    public static void readValueWithTypeAdapter(
+        CodeBlock.Builder block,
+        AutoMappperProcessor.Property property,
+        final FieldSpec adapter,
+        ParcelHeader header
+    ) {
+        if (header.hasNullBit(property)) {
+            block.add("$L ? ", header.isPresent(property));
         }
         block.add("$N.fromParcel(in)", adapter);
-        if (property.isNullable()) {
+        if (header.hasNullBit(property)) {
             block.add(" : null");
         }
     }
@@ -181,18 +197,46 @@ class Parcelables {
         return block.build();
     }
 
-    public static CodeBlock writeValue(AutoMappperProcessor.Property property, ParameterSpec out, ParameterSpec flags, Types typeUtils) {
+    public static CodeBlock writeValue(
+        AutoMappperProcessor.Property property,
+        ParameterSpec out,
+        ParameterSpec flags,
+        Types typeUtils,
+        ParcelCodecs codecs,
+        ParcelHeader header
+    ) {
         CodeBlock.Builder block = CodeBlock.builder();
+        if (header.hasValueBit(property)) {
+            // booleans are written by the header
+            return block.build();
+        }
 
-        if (property.isNullable()) {
-            block.beginControlFlow("if ($N == null)", property.fieldName);
-            block.addStatement("$N.writeInt(1)", out);
-            block.nextControlFlow("else");
-            block.addStatement("$N.writeInt(0)", out);
+        if (header.hasNullBit(property)) {
+            // the null flag is part of the header
+            block.beginControlFlow("if ($N != null)", property.fieldName);
         }
 
-        TypeName type = getTypeNameFromProperty(property, typeUtils);
+        CodeBlock typed = codecs.write(property, out.name, flags.name);
+        if (typed != null) {
+            block.add(typed);
+        } else {
+            writeUntypedValue(block, property, getTypeNameFromProperty(property, typeUtils), out, flags);
+            block.add(";\n");
+        }
 
+        if (header.hasNullBit(property)) {
+            block.endControlFlow();
+        }
+        return block.build();
+    }
+
+    private static void writeUntypedValue(
+        CodeBlock.Builder block,
+        AutoMappperProcessor.Property property,
+        TypeName type,
+        ParameterSpec out,
+        ParameterSpec flags
+    ) {
         if (type.equals(STRING))
             block.add("$N.writeString($N)", out, property.fieldName);
         else if (type.equals(TypeName.BYTE) || type.equals(TypeName.BYTE.box()))
@@ -257,23 +301,106 @@ class Parcelables {
             block.add("$N.writeString($N.name())", out, property.fieldName);
         else
             block.add("$N.writeValue($N)", out, property.fieldName);
+    }
 
-        block.add(";\n");
+    /**
+     * Returns the expression of the number of bytes <code>property</code> is written with, or
+     * <code>null</code> if its size is only known at runtime. Properties with a null bit are only counted
+     * when they are non-null, which is up to the caller.
+     */
+    public static CodeBlock sizeOfValue(
+        AutoMappperProcessor.Property property,
+        Types typeUtils,
+        ParcelCodecs codecs,
+        ParcelHeader header
+    ) {
+        if (header.hasValueBit(property)) {
+            return CodeBlock.of("0");
+        }
+        CodeBlock typed = codecs.size(property);
+        if (typed != null) {
+            return typed;
+        }
 
-        if (property.isNullable()) {
-            block.endControlFlow();
+        TypeName type = getTypeNameFromProperty(property, typeUtils);
+        if (type.equals(STRING))
+            return CodeBlock.of("$T.string($N)", ParcelCodecs.PARCEL_SIZES, property.fieldName);
+        else if (type.equals(TypeName.LONG) || type.equals(TypeName.LONG.box())
+            || type.equals(TypeName.DOUBLE) || type.equals(TypeName.DOUBLE.box()))
+            return CodeBlock.of("8");
+        else if (type.isPrimitive() || type.isBoxedPrimitive())
+            return CodeBlock.of("4");
+        else if (type.equals(ENUM))
+            return CodeBlock.of("$T.string($N.name())", ParcelCodecs.PARCEL_SIZES, property.fieldName);
+        else if (type.equals(STRINGARRAY))
+            return CodeBlock.of("$T.stringArray($N)", ParcelCodecs.PARCEL_SIZES, property.fieldName);
+        else if (type.equals(BYTEARRAY))
+            return CodeBlock.of("$T.byteArray($N)", ParcelCodecs.PARCEL_SIZES, property.fieldName);
+        else if (type.equals(INTARRAY))
+            return CodeBlock.of("$T.intArray($N)", ParcelCodecs.PARCEL_SIZES, property.fieldName);
+        else if (type.equals(LONGARRAY))
+            return CodeBlock.of("$T.longArray($N)", ParcelCodecs.PARCEL_SIZES, property.fieldName);
+        else if (type.equals(BOOLEANARRAY))
+            return CodeBlock.of("$T.booleanArray($N)", ParcelCodecs.PARCEL_SIZES, property.fieldName);
+        else if (type.equals(CHARARRAY))
+            return CodeBlock.of("$T.charArray($N)", ParcelCodecs.PARCEL_SIZES, property.fieldName);
+
+        return null;
+    }
+
+    /**
+     * Returns the expression of the number of bytes a property without size of its own is written
+     * with, by <code>Parcel.writeValue</code> or another method resolving the type at runtime. Only a
+     * null value is known to take a single <code>int</code>, any other value leaves the hint unbounded.
+     */
+    static CodeBlock sizeOfUntypedValue(AutoMappperProcessor.Property property, Types typeUtils, ParcelHeader header) {
+        TypeName type = getTypeNameFromProperty(property, typeUtils);
+        if (header.hasNullBit(property) || type.equals(IBINDER) || type.equals(CHARSEQUENCE)
+            || type.equals(SIZE) || type.equals(SIZEF)) {
+            return CodeBlock.of("$T.unbounded()", ParcelCodecs.PARCEL_SIZES);
         }
-        return block.build();
+
+        return CodeBlock.of("($N == null ? 4 : $T.unbounded())", property.fieldName, ParcelCodecs.PARCEL_SIZES);
+    }
+
+    /**
+     * Returns how <code>Parcel</code> writes a property of <code>parcelableType</code> without typed
+     * codec if that resolves types or classes at runtime, <code>null</code> otherwise.
+     */
+    static String reflectiveFallback(TypeName parcelableType) {
+        if (parcelableType == null || parcelableType.equals(ENUM)) {
+            return null;
+        }
+        if (parcelableType.equals(SERIALIZABLE)) {
+            return "Parcel.writeSerializable";
+        }
+        if (parcelableType.equals(LIST)) {
+            return "Parcel.writeList, which writes every element with Parcel.writeValue";
+        }
+        if (parcelableType.equals(OBJECTARRAY)) {
+            return "Parcel.writeArray, which writes every element with Parcel.writeValue";
+        }
+        if (parcelableType.equals(SPARSEARRAY)) {
+            return "Parcel.writeSparseArray, which writes every element with Parcel.writeValue";
+        }
+        if (parcelableType.equals(PARCELABLE)) {
+            return "Parcel.writeParcelable, which looks the CREATOR up by class name";
+        }
+        if (parcelableType.equals(PARCELABLEARRAY)) {
+            return "Parcel.writeParcelableArray, which looks the CREATOR of every element up by class name";
+        }
+        if (!isValidType(parcelableType) || parcelableType.equals(MAP)) {
+            return "Parcel.writeValue";
+        }
+
+        return null;
     }
 
     public static CodeBlock writeValueWithTypeAdapter(FieldSpec adapter, AutoMappperProcessor.Property p, ParameterSpec out) {
         CodeBlock.Builder block = CodeBlock.builder();
 
         if (p.isNullable()) {
-            block.beginControlFlow("if ($N == null)", p.fieldName);
-            block.addStatement("$N.writeInt(1)", out);
-            block.nextControlFlow("else");
-            block.addStatement("$N.writeInt(0)", out);
+            block.beginControlFlow("if ($N != null)", p.fieldName);
         }
 
         block.addStatement("$N.toParcel($N, $N)", adapter, p.fieldName, out);
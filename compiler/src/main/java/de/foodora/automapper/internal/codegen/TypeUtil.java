@@ -3,6 +3,7 @@ package de.foodora.automapper.internal.codegen;
 import com.squareup.javapoet.ParameterizedTypeName;
 import com.squareup.javapoet.TypeName;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.lang.model.element.Element;
@@ -67,6 +68,34 @@ public class TypeUtil {
         return child;
     }
 
+    /**
+     * Returns the elements of all type arguments of {@code child}, e.g. key and value of a map. Type
+     * arguments which are not classes themselves, like nested generics, are skipped.
+     */
+    public static List<TypeElement> getGenericElements(Element child, Elements elementUtils) {
+        List<TypeElement> elements = new ArrayList<>();
+        TypeName typeName = TypeName.get(child.asType());
+        if (typeName instanceof ParameterizedTypeName) {
+            for (TypeName argument : ((ParameterizedTypeName) typeName).typeArguments) {
+                TypeElement element = elementUtils.getTypeElement(argument.toString());
+                if (element != null) {
+                    elements.add(element);
+                }
+            }
+        }
+        return elements;
+    }
+
+    public static boolean isMap(Element element, Types typeUtils, Elements elementUtils) {
+        TypeMirror type = element.asType();
+        if (type.getKind() != TypeKind.DECLARED) {
+            return false;
+        }
+        TypeMirror map = typeUtils.erasure(elementUtils.getTypeElement("java.util.Map").asType());
+
+        return typeUtils.isAssignable(typeUtils.erasure(type), map);
+    }
+
     public static boolean isIterable(Element element, Types typeUtils) {
         if (isPrimitiveOrWrapper(element.asType())) {
             return false;
@@ -85,11 +114,15 @@ public class TypeUtil {
     }
 
     public static boolean isIterable(TypeElement typeElement) {
+        if (typeElement != null && typeElement.getQualifiedName().contentEquals("java.util.Map")) {
+            return true;
+        }
         if (typeElement != null && typeElement.getInterfaces() != null && typeElement.getInterfaces().size() > 0) {
             for (TypeMirror typeMirror : typeElement.getInterfaces()) {
                 if (typeMirror.toString().startsWith("java.util.List")
                     || typeMirror.toString().startsWith("java.util.Set")
                     || typeMirror.toString().startsWith("java.util.Collection")
+                    || typeMirror.toString().startsWith("java.util.Map")
                     ) {
                     return true;
                 }
@@ -102,7 +135,10 @@ public class TypeUtil {
     public static boolean isJavaInternalType(TypeMirror type) {
         TypeName typeName = TypeName.get(type);
 
-        return typeName.toString().startsWith("java.lang") || typeName.toString().startsWith("java.util");
+        // android types such as SparseArray or Bundle are parcelled, never mapped
+        return typeName.toString().startsWith("java.lang")
+            || typeName.toString().startsWith("java.util")
+            || typeName.toString().startsWith("android.");
     }
 
     public static boolean isPrimitiveOrWrapper(TypeMirror type) {
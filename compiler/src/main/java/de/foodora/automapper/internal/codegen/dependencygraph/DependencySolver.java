@@ -11,6 +11,7 @@ import java.util.Set;
 
 import javax.annotation.processing.ProcessingEnvironment;
 import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.element.VariableElement;
 import javax.lang.model.util.ElementFilter;
@@ -72,26 +73,41 @@ public class DependencySolver {
 
     private void findAllDependents(TypeElement element, Map<TypeElement, Set<TypeElement>> deps) {
         List<VariableElement> fields = ElementFilter.fieldsIn(element.getEnclosedElements());
-        for (Element child : fields) {
-            while (TypeUtil.isIterable(child, processingEnv.getTypeUtils())) {
-                child = TypeUtil.getGenericElement(child, processingEnv.getElementUtils());
+        for (Element field : fields) {
+            if (TypeUtil.isMap(field, processingEnv.getTypeUtils(), processingEnv.getElementUtils())) {
+                // keys and values of maps may both be mapped
+                for (TypeElement child : TypeUtil.getGenericElements(field, processingEnv.getElementUtils())) {
+                    addDependency(element, child, deps);
+                }
+            } else {
+                addDependency(element, field, deps);
             }
-            if (TypeUtil.isArray(child)) {
-                child = processingEnv.getElementUtils().getTypeElement(child.getEnclosingElement().asType().toString());
+        }
+    }
+
+    private void addDependency(TypeElement element, Element child, Map<TypeElement, Set<TypeElement>> deps) {
+        while (TypeUtil.isIterable(child, processingEnv.getTypeUtils())) {
+            child = TypeUtil.getGenericElement(child, processingEnv.getElementUtils());
+        }
+        if (TypeUtil.isArray(child)) {
+            child = processingEnv.getElementUtils().getTypeElement(child.getEnclosingElement().asType().toString());
+        }
+        if (!TypeUtil.isPrimitiveOrWrapper(child.asType()) && !TypeUtil.isJavaInternalType(child.asType())) {
+            TypeElement childElement = (TypeElement) processingEnv.getTypeUtils().asElement(child.asType());
+            if (childElement.getKind() == ElementKind.ENUM) {
+                // enums are copied as they are
+                return;
             }
-            if (!TypeUtil.isPrimitiveOrWrapper(child.asType()) && !TypeUtil.isJavaInternalType(child.asType())) {
-                TypeElement childElement = (TypeElement) processingEnv.getTypeUtils().asElement(child.asType());
-                if (!deps.get(element).contains(childElement)) {
-                    // add this child as dependency for the parent
-                    deps.get(element).add(childElement);
-                }
-                // if we have already explored this child
-                if (!deps.containsKey(childElement)) {
-                    // initialize list of empty dependencies for the child
-                    deps.put(childElement, new HashSet<>());
-                    // loop on all children of child
-                    findAllDependents(childElement, deps);
-                }
+            if (!deps.get(element).contains(childElement)) {
+                // add this child as dependency for the parent
+                deps.get(element).add(childElement);
+            }
+            // if we have already explored this child
+            if (!deps.containsKey(childElement)) {
+                // initialize list of empty dependencies for the child
+                deps.put(childElement, new HashSet<>());
+                // loop on all children of child
+                findAllDependents(childElement, deps);
             }
         }
     }
@@ -23,4 +23,97 @@ public @interface AutoMapper {
     String mapTo() default "";
     boolean parcelable() default false;
     boolean extendMapper() default true;
+
+    /**
+     * Generates {@code mapAllParallel(List, Executor)}, which maps lists larger than
+     * {@link #parallelThreshold()} in index range chunks on the given executor.
+     */
+    boolean parallel() default false;
+
+    /**
+     * Minimum number of elements of each parallel chunk, lists smaller than twice this size are
+     * mapped on the calling thread.
+     */
+    int parallelThreshold() default 4096;
+
+    /**
+     * Size of the recycling pool of the generated class, 0 disables it. When enabled {@code mapFrom}
+     * takes its instances from the pool, {@code recycle} hands them back and {@code mapInto} recycles the
+     * list and array elements it drops. Recycling an instance twice throws an
+     * {@code IllegalStateException}.
+     */
+    int poolSize() default 0;
+
+    /**
+     * Whether nested mapped properties are mapped on first access rather than in {@code mapFrom}. Lazy
+     * properties are read through generated getters, the source is released once all of them were read.
+     */
+    boolean lazy() default false;
+
+    /**
+     * Whether to also generate a {@code <mapTo>View} class, which wraps the source and delegates its
+     * getters to it instead of copying the fields. Requires a source with final fields of immutable types.
+     */
+    boolean view() default false;
+
+    /**
+     * Whether to also generate a {@code <mapTo>Columns} class, which holds a mapped list as one array per
+     * primitive, boxed, String or enum property, and {@code mapAllColumnar(List)} filling it in one pass.
+     * Other properties get no column and the custom mapping method of the mapper does not run.
+     */
+    boolean columnar() default false;
+
+    /**
+     * Whether enums are parcelled by their ordinal instead of their name. The parcel carries a hash of the
+     * enum constants taken at compile time, reading a parcel written with other constants throws a
+     * {@code BadParcelableException} instead of decoding the wrong constants.
+     */
+    boolean ordinalEnums() default false;
+
+    /**
+     * Whether all strings of the class are parcelled through the string table of the parcel, as if every
+     * field was annotated with {@link ParcelDedupe}.
+     */
+    boolean dedupeStrings() default false;
+
+    /**
+     * Whether objects of the class are parcelled by identity. An object written to the parcel before is
+     * written as a back-reference and read back as the very same object, so objects shared by several
+     * others are parcelled once and cycles through the class can be parcelled at all.
+     */
+    boolean parcelIdentity() default false;
+
+    /**
+     * Whether to also generate {@code writeRecordTo(ByteBuffer)} and a nested {@code Reader}, a flyweight
+     * reading the properties of a record on demand at fixed offsets. {@code Reader.wrap} re-points the same
+     * reader at another record, so that scanning many records allocates nothing but the values read.
+     * Properties other than primitives, strings and enums are written with the binary codec, which must
+     * support them.
+     */
+    boolean flyweight() default false;
+
+    /**
+     * Serialization generated in addition to {@link #parcelable()}. Nested mapped classes get the same
+     * codec as the class they are nested in.
+     */
+    Codec codec() default Codec.NONE;
+
+    enum Codec {
+        NONE,
+
+        /**
+         * Generates {@code writeTo} and {@code readFrom} for {@code DataOutput}/{@code DataInput} and for
+         * {@code ByteBuffer}, which need neither Android nor reflection. Properties follow the rules of
+         * parcels: null flags and booleans in a header, {@link ParcelVersion} groups and
+         * {@link ParcelAdapter}s, which then also implement {@code BinaryTypeAdapter}.
+         */
+        BINARY,
+
+        /**
+         * The same methods as {@link #BINARY}, writing without padding for disk and network caches:
+         * {@code short}, {@code int} and {@code long} as zigzag varints, sizes and headers as varints and
+         * ASCII strings without encoding them.
+         */
+        COMPACT
+    }
 }